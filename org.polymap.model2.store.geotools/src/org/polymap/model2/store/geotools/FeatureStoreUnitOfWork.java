@@ -16,6 +16,7 @@ package org.polymap.model2.store.geotools;
 
 import static java.util.Collections.singleton;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -38,11 +39,14 @@ import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.NameImpl;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.Converters;
 import org.opengis.feature.Feature;
+import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.PropertyDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.identity.FeatureId;
@@ -70,14 +74,17 @@ import org.polymap.model2.store.CompositeStateReference;
 import org.polymap.model2.store.StoreResultSet;
 import org.polymap.model2.store.StoreRuntimeContext;
 import org.polymap.model2.store.StoreUnitOfWork;
+import org.polymap.model2.store.VersionedStateSupport;
 
 /**
- * 
+ * Entities are {@link VersionedStateSupport versioned} if their feature type has
+ * a {@link VersionedStateSupport#VERSION_KEY} attribute of a numeric type. The
+ * schema of existing feature types is not changed.
  *
  * @author <a href="http://www.polymap.de">Falko Bräutigam</a>
  */
 public class FeatureStoreUnitOfWork
-        implements StoreUnitOfWork {
+        implements StoreUnitOfWork, VersionedStateSupport {
 
     private static Log log = LogFactory.getLog( FeatureStoreUnitOfWork.class );
     
@@ -146,12 +153,107 @@ public class FeatureStoreUnitOfWork
     }
 
 
+    /**
+     * Loads all states with one {@link FilterFactory#id(Set)} filter.
+     */
+    @Override
+    public <T extends Entity> Map<Object,CompositeState> loadEntityStates( Collection<?> ids, Class<T> entityClass ) {
+        FeatureSource fs = featureSource( entityClass );
+        Set<FeatureId> fids = new HashSet( ids.size() * 2 );
+        for (Object id : ids) {
+            fids.add( ff.featureId( (String)id ) );
+        }
+        FeatureIterator it = null;
+        try {
+            Map<Object,CompositeState> result = new HashMap( ids.size() * 2 );
+            it = fs.getFeatures( ff.id( fids ) ).features();
+            while (it.hasNext()) {
+                CompositeState state = new FeatureCompositeState( it.next(), this );
+                result.put( state.id(), state );
+            }
+            return result;
+        }
+        catch (Exception e) {
+            throw new ModelRuntimeException( e );
+        }
+        finally {
+            if (it != null) { it.close(); }
+        }
+    }
+
+
     @Override
     public <T extends Entity> CompositeState adoptEntityState( Object state, Class<T> entityClass ) {
         return new FeatureCompositeState( (Feature)state, this );
     }
 
 
+    @Override
+    public boolean isVersioned( Class<? extends Entity> entityClass ) {
+        return featureSource( entityClass ).getSchema().getDescriptor( VERSION_KEY ) != null;
+    }
+
+
+    @Override
+    public long version( Entity entity ) {
+        return version( (Feature)entity.state() );
+    }
+
+
+    protected long version( Feature feature ) {
+        Property prop = feature.getProperty( VERSION_KEY );
+        Number version = prop != null ? (Number)prop.getValue() : null;
+        return version != null ? version.longValue() : NO_VERSION;
+    }
+
+
+    /**
+     * Loads just the {@link #VERSION_KEY} attribute of the given features with one
+     * {@link FilterFactory#id(Set)} filter.
+     */
+    @Override
+    public <T extends Entity> Map<Object,Long> storedVersions( Collection<?> ids, Class<T> entityClass ) {
+        FeatureSource fs = featureSource( entityClass );
+        Set<FeatureId> fids = new HashSet( ids.size() * 2 );
+        for (Object id : ids) {
+            fids.add( ff.featureId( (String)id ) );
+        }
+        FeatureIterator it = null;
+        try {
+            org.geotools.data.Query featureQuery = new org.geotools.data.Query( 
+                    fs.getSchema().getName().getLocalPart(), ff.id( fids ), new String[] {VERSION_KEY} );
+            Map<Object,Long> result = new HashMap( ids.size() * 2 );
+            it = fs.getFeatures( featureQuery ).features();
+            while (it.hasNext()) {
+                Feature feature = it.next();
+                result.put( feature.getIdentifier().getID(), version( feature ) );
+            }
+            return result;
+        }
+        catch (Exception e) {
+            throw new ModelRuntimeException( e );
+        }
+        finally {
+            if (it != null) { it.close(); }
+        }
+    }
+
+
+    /**
+     * Increments the version of the given feature, if its type is versioned.
+     */
+    protected void incrementVersion( Feature feature, boolean created ) {
+        PropertyDescriptor desc = feature.getType().getDescriptor( VERSION_KEY );
+        if (desc != null) {
+            Object value = Converters.convert( version( feature ) + 1, desc.getType().getBinding() );
+            feature.getProperty( VERSION_KEY ).setValue( value );
+            if (!created) {
+                markPropertyModified( feature, (AttributeDescriptor)desc, value );
+            }
+        }
+    }
+
+
     @Override
     public <T extends Entity> CompositeState newEntityState( Object id, Class<T> entityClass ) {
         // find schema for entity
@@ -355,6 +457,7 @@ public class FeatureStoreUnitOfWork
                 // it should not cause trouble as potential subsequent modifications are
                 // just send twice to the store, one in create and the equal modification
                 feature.getUserData().remove( "__created__" );
+                incrementVersion( feature, true );
                 
                 MemoryFeatureCollection coll = created.get( entity.getClass() );
                 if (coll == null) {
@@ -373,6 +476,10 @@ public class FeatureStoreUnitOfWork
                 }
                 fids.add( feature.getIdentifier() );
             }
+            // modified
+            else if (entity.status() == EntityStatus.MODIFIED) {
+                incrementVersion( feature, false );
+            }
         }
 
         // write created
@@ -0,0 +1,49 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore.test;
+
+import java.util.function.Supplier;
+
+import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.locking.CommitLockStrategy;
+import org.polymap.model2.store.recordstore.RecordStoreAdapter;
+import org.polymap.model2.test.CommitLockPerformanceTest;
+import org.polymap.model2.test.Employee;
+import org.polymap.recordstore.IRecordStore;
+import org.polymap.recordstore.lucene.LuceneRecordStore;
+
+/**
+ * The {@link CommitLockPerformanceTest} with {@link IRecordStore}/Lucene backend.
+ *
+ * @author Falko Bräutigam
+ */
+public class LuceneCommitLockPerformanceTest
+        extends CommitLockPerformanceTest {
+
+    public LuceneCommitLockPerformanceTest( String name ) {
+        super( name );
+    }
+
+
+    @Override
+    protected EntityRepository newRepository( Supplier<CommitLockStrategy> commitLockStrategy ) throws Exception {
+        return EntityRepository.newConfiguration()
+                .store.set( new RecordStoreAdapter( new LuceneRecordStore() ) )
+                .entities.set( new Class[] {Employee.class} )
+                .commitLockStrategy.set( commitLockStrategy )
+                .create();
+    }
+
+}
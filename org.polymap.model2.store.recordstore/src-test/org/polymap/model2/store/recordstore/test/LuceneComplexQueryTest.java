@@ -18,6 +18,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.store.recordstore.CollectionSizeStats;
 import org.polymap.model2.store.recordstore.RecordStoreAdapter;
 import org.polymap.model2.test.Company;
 import org.polymap.model2.test.ComplexModelTest;
@@ -38,6 +39,8 @@ public class LuceneComplexQueryTest
 
     protected IRecordStore          store;
 
+    protected RecordStoreAdapter    storeAdapter;
+
     
     public LuceneComplexQueryTest( String name ) {
         super( name );
@@ -47,11 +50,29 @@ public class LuceneComplexQueryTest
     protected void setUp() throws Exception {
         super.setUp();
         store = new LuceneRecordStore();
+        storeAdapter = new RecordStoreAdapter( store );
         repo = EntityRepository.newConfiguration()
-                .store.set( new RecordStoreAdapter( store ) )
+                .store.set( storeAdapter )
                 .entities.set( new Class[] {Employee.class, Company.class} )
                 .create();
         uow = repo.newUnitOfWork();
     }
-    
+
+
+    public void testCollectionSizeStats() throws Exception {
+        createEntities();
+        uow.commit();
+
+        // first query of a collection field searches its max size, then it is cached
+        CollectionSizeStats stats = storeAdapter.collectionSizeStats();
+        compositeCollection();
+        manyAssociationContains();
+        long searches = stats.searchCount();
+        assertTrue( searches > 0 );
+        compositeCollection();
+        manyAssociationContains();
+        assertEquals( searches, stats.searchCount() );
+        log.info( "Collection size stats: " + stats );
+    }
+
 }
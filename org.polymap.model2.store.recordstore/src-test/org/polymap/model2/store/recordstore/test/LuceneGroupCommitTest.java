@@ -0,0 +1,177 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.ModelRuntimeException;
+import org.polymap.model2.runtime.UnitOfWork;
+import org.polymap.model2.store.recordstore.GroupCommit;
+import org.polymap.model2.store.recordstore.RecordStoreAdapter;
+import org.polymap.model2.test.Employee;
+import org.polymap.model2.test.Timer;
+import org.polymap.recordstore.IRecordStore.Updater;
+import org.polymap.recordstore.lucene.LuceneRecordStore;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link GroupCommit} of {@link RecordStoreAdapter}.
+ *
+ * @author Falko Bräutigam
+ */
+public class LuceneGroupCommitTest
+        extends TestCase {
+
+    private static final Log log = LogFactory.getLog( LuceneGroupCommitTest.class );
+
+    protected FailingStore          store;
+
+    protected RecordStoreAdapter    adapter;
+
+    protected EntityRepository      repo;
+
+
+    public LuceneGroupCommitTest( String name ) {
+        super( name );
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        store = new FailingStore();
+        adapter = new RecordStoreAdapter( store )
+                .enableGroupCommit( 16, 2, TimeUnit.MILLISECONDS );
+        repo = EntityRepository.newConfiguration()
+                .store.set( adapter )
+                .entities.set( new Class[] {Employee.class} )
+                .create();
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        repo.close();
+    }
+
+
+    public void testSingle() throws Exception {
+        UnitOfWork uow = repo.newUnitOfWork();
+        Employee employee = uow.createEntity( Employee.class, null, (Employee proto) -> {
+            proto.jap.set( 1 );
+            return proto;
+        });
+        uow.commit();
+        employee.jap.set( 2 );
+        uow.commit();
+        uow.close();
+
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        assertEquals( 2, (int)uow2.entity( employee ).jap.get() );
+        uow2.removeEntity( uow2.entity( employee ) );
+        uow2.commit();
+        assertEquals( 0, repo.newUnitOfWork().query( Employee.class ).execute().size() );
+        assertEquals( 3, adapter.groupCommit().batchCount() );
+    }
+
+
+    /**
+     * The store fails in commit() after prepare() was successful.
+     */
+    public void testCommitFailure() throws Exception {
+        UnitOfWork uow = repo.newUnitOfWork();
+        Employee employee = uow.createEntity( Employee.class, null, (Employee proto) -> {
+            proto.jap.set( 1 );
+            return proto;
+        });
+        uow.commit();
+
+        employee.jap.set( 2 );
+        uow.prepare();
+        store.fail = true;
+        try {
+            uow.commit();
+            fail( "Store failure expected." );
+        }
+        catch (ModelRuntimeException e) {
+            log.info( "Expected: " + e );
+        }
+        // modifications are kept, commit lock is released
+        store.fail = false;
+        assertEquals( 2, (int)employee.jap.get() );
+        uow.commit();
+        uow.close();
+
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        assertEquals( 2, (int)uow2.entity( employee ).jap.get() );
+        uow2.close();
+    }
+
+
+    public void testConcurrentCommits() throws Exception {
+        int threadCount = 16, loops = 50;
+        Timer timer = Timer.startNow();
+        List<Thread> threads = new ArrayList();
+        for (int i=0; i<threadCount; i++) {
+            Thread t = new Thread( () -> {
+                for (int j=0; j<loops; j++) {
+                    try (UnitOfWork uow = repo.newUnitOfWork()) {
+                        uow.createEntity( Employee.class, null );
+                        uow.commit();
+                    }
+                }
+            });
+            threads.add( t );
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        GroupCommit groupCommit = adapter.groupCommit();
+        log.info( threadCount*loops + " commits in " + timer.elapsedTime() + "ms, " + groupCommit );
+
+        assertEquals( threadCount*loops, repo.newUnitOfWork().query( Employee.class ).execute().size() );
+        assertEquals( threadCount*loops, groupCommit.batchCount() );
+        assertTrue( groupCommit.groupCount() <= groupCommit.batchCount() );
+    }
+
+
+    /**
+     * Fails to update on demand.
+     */
+    protected static class FailingStore
+            extends LuceneRecordStore {
+
+        public volatile boolean     fail;
+
+        public FailingStore() throws Exception {
+        }
+
+        @Override
+        public Updater prepareUpdate() {
+            if (fail) {
+                throw new IllegalStateException( "Store failure (test)." );
+            }
+            return super.prepareUpdate();
+        }
+    }
+
+}
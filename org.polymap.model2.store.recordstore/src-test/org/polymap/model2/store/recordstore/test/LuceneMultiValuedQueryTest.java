@@ -0,0 +1,73 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.store.recordstore.CollectionLayout;
+
+/**
+ * The {@link LuceneComplexQueryTest} with {@link CollectionLayout#MULTI_VALUED}.
+ *
+ * @author Falko Bräutigam
+ */
+public class LuceneMultiValuedQueryTest
+        extends LuceneComplexQueryTest {
+
+    private static final Log log = LogFactory.getLog( LuceneMultiValuedQueryTest.class );
+
+
+    public LuceneMultiValuedQueryTest( String name ) {
+        super( name );
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        uow.close();
+        storeAdapter.setCollectionLayout( CollectionLayout.MULTI_VALUED );
+        uow = repo.newUnitOfWork();
+    }
+
+
+    public void testMigration() throws Exception {
+        // records of an old index
+        storeAdapter.setCollectionLayout( CollectionLayout.INDEXED );
+        uow.close();
+        uow = repo.newUnitOfWork();
+        createEntities();
+        uow.commit();
+
+        storeAdapter.setCollectionLayout( CollectionLayout.MULTI_VALUED );
+        int migrated = storeAdapter.migrateCollectionLayout();
+        log.info( "Migrated: " + migrated );
+        assertTrue( migrated > 0 );
+        assertEquals( 0, storeAdapter.migrateCollectionLayout() );
+
+        uow.close();
+        uow = repo.newUnitOfWork();
+        manyAssociationContains();
+
+        // and back
+        storeAdapter.setCollectionLayout( CollectionLayout.INDEXED );
+        assertEquals( migrated, storeAdapter.migrateCollectionLayout() );
+        uow.close();
+        uow = repo.newUnitOfWork();
+        manyAssociationContains();
+    }
+
+}
@@ -18,6 +18,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.UnitOfWork;
 import org.polymap.model2.store.recordstore.RecordStoreAdapter;
 import org.polymap.model2.test.Employee;
 import org.polymap.model2.test.NestedUowTest;
@@ -53,5 +54,40 @@ public class LuceneNestedUowTest
         uow = repo.newUnitOfWork();
     }
 
-    
+
+    /**
+     * Nested entities are copy-on-write overlays of the parent state. Commit
+     * merges just the written fields, so modifications of other fields in the
+     * parent are not overwritten.
+     */
+    public void testOverlay() throws Exception {
+        Employee employee = uow.createEntity( Employee.class, null, (Employee proto) -> {
+            proto.name.set( "parent" );
+            proto.jap.set( 1 );
+            return proto;
+        });
+        uow.commit();
+
+        UnitOfWork nested = uow.newUnitOfWork();
+        Employee nestedEmployee = nested.entity( employee );
+        assertEquals( "parent", nestedEmployee.name.get() );
+        
+        // parent modifies jap, nested modifies name
+        employee.jap.set( 2 );
+        nestedEmployee.name.set( "nested" );
+        assertEquals( "parent", employee.name.get() );
+        nested.commit();
+        
+        assertEquals( "nested", employee.name.get() );
+        assertEquals( 2, (int)employee.jap.get() );
+        assertEquals( "nested", nestedEmployee.name.get() );
+        
+        // rollback discards the overlay
+        nestedEmployee.name.set( "rolledback" );
+        nested.rollback();
+        assertEquals( "nested", nestedEmployee.name.get() );
+        assertEquals( "nested", employee.name.get() );
+        nested.close();
+    }
+
 }
@@ -0,0 +1,188 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.Concerns;
+import org.polymap.model2.Property;
+import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.UnitOfWork;
+import org.polymap.model2.runtime.locking.QueuedPessimisticLocking;
+import org.polymap.model2.store.recordstore.RecordStoreAdapter;
+import org.polymap.model2.test.PessimisticLockingTest;
+import org.polymap.model2.test.Timer;
+import org.polymap.recordstore.lucene.LuceneRecordStore;
+
+/**
+ * The {@link PessimisticLockingTest} with {@link QueuedPessimisticLocking} and a
+ * simple contention benchmark.
+ *
+ * @author Falko Bräutigam
+ */
+public class LuceneQueuedPessimisticLockingTest
+        extends PessimisticLockingTest {
+
+    private static final Log log = LogFactory.getLog( LuceneQueuedPessimisticLockingTest.class );
+
+    @Override
+    protected void setUp() throws Exception {
+        LuceneRecordStore store = new LuceneRecordStore();
+        repo = EntityRepository.newConfiguration()
+                .store.set( new RecordStoreAdapter( store ) )
+                .entities.set( new Class[] {QueuedLocked.class} )
+                .create();
+
+        setUpEntities( QueuedLocked.class );
+    }
+
+
+    public void testUpgrade() throws Exception {
+        int lockCount = QueuedPessimisticLocking.lockCount();
+        UnitOfWork uow = repo.newUnitOfWork();
+        Locked e1 = uow.entity( _e1 );
+        log.info( e1.read() );
+        e1.write( "upgraded" );
+        assertEquals( "upgraded", e1.read() );
+        uow.commit();
+        assertEquals( lockCount + 1, QueuedPessimisticLocking.lockCount() );
+
+        // unused lock is evicted
+        uow.close();
+        assertEquals( lockCount, QueuedPessimisticLocking.lockCount() );
+    }
+
+
+    /**
+     * The locks of a UnitOfWork that is not closed are released when it is
+     * reclaimed by the GC.
+     */
+    public void testUnclosedUnitOfWork() throws Exception {
+        int lockCount = QueuedPessimisticLocking.lockCount();
+        writeAndForget( "forgotten" );
+        assertEquals( lockCount + 1, QueuedPessimisticLocking.lockCount() );
+
+        for (int i=0; i<100 && QueuedPessimisticLocking.lockCount() > lockCount; i++) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep( 10 );
+        }
+        assertEquals( lockCount, QueuedPessimisticLocking.lockCount() );
+
+        UnitOfWork uow = repo.newUnitOfWork();
+        uow.entity( _e1 ).write( "next" );
+        uow.close();
+    }
+
+
+    protected void writeAndForget( String value ) {
+        UnitOfWork uow = repo.newUnitOfWork();
+        uow.entity( _e1 ).write( value );
+    }
+
+
+    /**
+     * Threads concurrently modify a few hot entities. Each UnitOfWork holds the
+     * write lock until it is closed, so the modifications are serialized.
+     */
+    public void testContention() throws Exception {
+        for (int threads : new int[] {1, 4, 16}) {
+            contention( threads, 100 );
+        }
+    }
+
+
+    protected void contention( int threadCount, int loops ) throws Exception {
+        int lockCount = QueuedPessimisticLocking.lockCount();
+        Locked[] hot = {_e1, _e2};
+        AtomicInteger[] expected = {new AtomicInteger(), new AtomicInteger()};
+        AtomicLong maxWait = new AtomicLong();
+
+        UnitOfWork uow = repo.newUnitOfWork();
+        for (Locked e : hot) {
+            uow.entity( e ).write( "0" );
+        }
+        uow.commit();
+        uow.close();
+
+        Timer timer = Timer.startNow();
+        List<Thread> threads = new ArrayList();
+        for (int i=0; i<threadCount; i++) {
+            Thread t = new Thread( () -> {
+                for (int j=0; j<loops; j++) {
+                    int index = ThreadLocalRandom.current().nextInt( hot.length );
+                    UnitOfWork tuow = repo.newUnitOfWork();
+                    try {
+                        long start = System.nanoTime();
+                        Locked e = tuow.entity( hot[index] );
+                        // write lock before read, no upgrade
+                        e.write( "-" );
+                        maxWait.accumulateAndGet( System.nanoTime() - start, Math::max );
+                        tuow.reload( e );
+                        e.write( String.valueOf( Integer.parseInt( e.read() ) + 1 ) );
+                        tuow.commit();
+                        expected[index].incrementAndGet();
+                    }
+                    finally {
+                        tuow.close();
+                    }
+                }
+            }, "contention-" + i );
+            threads.add( t );
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = timer.elapsedTime();
+        log.info( "threads: " + threadCount + ", commits: " + threadCount*loops + " in " + elapsed + "ms"
+                + " (" + (threadCount*loops*1000L / Math.max( 1, elapsed )) + "/s)"
+                + ", max wait: " + maxWait.get()/1000000 + "ms" );
+
+        // no lost updates
+        uow = repo.newUnitOfWork();
+        for (int i=0; i<hot.length; i++) {
+            assertEquals( expected[i].get(), Integer.parseInt( uow.entity( hot[i] ).read() ) );
+        }
+        uow.close();
+        assertEquals( lockCount, QueuedPessimisticLocking.lockCount() );
+    }
+
+
+    @Concerns( QueuedPessimisticLocking.class )
+    public static class QueuedLocked
+            extends Locked {
+
+        public Property<String>     prop;
+
+        @Override
+        public String read() {
+            return prop.get();
+        }
+
+        @Override
+        public void write( String value ) {
+            prop.set( value );
+        }
+    }
+
+}
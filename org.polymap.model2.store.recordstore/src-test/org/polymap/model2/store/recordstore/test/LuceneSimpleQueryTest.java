@@ -14,13 +14,20 @@
  */
 package org.polymap.model2.store.recordstore.test;
 
+import static org.polymap.model2.query.Expressions.eq;
+import static org.polymap.model2.query.Expressions.eqAny;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.polymap.model2.query.Expressions;
 import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.UnitOfWork;
+import org.polymap.model2.store.recordstore.LuceneQueryPlans;
 import org.polymap.model2.store.recordstore.RecordStoreAdapter;
 import org.polymap.model2.test.Company;
 import org.polymap.model2.test.Employee;
+import org.polymap.model2.test.Employee.Rating;
 import org.polymap.model2.test.SimpleModelTest;
 import org.polymap.model2.test.SimpleQueryTest;
 import org.polymap.recordstore.IRecordStore;
@@ -38,6 +45,8 @@ public class LuceneSimpleQueryTest
 
     protected IRecordStore          store;
 
+    protected RecordStoreAdapter    storeAdapter;
+
     
     public LuceneSimpleQueryTest( String name ) {
         super( name );
@@ -47,11 +56,42 @@ public class LuceneSimpleQueryTest
     protected void setUp() throws Exception {
         super.setUp();
         store = new LuceneRecordStore();
+        storeAdapter = new RecordStoreAdapter( store );
         repo = EntityRepository.newConfiguration()
-                .store.set( new RecordStoreAdapter( store ) )
+                .store.set( storeAdapter )
                 .entities.set( new Class[] {Employee.class, Company.class} )
                 .create();
         uow = repo.newUnitOfWork();
     }
 
+
+    public void testQueryPlans() throws Exception {
+        createEntities();
+        uow.commit();
+
+        Employee wanted = Expressions.template( Employee.class, repo );
+        LuceneQueryPlans plans = storeAdapter.queryPlans();
+        
+        // first query of a shape compiles the plan, the others just bind the values
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        assertEquals( 1, uow2.query( Employee.class ).where( eq( wanted.name, "Philipp" ) ).execute().size() );
+        long misses = plans.missCount();
+        long hits = plans.hitCount();
+        assertEquals( 1, uow2.query( Employee.class ).where( eq( wanted.name, "Zimmermann" ) ).execute().size() );
+        assertEquals( 0, uow2.query( Employee.class ).where( eq( wanted.name, "Unknown" ) ).execute().size() );
+        assertEquals( misses, plans.missCount() );
+        assertTrue( plans.hitCount() >= hits + 2 );
+
+        // same plan, different number of values
+        assertEquals( 1, uow2.query( Employee.class ).where( eqAny( wanted.name, "Philipp" ) ).execute().size() );
+        misses = plans.missCount();
+        assertEquals( 2, uow2.query( Employee.class ).where( eqAny( wanted.name, "Philipp", "Zimmermann" ) ).execute().size() );
+        assertEquals( misses, plans.missCount() );
+
+        // other property: other plan
+        assertEquals( 1, uow2.query( Employee.class ).where( eq( wanted.rating, Rating.good ) ).execute().size() );
+        assertTrue( plans.missCount() > misses );
+        log.info( "Query plans: " + plans );
+    }
+
 }
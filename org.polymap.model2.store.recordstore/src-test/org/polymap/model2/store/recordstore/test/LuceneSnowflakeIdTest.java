@@ -0,0 +1,117 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore.test;
+
+import static org.polymap.model2.query.Expressions.eq;
+import static org.polymap.model2.query.Expressions.id;
+import static org.polymap.model2.query.Expressions.is;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import org.polymap.model2.query.Expressions;
+import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.IdGenerator;
+import org.polymap.model2.runtime.UnitOfWork;
+import org.polymap.model2.store.recordstore.RecordStoreAdapter;
+import org.polymap.model2.test.Company;
+import org.polymap.model2.test.Employee;
+import org.polymap.recordstore.lucene.LuceneRecordStore;
+
+/**
+ * The {@link LuceneComplexModelTest} with {@link Long} ids of
+ * {@link IdGenerator.Snowflake}.
+ *
+ * @author Falko Bräutigam
+ */
+public class LuceneSnowflakeIdTest
+        extends LuceneComplexModelTest {
+
+    private static final Log log = LogFactory.getLog( LuceneSnowflakeIdTest.class );
+
+
+    public LuceneSnowflakeIdTest( String name ) {
+        super( name );
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        log.info( " --------------------------------------- " + getClass().getSimpleName() + " : " + getName() );
+        store = new LuceneRecordStore();
+        repo = EntityRepository.newConfiguration()
+                .store.set( new RecordStoreAdapter( store ) )
+                .entities.set( new Class[] {Employee.class, Company.class} )
+                .idGenerator.set( new IdGenerator.Snowflake( 1 ) )
+                .create();
+        uow = repo.newUnitOfWork();
+    }
+
+
+    public void testQueryIdentity() {
+        Company company = uow.createEntity( Company.class, null );
+        Employee employee = uow.createEntity( Employee.class, null, (Employee proto) -> {
+            proto.name.set( "employee" );
+            proto.company.set( company );
+            return proto;
+        });
+        Employee other = uow.createEntity( Employee.class, null, (Employee proto) -> {
+            proto.name.set( "other" );
+            proto.company.set( company );
+            return proto;
+        });
+        uow.commit();
+        assertTrue( employee.id() instanceof Long );
+
+        // same UnitOfWork: the created instances
+        Employee template = Expressions.template( Employee.class, repo );
+        assertSame( employee, Iterables.getOnlyElement( uow.query( Employee.class )
+                .where( eq( template.name, "employee" ) ).execute() ) );
+
+        // new UnitOfWork: query first, then by id
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        List<Employee> results = Lists.newArrayList( uow2.query( Employee.class )
+                .where( is( template.company, company ) ).execute() );
+        assertEquals( 2, results.size() );
+        for (Employee result : results) {
+            assertTrue( result.id() instanceof Long );
+            assertSame( uow2.entity( Employee.class, result.id() ), result );
+        }
+
+        // by id, then query
+        UnitOfWork uow3 = repo.newUnitOfWork();
+        Employee loaded = uow3.entity( Employee.class, (Long)employee.id() );
+        assertSame( loaded, Iterables.getOnlyElement( uow3.query( Employee.class )
+                .where( id( employee.id() ) ).execute() ) );
+        assertSame( loaded, Iterables.getOnlyElement( uow3.query( Employee.class )
+                .where( eq( template.name, "employee" ) ).execute() ) );
+
+        // associations
+        Company loadedCompany = loaded.company.get();
+        assertEquals( company.id(), loadedCompany.id() );
+        assertSame( uow3.entity( Company.class, company.id() ), loadedCompany );
+        assertSame( loadedCompany, uow3.entity( other ).company.get() );
+        assertEquals( 2, uow3.query( Employee.class ).where( is( template.company, loadedCompany ) ).execute().size() );
+
+        uow2.close();
+        uow3.close();
+    }
+
+}
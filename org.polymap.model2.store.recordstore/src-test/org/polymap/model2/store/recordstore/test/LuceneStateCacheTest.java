@@ -0,0 +1,106 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore.test;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.engine.cache.EntityStateCache;
+import org.polymap.model2.engine.cache.SimpleCacheManager;
+import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.UnitOfWork;
+import org.polymap.model2.store.recordstore.RecordStoreAdapter;
+import org.polymap.model2.test.Company;
+import org.polymap.model2.test.ComplexModelTest;
+import org.polymap.model2.test.Employee;
+import org.polymap.recordstore.IRecordStore;
+import org.polymap.recordstore.lucene.LuceneRecordStore;
+
+/**
+ * The {@link ComplexModelTest} with {@link IRecordStore}/Lucene backend and
+ * {@link EntityStateCache} enabled.
+ *
+ * @author Falko Bräutigam
+ */
+public class LuceneStateCacheTest
+        extends ComplexModelTest {
+
+    private static final Log log = LogFactory.getLog( LuceneStateCacheTest.class );
+
+    protected IRecordStore          store;
+
+    protected EntityStateCache      stateCache;
+
+
+    public LuceneStateCacheTest( String name ) {
+        super( name );
+    }
+
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        store = new LuceneRecordStore();
+        stateCache = new EntityStateCache( 1000 );
+        repo = EntityRepository.newConfiguration()
+                .store.set( new RecordStoreAdapter( store ) )
+                .entities.set( new Class[] {Employee.class, Company.class} )
+                .stateCache.set( stateCache )
+                .create();
+        uow = repo.newUnitOfWork();
+    }
+
+
+    public void testSharedState() {
+        Employee employee = uow.createEntity( Employee.class, null, (Employee proto) -> {
+            proto.jap.set( 1 );
+            return proto;
+        });
+        uow.commit();
+
+        // miss: load from store
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        assertEquals( 1, (int)uow2.entity( employee ).jap.get() );
+        assertEquals( 0, stateCache.hitCount() );
+
+        // hit: clone of the snapshot
+        UnitOfWork uow3 = repo.newUnitOfWork();
+        Employee employee3 = uow3.entity( employee );
+        assertEquals( 1, (int)employee3.jap.get() );
+        assertEquals( 1, stateCache.hitCount() );
+
+        // modifications are private to the UnitOfWork
+        employee3.jap.set( 3 );
+        UnitOfWork uow4 = repo.newUnitOfWork();
+        assertEquals( 1, (int)uow4.entity( employee ).jap.get() );
+
+        // commit invalidates
+        uow3.commit();
+        UnitOfWork uow5 = repo.newUnitOfWork();
+        assertEquals( 3, (int)uow5.entity( employee ).jap.get() );
+        log.info( "State cache: " + stateCache );
+    }
+
+
+    public void testUnboundedCacheManager() {
+        try {
+            new EntityStateCache( new SimpleCacheManager(), 1000, EntityStateCache.DEFAULT_STRIPES );
+            fail( "Unbounded cache manager should be rejected." );
+        }
+        catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+}
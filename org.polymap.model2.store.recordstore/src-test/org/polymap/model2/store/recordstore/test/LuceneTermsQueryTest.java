@@ -0,0 +1,196 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+
+import org.polymap.model2.store.recordstore.LuceneTermsQuery;
+import org.polymap.model2.test.Timer;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of {@link LuceneTermsQuery}.
+ *
+ * @author Falko Bräutigam
+ */
+public class LuceneTermsQueryTest
+        extends TestCase {
+
+    private static final Log log = LogFactory.getLog( LuceneTermsQueryTest.class );
+
+    public static final int         DOCS = 100000;
+
+    /** Shared by all tests, created once. */
+    private static RAMDirectory     directory;
+
+    private DirectoryReader         reader;
+
+    private IndexSearcher           searcher;
+
+
+    @Override
+    protected void setUp() throws Exception {
+        if (directory == null) {
+            directory = new RAMDirectory();
+            // just untokenized fields, no analyzer needed
+            try (IndexWriter writer = new IndexWriter( directory, new IndexWriterConfig( Version.LATEST, null ) )) {
+                for (int i=0; i<DOCS; i++) {
+                    Document doc = new Document();
+                    doc.add( new StringField( "id", "doc." + i, Store.NO ) );
+                    doc.add( new LongField( "num", i, Store.NO ) );
+                    writer.addDocument( doc );
+                }
+            }
+        }
+        reader = DirectoryReader.open( directory );
+        searcher = new IndexSearcher( reader );
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        reader.close();
+    }
+
+
+    protected int count( Query query ) throws Exception {
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        searcher.search( query, collector );
+        return collector.getTotalHits();
+    }
+
+
+    public void testStrings() throws Exception {
+        // more terms than BooleanQuery clauses, wanted terms missing in the index in between
+        List<Object> values = new ArrayList();
+        int expected = 0;
+        for (int i=0; i<DOCS; i+=30) {
+            values.add( "doc." + i );
+            values.add( "doc." + i + ".missing" );
+            values.add( "doc." + i );
+            expected ++;
+        }
+        assertTrue( values.size() > BooleanQuery.getMaxClauseCount() );
+
+        Timer timer = Timer.startNow();
+        BytesRef[] terms = LuceneTermsQuery.termsOf( "id", values.toArray(),
+                value -> new TermQuery( new Term( "id", (String)value ) ) );
+        LuceneTermsQuery query = new LuceneTermsQuery( "id", terms );
+        assertEquals( 2 * expected, query.size() );
+        assertEquals( expected, count( query ) );
+        log.info( "Strings: " + query + " -> " + expected + " (" + timer.elapsedTime() + "ms)" );
+    }
+
+
+    /**
+     * Compares {@link LuceneTermsQuery} with a {@link BooleanQuery} of one clause
+     * per term, for 10 to 100.000 ids.
+     */
+    public void testPerformance() throws Exception {
+        int maxClauseCount = BooleanQuery.getMaxClauseCount();
+        BooleanQuery.setMaxClauseCount( DOCS );
+        try {
+            for (int size=10; size<=DOCS; size*=10) {
+                Object[] ids = new Object[ size ];
+                for (int i=0; i<size; i++) {
+                    ids[i] = "doc." + (i * (DOCS / size));
+                }
+                // warm up and check
+                BooleanQuery booleanQuery = new BooleanQuery();
+                for (Object id : ids) {
+                    booleanQuery.add( new TermQuery( new Term( "id", (String)id ) ), BooleanClause.Occur.SHOULD );
+                }
+                assertEquals( size, count( booleanQuery ) );
+                BytesRef[] terms = LuceneTermsQuery.termsOf( "id", ids, id -> new TermQuery( new Term( "id", (String)id ) ) );
+                assertEquals( size, count( new LuceneTermsQuery( "id", terms ) ) );
+
+                int loops = Math.max( 1, 100000 / size );
+                Timer timer = Timer.startNow();
+                for (int i=0; i<loops; i++) {
+                    BooleanQuery query = new BooleanQuery();
+                    for (Object id : ids) {
+                        query.add( new TermQuery( new Term( "id", (String)id ) ), BooleanClause.Occur.SHOULD );
+                    }
+                    count( query );
+                }
+                double booleanTime = (double)timer.elapsedTime() / loops;
+
+                timer.start();
+                for (int i=0; i<loops; i++) {
+                    count( new LuceneTermsQuery( "id", 
+                            LuceneTermsQuery.termsOf( "id", ids, id -> new TermQuery( new Term( "id", (String)id ) ) ) ) );
+                }
+                double termsTime = (double)timer.elapsedTime() / loops;
+                log.info( String.format( "ids: %6d -- BooleanQuery: %8.3fms, LuceneTermsQuery: %8.3fms", 
+                        size, booleanTime, termsTime ) );
+            }
+        }
+        finally {
+            BooleanQuery.setMaxClauseCount( maxClauseCount );
+        }
+    }
+
+
+    public void testNumbers() throws Exception {
+        Object[] values = {-1L, 0L, 5L, 7L, (long)DOCS-1, (long)DOCS, 7L};
+        BytesRef[] terms = LuceneTermsQuery.termsOf( "num", values,
+                value -> NumericRangeQuery.newLongRange( "num", (Long)value, (Long)value, true, true ) );
+        assertEquals( 6, terms.length );
+        assertEquals( 4, count( new LuceneTermsQuery( "num", terms ) ) );
+    }
+
+
+    public void testNoMatch() throws Exception {
+        assertEquals( 0, count( new LuceneTermsQuery( "id", new BytesRef[0] ) ) );
+        assertEquals( 0, count( new LuceneTermsQuery( "id", new BytesRef[] {new BytesRef( "a" ), new BytesRef( "z" )} ) ) );
+        assertEquals( 0, count( new LuceneTermsQuery( "unknown", new BytesRef[] {new BytesRef( "doc.1" )} ) ) );
+    }
+
+
+    public void testNotEncodable() throws Exception {
+        assertNull( LuceneTermsQuery.termOf( "id", new WildcardQuery( new Term( "id", "doc.*" ) ) ) );
+        assertNull( LuceneTermsQuery.termOf( "num", NumericRangeQuery.newLongRange( "num", 1L, 2L, true, true ) ) );
+        assertNull( LuceneTermsQuery.termOf( "other", new TermQuery( new Term( "id", "doc.1" ) ) ) );
+        assertNull( LuceneTermsQuery.termsOf( "id", new Object[] {"doc.1", "doc.*"},
+                value -> value.toString().endsWith( "*" )
+                        ? new WildcardQuery( new Term( "id", (String)value ) )
+                        : new TermQuery( new Term( "id", (String)value ) ) ) );
+    }
+
+}
@@ -92,6 +92,45 @@ public class OptimisticLockingTest
     }
 
 
+    /**
+     * The versions are stored in the records, so a second repository on the same
+     * store (another JVM) detects concurrent modifications too.
+     */
+    public void testSecondRepository() throws Exception {
+        Employee employee = uow.createEntity( Employee.class, null, (Employee prototype) -> {
+                prototype.name.set( "freitag" );
+                return prototype;
+        });
+        uow.commit();
+
+        EntityRepository repo2 = EntityRepository.newConfiguration()
+                .store.set( new OptimisticLocking( new RecordStoreAdapter( store ) ) )
+                .entities.set( new Class[] {Employee.class} )
+                .create();
+        uow = repo.newUnitOfWork();
+        Employee employee1 = uow.entity( Employee.class, employee.id() );
+
+        UnitOfWork uow2 = repo2.newUnitOfWork();
+        uow2.entity( Employee.class, employee.id() ).name.set( "changed" );
+        uow2.commit();
+
+        try {
+            employee1.name.set( "changed too" );
+            uow.commit();
+            fail( "No exception :(" );
+        }
+        catch (ConcurrentEntityModificationException e) {
+            // ok
+            uow.rollback();
+        }
+        
+        // after rollback the current version is loaded
+        assertEquals( "changed", employee1.name.get() );
+        employee1.name.set( "changed again" );
+        uow.commit();
+    }
+
+
     public void testMultipleCommits() throws Exception {
         Employee employee = uow.createEntity( Employee.class, null, new ValueInitializer<Employee>() {
             public Employee initialize( Employee prototype ) throws Exception {
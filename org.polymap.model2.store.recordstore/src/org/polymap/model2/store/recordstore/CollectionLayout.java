@@ -0,0 +1,118 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore;
+
+import static org.polymap.model2.store.recordstore.CollectionSizeStats.SIZE_SUFFIX;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.polymap.model2.CollectionProperty;
+import org.polymap.model2.ManyAssociation;
+import org.polymap.model2.runtime.CompositeInfo;
+import org.polymap.model2.runtime.PropertyInfo;
+import org.polymap.recordstore.IRecordState;
+
+/**
+ * The index layout of {@link CollectionProperty} and {@link ManyAssociation}
+ * fields. The elements are always stored as separate fields:
+ * <code>name[0]</code>, <code>name[1]</code>, ... plus
+ * <code>name/__size__</code>. This is the source of truth for reading and
+ * modifying collections in every layout.
+ *
+ * @see RecordStoreAdapter#setCollectionLayout(CollectionLayout)
+ * @author Falko Bräutigam
+ */
+public enum CollectionLayout {
+
+    /**
+     * Just the element fields. A quantifier query on a collection has one
+     * clause per possible element index. This is the default.
+     */
+    INDEXED,
+
+    /**
+     * Additionally, the ids of a {@link ManyAssociation} are indexed as one
+     * multi-valued field <code>name</code>, so that an ANY quantifier is just one
+     * query on this field. Primitive and Composite collections are indexed as in
+     * {@link #INDEXED}; the quantifiers do not query primitive collections.
+     * <p/>
+     * The multi-valued field is re-built when the record is stored. Records that
+     * were stored with another layout have to be migrated via
+     * {@link RecordStoreAdapter#migrateCollectionLayout()}.
+     */
+    MULTI_VALUED;
+
+
+    /**
+     * The sizes of the {@link ManyAssociation} fields of an entity type. Just
+     * these fields are handled by {@link #index(IRecordState, Map)}.
+     *
+     * @param sizes The result of {@link CollectionSizeStats#sizesOf(IRecordState)}.
+     * @param info The entity type of the state.
+     */
+    public static Map<String,Integer> manyAssociations( Map<String,Integer> sizes, CompositeInfo<?> info ) {
+        Map<String,Integer> result = new HashMap( sizes.size() * 2 );
+        for (PropertyInfo prop : info.getProperties()) {
+            if (prop.isAssociation() && prop.getMaxOccurs() > 1) {
+                String sizeFieldname = prop.getNameInStore() + SIZE_SUFFIX;
+                Integer size = sizes.get( sizeFieldname );
+                if (size != null) {
+                    result.put( sizeFieldname, size );
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Updates the multi-valued fields of the given state according to this
+     * layout.
+     *
+     * @param state The state to update.
+     * @param sizes The sizes of the {@link #manyAssociations(Map, CompositeInfo)
+     *        ManyAssociation fields} of the state.
+     * @return True if the state was modified.
+     */
+    public boolean index( IRecordState state, Map<String,Integer> sizes ) {
+        boolean modified = false;
+        for (Map.Entry<String,Integer> entry : sizes.entrySet()) {
+            String fieldname = StringUtils.removeEnd( entry.getKey(), SIZE_SUFFIX );
+            List<Object> values = new ArrayList( entry.getValue() );
+            if (this == MULTI_VALUED) {
+                FieldnameBuilder base = FieldnameBuilder.EMPTY.composite( fieldname );
+                for (int i=0; i<entry.getValue(); i++) {
+                    values.add( state.get( base.arrayElement( i ).get() ) );
+                }
+            }
+            List<Object> current = state.get( fieldname ) != null ? state.getList( fieldname ) : Collections.EMPTY_LIST;
+            if (!values.equals( current )) {
+                state.remove( fieldname );
+                for (Object value : values) {
+                    state.add( fieldname, value );
+                }
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore;
+
+import static org.polymap.model2.store.recordstore.RecordCompositeState.TYPE_KEY;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.CollectionProperty;
+import org.polymap.model2.ManyAssociation;
+import org.polymap.model2.runtime.ModelRuntimeException;
+import org.polymap.model2.test.Timer;
+import org.polymap.recordstore.IRecordState;
+import org.polymap.recordstore.IRecordStore;
+import org.polymap.recordstore.RecordQuery;
+import org.polymap.recordstore.ResultSet;
+import org.polymap.recordstore.SimpleQuery;
+
+/**
+ * The maximum size of every {@link CollectionProperty} and {@link ManyAssociation}
+ * field per entity type. Used by {@link LuceneQuantifierHandler} to find out how
+ * many array elements to query.
+ * <p/>
+ * The maximum of a field is searched in the store the first time it is
+ * requested. After that it is updated with the sizes of the states that are
+ * stored by {@link RecordStoreUnitOfWork}, so no further search is needed. The
+ * value is an upper bound: it is not decreased when collections shrink or
+ * entities are removed; it is exact again after the store has been re-opened.
+ *
+ * @see RecordStoreAdapter#collectionSizeStats()
+ * @author Falko Bräutigam
+ */
+public class CollectionSizeStats {
+
+    private static final Log log = LogFactory.getLog( CollectionSizeStats.class );
+
+    public static final String      SIZE_SUFFIX = FieldnameBuilder.COMPOSITE_DELIMITER + FieldnameBuilder.ARRAY_SIZE;
+
+    /**
+     * The sizes of the collection fields of the given state.
+     *
+     * @return Map of size field names into sizes, or null if the state has no
+     *         collection field.
+     */
+    public static Map<String,Integer> sizesOf( IRecordState state ) {
+        Map<String,Integer> result = null;
+        for (Map.Entry<String,Object> entry : state) {
+            if (entry.getKey().endsWith( SIZE_SUFFIX ) && entry.getValue() instanceof Number) {
+                result = result != null ? result : new HashMap();
+                result.put( entry.getKey(), ((Number)entry.getValue()).intValue() );
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Adds the sizes of a state to the given pending sizes.
+     *
+     * @param typeName The name of the entity type of the state.
+     * @param sizes The result of {@link #sizesOf(IRecordState)}.
+     * @param pending Entity type name -> size field name -> max size.
+     */
+    public static void collect( String typeName, Map<String,Integer> sizes, Map<String,Map<String,Integer>> pending ) {
+        Map<String,Integer> typeSizes = pending.computeIfAbsent( typeName, key -> new HashMap() );
+        sizes.forEach( (key,size) -> typeSizes.merge( key, size, Math::max ) );
+    }
+
+
+    // instance *******************************************
+
+    private IRecordStore                                store;
+
+    /** Entity type name -> size field name -> max size. */
+    private ConcurrentHashMap<String,ConcurrentHashMap<String,Integer>> types = new ConcurrentHashMap();
+
+    private LongAdder                                   searchCount = new LongAdder();
+
+
+    public CollectionSizeStats( IRecordStore store ) {
+        this.store = store;
+    }
+
+
+    /**
+     * The maximum number of elements of the given collection field over all
+     * entities of the given type.
+     *
+     * @param typeName The name of the entity type.
+     * @param fieldname The (prefixed) name of the collection field.
+     */
+    public int maxSize( String typeName, String fieldname ) {
+        String sizeFieldname = fieldname + SIZE_SUFFIX;
+        ConcurrentHashMap<String,Integer> fields = types.computeIfAbsent( typeName, key -> new ConcurrentHashMap() );
+        // search while holding the lock of the field, so that update() waits for it
+        return fields.computeIfAbsent( sizeFieldname, key -> search( typeName, sizeFieldname ) );
+    }
+
+
+    /**
+     * Updates the statistics with the sizes of a state that is about to be
+     * stored, or was just stored. Fields that were not requested yet are skipped;
+     * they are searched when they are requested for the first time.
+     *
+     * @param typeName The name of the entity type.
+     * @param sizes The result of {@link #sizesOf(IRecordState)}.
+     */
+    public void update( String typeName, Map<String,Integer> sizes ) {
+        ConcurrentHashMap<String,Integer> fields = types.get( typeName );
+        if (fields != null) {
+            for (Map.Entry<String,Integer> entry : sizes.entrySet()) {
+                fields.computeIfPresent( entry.getKey(), (key,max) -> Math.max( max, entry.getValue() ) );
+            }
+        }
+    }
+
+
+    /**
+     * Updates the statistics with the sizes collected by
+     * {@link #collect(String, Map, Map)}.
+     */
+    public void update( Map<String,Map<String,Integer>> pending ) {
+        pending.forEach( (typeName,sizes) -> update( typeName, sizes ) );
+    }
+
+
+    /**
+     * Drops all statistics. They are searched again when requested.
+     */
+    public void clear() {
+        types.clear();
+    }
+
+
+    /**
+     * The number of searches done so far.
+     */
+    public long searchCount() {
+        return searchCount.sum();
+    }
+
+
+    protected int search( String typeName, String sizeFieldname ) {
+        try {
+            searchCount.increment();
+            Timer timer = new Timer();
+            RecordQuery query = new SimpleQuery()
+                    .eq( TYPE_KEY, typeName )
+                    .sort( sizeFieldname, SimpleQuery.DESC, Integer.class )
+                    .setMaxResults( 1 );
+
+            ResultSet lengthResult = store.find( query );
+            Integer result = 0;
+            if (lengthResult.count() > 0) {
+                IRecordState biggest = lengthResult.get( 0 );
+                result = biggest.get( sizeFieldname );
+            }
+            log.debug( "    LUCENE: maxLength: " + sizeFieldname + " = " + result + " (" + timer.elapsedTime() + "ms)" );
+            return result != null ? result : 0;
+        }
+        catch (Exception e) {
+            throw new ModelRuntimeException( e );
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        int fields = types.values().stream().mapToInt( Map::size ).sum();
+        return getClass().getSimpleName() + "[types=" + types.size() + ", fields=" + fields + ", searches=" + searchCount() + "]";
+    }
+
+}
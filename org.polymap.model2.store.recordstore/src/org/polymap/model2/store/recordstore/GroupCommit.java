@@ -0,0 +1,271 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore;
+
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.runtime.ModelRuntimeException;
+import org.polymap.recordstore.IRecordState;
+import org.polymap.recordstore.IRecordStore;
+import org.polymap.recordstore.IRecordStore.Updater;
+
+/**
+ * Merges the modifications of concurrently committing
+ * {@link RecordStoreUnitOfWork}s into one {@link Updater}, so that the cost of
+ * {@link Updater#apply()} (index commit/refresh) is shared.
+ * <p/>
+ * The first committer becomes the leader. It waits up to the given window for
+ * other committers, takes up to maxBatches pending {@link Batch}es and applies
+ * them with one Updater. The other committers wait until their Batch has been
+ * applied, or until they become the leader of the next group. If the merged
+ * Updater fails, then every Batch of the group is applied separately, so every
+ * committer gets its own success or failure.
+ *
+ * @see RecordStoreAdapter#enableGroupCommit(int, long, TimeUnit)
+ * @author Falko Bräutigam
+ */
+public class GroupCommit {
+
+    private static final Log log = LogFactory.getLog( GroupCommit.class );
+
+    /**
+     * The modifications of one {@link RecordStoreUnitOfWork}.
+     */
+    public static class Batch {
+
+        protected List<IRecordState>    stored = new ArrayList();
+
+        protected List<IRecordState>    removed = new ArrayList();
+
+        /** Guarded by {@link GroupCommit#lock}. */
+        protected boolean               done;
+
+        protected Exception             failure;
+
+        public void store( IRecordState state ) {
+            stored.add( state );
+        }
+
+        public void remove( IRecordState state ) {
+            removed.add( state );
+        }
+
+        public boolean isEmpty() {
+            return stored.isEmpty() && removed.isEmpty();
+        }
+
+        protected void writeTo( Updater tx ) throws Exception {
+            for (IRecordState state : stored) {
+                tx.store( state );
+            }
+            for (IRecordState state : removed) {
+                tx.remove( state );
+            }
+        }
+    }
+
+
+    // instance *******************************************
+
+    private IRecordStore        store;
+
+    private int                 maxBatches;
+
+    private long                windowNanos;
+
+    private ReentrantLock       lock = new ReentrantLock();
+
+    /** Signaled when {@link #pending} reaches {@link #maxBatches}. */
+    private Condition           full = lock.newCondition();
+
+    /** Signaled when a group was applied or the leader has left. */
+    private Condition           changed = lock.newCondition();
+
+    private List<Batch>         pending = new ArrayList();
+
+    private boolean             leaderActive;
+
+    private LongAdder           batchCount = new LongAdder();
+
+    private LongAdder           groupCount = new LongAdder();
+
+
+    /**
+     * @param store
+     * @param maxBatches The maximum number of {@link Batch}es applied together.
+     * @param window The maximum time the leader waits for other committers.
+     * @param unit
+     */
+    public GroupCommit( IRecordStore store, int maxBatches, long window, TimeUnit unit ) {
+        assert maxBatches > 0;
+        this.store = store;
+        this.maxBatches = maxBatches;
+        this.windowNanos = unit.toNanos( window );
+    }
+
+
+    /**
+     * Applies the given batch together with the batches of other concurrent
+     * committers. Blocks until the batch has been applied.
+     *
+     * @throws ModelRuntimeException If applying the batch failed.
+     */
+    public void commit( Batch batch ) throws ModelRuntimeException {
+        lock.lock();
+        try {
+            pending.add( batch );
+            if (pending.size() >= maxBatches) {
+                full.signal();
+            }
+            while (!batch.done) {
+                if (!leaderActive) {
+                    leaderActive = true;
+                    try {
+                        leadOneGroup();
+                    }
+                    finally {
+                        leaderActive = false;
+                        changed.signalAll();
+                    }
+                }
+                else {
+                    changed.awaitUninterruptibly();
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        if (batch.failure != null) {
+            throw batch.failure instanceof ModelRuntimeException
+                    ? (ModelRuntimeException)batch.failure
+                    : new ModelRuntimeException( batch.failure );
+        }
+    }
+
+
+    /**
+     * Waits for other committers, applies one group and marks its batches done.
+     * Called with {@link #lock} held.
+     */
+    protected void leadOneGroup() {
+        long nanos = windowNanos;
+        try {
+            while (pending.size() < maxBatches && nanos > 0) {
+                nanos = full.awaitNanos( nanos );
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Batch> group = new ArrayList( pending.subList( 0, Math.min( maxBatches, pending.size() ) ) );
+        pending.subList( 0, group.size() ).clear();
+
+        lock.unlock();
+        Throwable error = null;
+        try {
+            apply( group );
+        }
+        catch (Throwable e) {
+            error = e;
+            throw e;
+        }
+        finally {
+            lock.lock();
+            for (Batch batch : group) {
+                if (error != null && batch.failure == null) {
+                    batch.failure = new ModelRuntimeException( error );
+                }
+                batch.done = true;
+            }
+        }
+    }
+
+
+    protected void apply( List<Batch> group ) {
+        batchCount.add( group.size() );
+        groupCount.increment();
+        log.debug( "Group commit: " + group.size() + " batches" );
+        try {
+            applyBatches( group );
+        }
+        catch (Exception e) {
+            if (group.size() == 1) {
+                group.get( 0 ).failure = e;
+            }
+            else {
+                // isolate the failing batch(es)
+                log.info( "Group commit failed, applying " + group.size() + " batches separately: " + e );
+                for (Batch batch : group) {
+                    try {
+                        applyBatches( singletonList( batch ) );
+                    }
+                    catch (Exception e2) {
+                        batch.failure = e2;
+                    }
+                }
+            }
+        }
+    }
+
+
+    protected void applyBatches( List<Batch> batches ) throws Exception {
+        Updater tx = store.prepareUpdate();
+        try {
+            for (Batch batch : batches) {
+                batch.writeTo( tx );
+            }
+        }
+        catch (Exception e) {
+            tx.discard();
+            throw e;
+        }
+        tx.apply();
+    }
+
+
+    /**
+     * The number of {@link Batch}es applied so far.
+     */
+    public long batchCount() {
+        return batchCount.sum();
+    }
+
+
+    /**
+     * The number of {@link Updater}s applied so far, not counting the retries
+     * after a failure.
+     */
+    public long groupCount() {
+        return groupCount.sum();
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[batches=" + batchCount() + ", groups=" + groupCount() + "]";
+    }
+
+}
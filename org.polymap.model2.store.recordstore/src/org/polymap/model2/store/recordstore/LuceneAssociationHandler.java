@@ -17,15 +17,11 @@ package org.polymap.model2.store.recordstore;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Query;
 
 import org.polymap.model2.engine.TemplateProperty;
 import org.polymap.model2.query.grammar.AssociationEquals;
 import org.polymap.model2.query.grammar.IdPredicate;
 import org.polymap.model2.runtime.ModelRuntimeException;
-import org.polymap.recordstore.QueryExpression;
 
 /**
  * 
@@ -38,32 +34,25 @@ class LuceneAssociationHandler
     private static Log log = LogFactory.getLog( LuceneAssociationHandler.class );
 
     @Override
-    public Query handle( AssociationEquals expression ) {
+    public Plan<AssociationEquals> plan( AssociationEquals expression ) {
         // Id
         if (expression.children[0] instanceof IdPredicate) {
-            IdPredicate predicate = (IdPredicate)expression.children[0];
-
             TemplateProperty assoc = expression.assoc;
             String fieldname = prefixedFieldname( assoc ).get();
+            String assocName = assoc.info().getName();
             
-            log( "ID", fieldname + " is/in " + ArrayUtils.toString( predicate.ids ) );
-            //assert predicate.ids.length == 1 : "Ids != 1 for Association: " + expression.assoc.getInfo().getName() + ", ids:" + ArrayUtils.toString( predicate.ids );
+            return (exp, b) -> {
+                IdPredicate predicate = (IdPredicate)exp.children[0];
+                log( b, "ID", fieldname + " is/in " + ArrayUtils.toString( predicate.ids ) );
+                //assert predicate.ids.length == 1 : "Ids != 1 for Association: " + expression.assoc.getInfo().getName() + ", ids:" + ArrayUtils.toString( predicate.ids );
             
-            if (predicate.ids.length == 0) {
-                throw new ModelRuntimeException( "Ids == 0 for Association: " + expression.assoc.info().getName() );                
-            }
-            else if (predicate.ids.length == 1) {
-                Object id = predicate.ids[0];
-                return builder.valueCoders.searchQuery( new QueryExpression.Equal( fieldname, id ) );
-            }
-            else {
-                BooleanQuery result = new BooleanQuery();
-                for (Object id : predicate.ids) {
-                    Query sub = builder.valueCoders.searchQuery( new QueryExpression.Equal( fieldname, id ) );
-                    result.add( sub, BooleanClause.Occur.SHOULD );
+                if (predicate.ids.length == 0) {
+                    throw new ModelRuntimeException( "Ids == 0 for Association: " + assocName );                
+                }
+                else {
+                    return anyOf( fieldname, storeIds( predicate.ids ), b );
                 }
-                return result;
-            }
+            };
         }
         // sub-expression
         else {
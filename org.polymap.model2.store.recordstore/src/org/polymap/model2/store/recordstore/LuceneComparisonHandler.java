@@ -39,27 +39,28 @@ class LuceneComparisonHandler
 
     
     @Override
-    public Query handle( ComparisonPredicate predicate ) {
+    public Plan<ComparisonPredicate> plan( ComparisonPredicate predicate ) {
         TemplateProperty prop = predicate.prop;
-        Object value = predicate.value;
-        if (value instanceof Enum) {
-            value = value.toString();
-        }
         String fieldname = prefixedFieldname( prop ).get();
-
         // eq
         if (predicate instanceof PropertyEquals) {
-            log( "EQUALS", fieldname + "==" + value );
-            return builder.valueCoders.searchQuery( new QueryExpression.Equal( fieldname, value ) ); 
+            return (exp, b) -> {
+                Object value = value( exp );
+                log( b, "EQUALS", fieldname + "==" + value );
+                return b.valueCoders.searchQuery( new QueryExpression.Equal( fieldname, value ) );
+            };
         }
         // notEq
         else if (predicate instanceof PropertyNotEquals) {
-            log( "NOT-EQUALS", fieldname + "==" + value );
-            Query query = builder.valueCoders.searchQuery( new QueryExpression.Equal( fieldname, value ) ); 
-            BooleanQuery result = new BooleanQuery();
-            result.add( LuceneQueryBuilder.ALL, BooleanClause.Occur.SHOULD );
-            result.add( query, BooleanClause.Occur.MUST_NOT );
-            return result;
+            return (exp, b) -> {
+                Object value = value( exp );
+                log( b, "NOT-EQUALS", fieldname + "==" + value );
+                Query query = b.valueCoders.searchQuery( new QueryExpression.Equal( fieldname, value ) ); 
+                BooleanQuery result = new BooleanQuery();
+                result.add( LuceneQueryBuilder.ALL, BooleanClause.Occur.SHOULD );
+                result.add( query, BooleanClause.Occur.MUST_NOT );
+                return result;
+            };
         }
 //        // ge
 //        else if (predicate instanceof GreaterOrEqualPredicate) {
@@ -79,12 +80,21 @@ class LuceneComparisonHandler
 //        }
         // matches
         else if (predicate instanceof PropertyMatches) {
-            log( "MATCHES", fieldname + ":" + value );
-            return builder.valueCoders.searchQuery( new QueryExpression.Match( fieldname, value ) ); 
+            return (exp, b) -> {
+                Object value = value( exp );
+                log( b, "MATCHES", fieldname + ":" + value );
+                return b.valueCoders.searchQuery( new QueryExpression.Match( fieldname, value ) );
+            };
         }
         else {
             throw new UnsupportedOperationException( "Predicate type not supported in comparison: " + predicate );
         }
     }
 
+
+    protected static Object value( ComparisonPredicate predicate ) {
+        Object value = predicate.value;
+        return value instanceof Enum ? value.toString() : value;
+    }
+
 }
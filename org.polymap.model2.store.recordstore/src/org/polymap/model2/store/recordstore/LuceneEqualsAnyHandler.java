@@ -14,13 +14,10 @@
  */
 package org.polymap.model2.store.recordstore;
 
-import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Query;
 
 import org.polymap.model2.engine.TemplateProperty;
 import org.polymap.model2.query.grammar.PropertyEqualsAny;
-import org.polymap.recordstore.QueryExpression;
 
 /**
  * 
@@ -31,31 +28,17 @@ class LuceneEqualsAnyHandler
         extends LuceneExpressionHandler<PropertyEqualsAny> {
 
     @Override
-    public Query handle( PropertyEqualsAny predicate ) {
+    public Plan<PropertyEqualsAny> plan( PropertyEqualsAny predicate ) {
         TemplateProperty prop = predicate.prop;
-        Object[] values = predicate.values;
-        
-        // support enums
-        for (int i=0; i<values.length; i++) {
-            if (values[i] instanceof Enum) {
-                values[i] = values[i].toString();
-            }
-        }
         String fieldname = prefixedFieldname( prop ).get();
-
-        // create query
-        if (predicate instanceof PropertyEqualsAny) {
-            BooleanQuery result = new BooleanQuery();
-            for (Object value : values) {
-                result.add( 
-                        builder.valueCoders.searchQuery( new QueryExpression.Equal( fieldname, value ) ),
-                        BooleanClause.Occur.SHOULD );                
+        return (exp, b) -> {
+            Object[] values = new Object[ exp.values.length ];
+            for (int i=0; i<values.length; i++) {
+                // support enums
+                values[i] = exp.values[i] instanceof Enum ? exp.values[i].toString() : exp.values[i];
             }
-            return result;
-        }
-        else {
-            throw new UnsupportedOperationException( "Predicate type not supported in comparison: " + predicate );
-        }
+            return values.length > 0 ? anyOf( fieldname, values, b ) : new BooleanQuery();
+        };
     }
 
 }
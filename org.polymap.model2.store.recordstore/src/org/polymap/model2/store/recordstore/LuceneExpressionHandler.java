@@ -14,30 +14,57 @@
  */
 package org.polymap.model2.store.recordstore;
 
+import java.util.function.Function;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
 
 import org.polymap.model2.Entity;
 import org.polymap.model2.PropertyBase;
 import org.polymap.model2.engine.TemplateProperty;
 import org.polymap.model2.query.grammar.BooleanExpression;
+import org.polymap.recordstore.QueryExpression;
 
 /**
- * 
+ * Compiles one type of {@link BooleanExpression} into a {@link Plan}. The handler
+ * does all the work that does not depend on the values of the expression:
+ * building field names, compiling the child expressions. The values are bound
+ * when the plan is executed.
  *
+ * @see LuceneQueryBuilder#plan(String, BooleanExpression, Class)
  * @author <a href="http://www.polymap.de">Falko Bräutigam</a>
  */
 abstract class LuceneExpressionHandler<T extends BooleanExpression> {
 
     private static final Log log = LogFactory.getLog( LuceneExpressionHandler.class );
 
+    /**
+     * Compiled query of an expression shape. Creates the Lucene {@link Query} for
+     * an expression of this shape and the values of the given expression.
+     * <p/>
+     * Plans are cached and shared between threads. Implementations must not
+     * reference the handler or the builder that created them; the builder
+     * executing the plan is given to {@link #bind(BooleanExpression, LuceneQueryBuilder)}.
+     */
+    @FunctionalInterface
+    interface Plan<T extends BooleanExpression> {
+        
+        public Query bind( T expression, LuceneQueryBuilder builder );
+    }
+    
+    
+    // instance *******************************************
+    
     protected LuceneQueryBuilder        builder;
     
     protected Class<? extends Entity>   resultType;
     
 
-    public abstract Query handle( T expression );
+    public abstract Plan<T> plan( T expression );
     
     
     /**
@@ -54,13 +81,61 @@ abstract class LuceneExpressionHandler<T extends BooleanExpression> {
         return builder.prefixedFieldname( (TemplateProperty)property );
     }
 
+    /**
+     * Matches any of the given values in the given field. Lists longer than
+     * {@link LuceneQueryBuilder#termsQueryThreshold} are matched by one
+     * {@link LuceneTermsQuery}, so that they do not hit the clause limit of
+     * {@link BooleanQuery}.
+     */
+    public static Query anyOf( String fieldname, Object[] values, LuceneQueryBuilder b ) {
+        Function<Object,Query> equal = value -> b.valueCoders.searchQuery( new QueryExpression.Equal( fieldname, value ) );
+        if (values.length == 1) {
+            return equal.apply( values[0] );
+        }
+        if (values.length > b.termsQueryThreshold) {
+            BytesRef[] terms = LuceneTermsQuery.termsOf( fieldname, values, equal );
+            if (terms != null) {
+                return new LuceneTermsQuery( fieldname, terms );
+            }
+        }
+        BooleanQuery result = new BooleanQuery();
+        for (Object value : values) {
+            result.add( equal.apply( value ), BooleanClause.Occur.SHOULD );
+        }
+        return result;
+    }
+
+
+    /**
+     * The given Entity ids in the form they are stored in.
+     *
+     * @see RecordCompositeState#storeId(Object)
+     */
+    public static Object[] storeIds( Object[] ids ) {
+        Object[] result = new Object[ ids.length ];
+        for (int i=0; i<ids.length; i++) {
+            result[i] = RecordCompositeState.storeId( ids[i] );
+        }
+        return result;
+    }
+
+
     public void log( String op, Object... params ) {
-        StringBuilder buf = new StringBuilder( 256 );
-        for (Object param : params) {
-            buf.append( buf.length() > 0 ? ", " : "" );
-            buf.append( param.toString() );
+        log( builder, op, params );
+    }
+
+    /**
+     * Logs from inside a {@link Plan}, which must not reference the handler.
+     */
+    public static void log( LuceneQueryBuilder builder, String op, Object... params ) {
+        if (log.isDebugEnabled()) {
+            StringBuilder buf = new StringBuilder( 256 );
+            for (Object param : params) {
+                buf.append( buf.length() > 0 ? ", " : "" );
+                buf.append( param.toString() );
+            }
+            log.debug( builder.logIndent + op + " : " + buf.toString() );
         }
-        log.debug( builder.logIndent + op + " : " + buf.toString() );    
     }
 
 }
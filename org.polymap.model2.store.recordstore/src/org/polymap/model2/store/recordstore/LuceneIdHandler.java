@@ -16,12 +16,8 @@ package org.polymap.model2.store.recordstore;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Query;
 
 import org.polymap.model2.query.grammar.IdPredicate;
-import org.polymap.recordstore.QueryExpression;
 import org.polymap.recordstore.lucene.LuceneRecordState;
 
 /**
@@ -36,27 +32,8 @@ class LuceneIdHandler
 
     
     @Override
-    public Query handle( IdPredicate predicate ) {
-//        if (fidFilter.getIdentifiers().size() > BooleanQuery.getMaxClauseCount()) {
-//            BooleanQuery.setMaxClauseCount( fidFilter.getIdentifiers().size() );
-//        }
-
-        if (predicate.ids.length == 1) {
-            return idQuery( predicate.ids[0] );
-        }
-        else {
-            BooleanQuery result = new BooleanQuery();
-            for (Object id : predicate.ids) {
-                result.add( idQuery( id ), BooleanClause.Occur.SHOULD );
-            }
-            return result;
-        }
-    }
-
-    
-    protected org.apache.lucene.search.Query idQuery( Object id ) {
-        return builder.valueCoders.searchQuery( 
-                new QueryExpression.Equal( LuceneRecordState.ID_FIELD, id ) );        
+    public Plan<IdPredicate> plan( IdPredicate predicate ) {
+        return (exp, b) -> anyOf( LuceneRecordState.ID_FIELD, storeIds( exp.ids ), b );
     }
 
 }
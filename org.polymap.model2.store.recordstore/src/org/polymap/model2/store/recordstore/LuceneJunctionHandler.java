@@ -18,7 +18,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Query;
 
 import org.polymap.model2.query.grammar.BooleanExpression;
 import org.polymap.model2.query.grammar.Conjunction;
@@ -37,39 +36,52 @@ class LuceneJunctionHandler
 
     
     @Override
-    public Query handle( BooleanExpression expression ) {
+    public Plan<BooleanExpression> plan( BooleanExpression expression ) {
         // AND
         if (expression instanceof Conjunction) {
             log( "AND", "" );
-            Conjunction conjunction = (Conjunction)expression;
-            BooleanQuery result = new BooleanQuery();
-            for (BooleanExpression child : conjunction.children) {
-                Query left = builder.processExpression( null, child, resultType );
-                result.add( left, BooleanClause.Occur.MUST );                
-            }
-            return result;
+            Plan[] children = childPlans( expression );
+            return (exp, b) -> {
+                BooleanQuery result = new BooleanQuery();
+                for (int i=0; i<children.length; i++) {
+                    result.add( children[i].bind( exp.children[i], b ), BooleanClause.Occur.MUST );
+                }
+                return result;
+            };
         }
         // OR
         else if (expression instanceof Disjunction) {
             log( "OR", "" );
-            Disjunction disjunction = (Disjunction)expression;
-            BooleanQuery result = new BooleanQuery();
-            for (BooleanExpression child : disjunction.children) {
-                Query left = builder.processExpression( null, child, resultType );
-                result.add( left, BooleanClause.Occur.SHOULD );                
-            }
-            return result;
+            Plan[] children = childPlans( expression );
+            return (exp, b) -> {
+                BooleanQuery result = new BooleanQuery();
+                for (int i=0; i<children.length; i++) {
+                    result.add( children[i].bind( exp.children[i], b ), BooleanClause.Occur.SHOULD );
+                }
+                return result;
+            };
         }
         // NOT
         else if (expression instanceof Negation) {
             log( "NOT", "" );
-            Query arg = builder.processExpression( null, ((Negation)expression).children[0], resultType );
-            BooleanQuery result = new BooleanQuery();
-            result.add( LuceneQueryBuilder.ALL, BooleanClause.Occur.SHOULD );
-            result.add( arg, BooleanClause.Occur.MUST_NOT );
-            return result;
+            Plan arg = builder.plan( null, ((Negation)expression).children[0], resultType );
+            return (exp, b) -> {
+                BooleanQuery result = new BooleanQuery();
+                result.add( LuceneQueryBuilder.ALL, BooleanClause.Occur.SHOULD );
+                result.add( arg.bind( exp.children[0], b ), BooleanClause.Occur.MUST_NOT );
+                return result;
+            };
         }
-        return null;
+        throw new UnsupportedOperationException( "Junction type not supported: " + expression );
     }
 
+
+    protected Plan[] childPlans( BooleanExpression expression ) {
+        Plan[] result = new Plan[ expression.children.length ];
+        for (int i=0; i<result.length; i++) {
+            result[i] = builder.plan( null, expression.children[i], resultType );
+        }
+        return result;
+    }
+    
 }
@@ -19,6 +19,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
 
 import org.polymap.model2.Entity;
 import org.polymap.model2.query.grammar.BooleanExpression;
@@ -29,13 +30,11 @@ import org.polymap.model2.query.grammar.Quantifier;
 import org.polymap.model2.query.grammar.TheAssociationQuantifier;
 import org.polymap.model2.query.grammar.TheCompositeQuantifier;
 import org.polymap.model2.runtime.ModelRuntimeException;
-import org.polymap.model2.test.Timer;
 import org.polymap.recordstore.IRecordFieldSelector;
 import org.polymap.recordstore.IRecordState;
 import org.polymap.recordstore.QueryExpression;
 import org.polymap.recordstore.RecordQuery;
 import org.polymap.recordstore.ResultSet;
-import org.polymap.recordstore.SimpleQuery;
 import org.polymap.recordstore.lucene.LuceneRecordState;
 
 /**
@@ -57,16 +56,20 @@ class LuceneQuantifierHandler
 
     
     @Override
-    public Query handle( Quantifier quantifier ) {
+    public Plan<Quantifier> plan( Quantifier quantifier ) {
         // composite
         if (quantifier instanceof TheCompositeQuantifier) {
             String fieldname = simpleFieldname( quantifier.prop );
             log( "THE Composite", fieldname );
-            return builder.processExpression( fieldname, quantifier.subExp(), resultType );
+            Plan sub = builder.plan( fieldname, quantifier.subExp(), resultType );
+            return (exp, b) -> sub.bind( exp.subExp(), b );
         }
 
+        // the other quantifiers depend on the content of the store
+        builder.uncacheable();
+
         // composite collection
-        else if (quantifier instanceof CompositeCollectionQuantifier) {
+        if (quantifier instanceof CompositeCollectionQuantifier) {
             int maxElements = maxElementsInCollection( prefixedFieldname( quantifier.prop ).get() );
             
             // processExpressions accumulates the traversedPrefix; 
@@ -74,14 +77,20 @@ class LuceneQuantifierHandler
             FieldnameBuilder fieldname = FieldnameBuilder.EMPTY.composite( simpleFieldname( quantifier.prop ) );
 
             log( quantifier.type + " of Composites", fieldname );
-            BooleanQuery result = new BooleanQuery();
+            Plan[] elements = new Plan[ maxElements ];
             for (int i=0; i<maxElements; i++) {
                 String elmname = fieldname.arrayElement( i ).get();
-                Query propQuery = builder.processExpression( elmname, quantifier.subExp(), resultType );
-                result.add( propQuery, 
-                        quantifier.type == Quantifier.Type.ANY ? BooleanClause.Occur.SHOULD : BooleanClause.Occur.MUST );
+                elements[i] = builder.plan( elmname, quantifier.subExp(), resultType );
             }
-            return result;
+            Quantifier.Type type = quantifier.type;
+            return (exp, b) -> {
+                BooleanQuery result = new BooleanQuery();
+                for (Plan element : elements) {
+                    result.add( element.bind( exp.subExp(), b ), 
+                            type == Quantifier.Type.ANY ? BooleanClause.Occur.SHOULD : BooleanClause.Occur.MUST );
+                }
+                return result;
+            };
         }
         
         // association
@@ -91,7 +100,7 @@ class LuceneQuantifierHandler
             
             FieldnameBuilder fieldname = prefixedFieldname( quantifier.prop );
             log( "THE association: " + fieldname + " contains any of", assocIds );
-            return idQuery( fieldname.get(), assocIds );
+            return (exp, b) -> idQuery( fieldname.get(), assocIds, b );
         }
         
         // many association
@@ -102,15 +111,24 @@ class LuceneQuantifierHandler
             Object[] assocIds = subQuery( assocEntityType, quantifier.subExp() );
             
             FieldnameBuilder fieldname = prefixedFieldname( quantifier.prop );
+            if (builder.collectionLayout == CollectionLayout.MULTI_VALUED) {
+                log( quantifier.type + " of association: " + fieldname + " (multi-valued) contains any of", assocIds );
+                return (exp, b) -> idQuery( fieldname.get(), assocIds, b );
+            }
             int maxElements = maxElementsInCollection( fieldname.get() );
             
             log( quantifier.type + " of association: " + fieldname + " contains any of", assocIds );
-            BooleanQuery result = new BooleanQuery();
-            for (int i=0; i<maxElements; i++) {
-                String elmname = fieldname.arrayElement( i ).get();
-                result.add( idQuery( elmname, assocIds ), BooleanClause.Occur.SHOULD );
-            }
-            return result;
+            return (exp, b) -> {
+                // the encoded ids are shared by the queries of all elements
+                BytesRef[] terms = maxElements > 0 ? termsOf( fieldname.arrayElement( 0 ).get(), assocIds, b ) : null;
+                BooleanQuery result = new BooleanQuery();
+                for (int i=0; i<maxElements; i++) {
+                    String elmname = fieldname.arrayElement( i ).get();
+                    result.add( terms != null ? new LuceneTermsQuery( elmname, terms ) : idQuery( elmname, assocIds, b ), 
+                            BooleanClause.Occur.SHOULD );
+                }
+                return result;
+            };
         }
         
         else {
@@ -120,29 +138,7 @@ class LuceneQuantifierHandler
 
     
     protected int maxElementsInCollection( String fieldname ) {
-        try {
-            Timer timer = new Timer();
-            
-            String lengthFieldname = fieldname + "/__size__";
-            
-            RecordQuery query = new SimpleQuery()
-                    .eq( RecordCompositeState.TYPE_KEY, resultType.getName() )
-                    .sort( lengthFieldname, SimpleQuery.DESC, Integer.class )
-                    .setMaxResults( 1 );
-            
-            ResultSet lengthResult = builder.store.find( query );
-            Integer result = 0;
-            if (lengthResult.count() > 0) {
-                IRecordState biggest = lengthResult.get( 0 );
-                result = biggest.get( lengthFieldname );
-            }
-            log.debug( "    LUCENE: maxLength: " + result + " (" + timer.elapsedTime() + "ms)" );
-            return result != null ? result : 0;
-        }
-        catch (Exception e) {
-            log.info( "", e );
-            throw new RuntimeException( e );
-        }
+        return builder.sizeStats.maxSize( resultType.getName(), fieldname );
     }
 
 
@@ -156,12 +152,12 @@ class LuceneQuantifierHandler
         if (exp instanceof IdPredicate) {
             // we know the ids already, no need to execute query
             // XXX check if entity acrually exists?
-            return ((IdPredicate)exp).ids;
+            return storeIds( ((IdPredicate)exp).ids );
         }
         
         // execute sub expression
         else {
-            RecordQuery recordQuery = new LuceneQueryBuilder( builder.store, subLogIndent ).createQuery( entityType, exp );
+            RecordQuery recordQuery = new LuceneQueryBuilder( builder.store, builder.plans, builder.sizeStats, builder.collectionLayout, builder.termsQueryThreshold, subLogIndent ).createQuery( entityType, exp );
 
             // load just the ID field
             recordQuery.setFieldSelector( new IRecordFieldSelector() {
@@ -172,13 +168,19 @@ class LuceneQuantifierHandler
 
             try {
                 ResultSet rs = builder.store.find( recordQuery );
-                Object[] result = new Object[ rs.count() ];
-                int i = 0;
-                for (IRecordState state : rs) {
-                    result[i] = state.id();
-                    assert result[i] != null;
+                try {
+                    Object[] result = new Object[ rs.count() ];
+                    int i = 0;
+                    for (IRecordState state : rs) {
+                        result[i] = RecordCompositeState.storeId( state.id() );
+                        assert result[i] != null;
+                        i ++;
+                    }
+                    return result;
+                }
+                finally {
+                    rs.close();
                 }
-                return result;
             }
             catch (Exception e) {
                 throw new ModelRuntimeException( "Exception during association sub-query.", e );
@@ -187,22 +189,28 @@ class LuceneQuantifierHandler
     }
 
 
-    protected Query idQuery( String fieldname, Object[] ids ) {
-        if (ids.length == 1) {
-            return idQuery( fieldname, ids[0] );
-        }
-        else {
-            BooleanQuery result = new BooleanQuery();
-            for (Object id : ids) {
-                result.add( idQuery( fieldname, id ), BooleanClause.Occur.SHOULD );
-            }
-            return result;
-        }
+    /**
+     * Joins the ids of a sub-query. Many ids are matched by a
+     * {@link LuceneTermsQuery}, which does not need a clause per id.
+     */
+    protected static Query idQuery( String fieldname, Object[] ids, LuceneQueryBuilder b ) {
+        return ids.length > 0 ? anyOf( fieldname, ids, b ) : new BooleanQuery();
+    }
+
+
+    /**
+     * The encoded terms of the given ids, or null if the ids are not more than
+     * {@link LuceneQueryBuilder#termsQueryThreshold} or cannot be encoded into terms.
+     */
+    protected static BytesRef[] termsOf( String fieldname, Object[] ids, LuceneQueryBuilder b ) {
+        return ids.length > b.termsQueryThreshold
+                ? LuceneTermsQuery.termsOf( fieldname, ids, id -> idQuery( fieldname, id, b ) )
+                : null;
     }
 
 
-    protected org.apache.lucene.search.Query idQuery( String fieldname, Object id ) {
-        return builder.valueCoders.searchQuery( 
+    protected static org.apache.lucene.search.Query idQuery( String fieldname, Object id, LuceneQueryBuilder b ) {
+        return b.valueCoders.searchQuery( 
                 new QueryExpression.Equal( fieldname, id ) );        
     }
     
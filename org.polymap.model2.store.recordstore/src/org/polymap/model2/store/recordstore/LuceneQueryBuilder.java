@@ -13,7 +13,12 @@
 package org.polymap.model2.store.recordstore;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,14 +32,27 @@ import org.apache.lucene.search.TermQuery;
 import org.polymap.model2.Entity;
 import org.polymap.model2.engine.TemplateProperty;
 import org.polymap.model2.query.Expressions;
+import org.polymap.model2.query.grammar.AssociationEquals;
 import org.polymap.model2.query.grammar.BooleanExpression;
+import org.polymap.model2.query.grammar.ComparisonPredicate;
+import org.polymap.model2.query.grammar.Conjunction;
+import org.polymap.model2.query.grammar.Disjunction;
+import org.polymap.model2.query.grammar.IdPredicate;
+import org.polymap.model2.query.grammar.Negation;
+import org.polymap.model2.query.grammar.PropertyEqualsAny;
+import org.polymap.model2.query.grammar.Quantifier;
+import org.polymap.model2.store.recordstore.LuceneExpressionHandler.Plan;
 import org.polymap.recordstore.RecordQuery;
 import org.polymap.recordstore.lucene.LuceneRecordQuery;
 import org.polymap.recordstore.lucene.LuceneRecordStore;
 import org.polymap.recordstore.lucene.ValueCoders;
 
 /**
- * Converts {@link BooleanExpression} into Lucene queries.
+ * Converts {@link BooleanExpression} into Lucene queries. The expression is
+ * compiled into a {@link Plan} by the {@link LuceneExpressionHandler} of its
+ * type. Plans are cached by the shape of the expression in
+ * {@link LuceneQueryPlans}, so that executing the same query with other values
+ * just binds the values.
  *
  * @author <a href="http://www.polymap.de">Falko Bräutigam</a>
  */
@@ -45,19 +63,40 @@ class LuceneQueryBuilder {
 
     static final Query                                            ALL             = new MatchAllDocsQuery();
 
-    private static List<Class<? extends LuceneExpressionHandler>> handlers;
+    /**
+     * The handlers by expression type. {@link #handlerFor(Class)} resolves the
+     * most specific type of an expression class.
+     */
+    private static Map<Class<? extends BooleanExpression>,Supplier<LuceneExpressionHandler>> handlers = new HashMap();
+
+    /** The resolved handlers by actual expression class. */
+    private static ConcurrentMap<Class,Supplier<LuceneExpressionHandler>> resolved = new ConcurrentHashMap();
 
     static {
-        // more frequently used first
-        handlers = new ArrayList();
-        handlers.add( LuceneComparisonHandler.class );
-        handlers.add( LuceneEqualsAnyHandler.class );
-        handlers.add( LuceneJunctionHandler.class );
-        handlers.add( LuceneAssociationHandler.class );
-        handlers.add( LuceneIdHandler.class );
-        handlers.add( LuceneQuantifierHandler.class );
+        handlers.put( ComparisonPredicate.class, LuceneComparisonHandler::new );
+        handlers.put( PropertyEqualsAny.class, LuceneEqualsAnyHandler::new );
+        handlers.put( Conjunction.class, LuceneJunctionHandler::new );
+        handlers.put( Disjunction.class, LuceneJunctionHandler::new );
+        handlers.put( Negation.class, LuceneJunctionHandler::new );
+        handlers.put( AssociationEquals.class, LuceneAssociationHandler::new );
+        handlers.put( IdPredicate.class, LuceneIdHandler::new );
+        handlers.put( Quantifier.class, LuceneQuantifierHandler::new );
+    }
+
+
+    protected static Supplier<LuceneExpressionHandler> handlerFor( Class<? extends BooleanExpression> type ) {
+        return resolved.computeIfAbsent( type, _type -> {
+            for (Class cl=_type; cl != null; cl=cl.getSuperclass()) {
+                Supplier<LuceneExpressionHandler> result = handlers.get( cl );
+                if (result != null) {
+                    return result;
+                }
+            }
+            throw new UnsupportedOperationException( "Expression not supported: " + _type.getName() );
+        });
     }
 
+
     // instance *******************************************
 
     protected LuceneRecordStore                                   store;
@@ -66,6 +105,19 @@ class LuceneQueryBuilder {
 
     protected ValueCoders                                         valueCoders;
 
+    /** The cache of compiled plans, or null if plans are not cached. */
+    protected LuceneQueryPlans                                    plans;
+
+    protected CollectionSizeStats                                 sizeStats;
+
+    protected CollectionLayout                                    collectionLayout;
+
+    /** Lists of values longer than this are matched by one {@link LuceneTermsQuery}. */
+    protected int                                                 termsQueryThreshold;
+
+    /** False if the plan currently compiled depends on the content of the store. */
+    protected boolean                                             cacheable;
+
     /**
      * The current fieldname prefix. This accumulates the names of the traversed
      * Quantifier expressions.
@@ -76,13 +128,26 @@ class LuceneQueryBuilder {
 
 
     public LuceneQueryBuilder( LuceneRecordStore store ) {
-        this.store = store;
-        this.valueCoders = store.getValueCoders();
+        this( store, null, new CollectionSizeStats( store ), CollectionLayout.INDEXED, LuceneTermsQuery.DEFAULT_THRESHOLD, "" );
     }
 
 
-    public LuceneQueryBuilder( LuceneRecordStore store, String logIndent ) {
-        this( store );
+    /**
+     * @param store
+     * @param plans The cache of compiled plans, or null.
+     * @param sizeStats The collection sizes of the store.
+     * @param collectionLayout The index layout of the collections in the store.
+     * @param termsQueryThreshold See {@link RecordStoreAdapter#termsQueryThreshold()}.
+     * @param logIndent
+     */
+    public LuceneQueryBuilder( LuceneRecordStore store, LuceneQueryPlans plans, CollectionSizeStats sizeStats, 
+            CollectionLayout collectionLayout, int termsQueryThreshold, String logIndent ) {
+        this.store = store;
+        this.valueCoders = store.getValueCoders();
+        this.plans = plans;
+        this.sizeStats = sizeStats;
+        this.collectionLayout = collectionLayout;
+        this.termsQueryThreshold = termsQueryThreshold;
         this.logIndent = logIndent;
     }
 
@@ -114,7 +179,9 @@ class LuceneQueryBuilder {
 
 
     /**
-     * 
+     * Creates the Lucene query for the given expression. The {@link Plan} of the
+     * shape of the expression is taken from {@link #plans}, or compiled and put
+     * into the cache.
      *
      * @param prefix The next composite prefix to add to {@link #traversedPrefix}
      *        while processing the given expression.
@@ -124,46 +191,65 @@ class LuceneQueryBuilder {
      */
     protected Query processExpression( String prefix, final BooleanExpression expression,
             Class<? extends Entity> resultType ) {
+        if (plans == null || prefix != null) {
+            return plan( prefix, expression, resultType ).bind( expression, this );
+        }
+        String shape = LuceneQueryPlans.shapeOf( resultType, expression );
+        Plan plan = plans.get( shape );
+        if (plan == null) {
+            cacheable = true;
+            plan = plan( null, expression, resultType );
+            if (cacheable) {
+                plans.put( shape, plan );
+            }
+        }
+        return plan.bind( expression, this );
+    }
+
+
+    /**
+     * Compiles the given expression using the handler of its type.
+     *
+     * @param prefix The next composite prefix to add to {@link #traversedPrefix}
+     *        while compiling the given expression.
+     */
+    protected Plan plan( String prefix, final BooleanExpression expression, Class<? extends Entity> resultType ) {
         if (expression == null || expression == Expressions.TRUE) {
-            return ALL;
+            return (exp, b) -> ALL;
         }
         else if (expression == Expressions.FALSE) {
-            BooleanQuery result = new BooleanQuery();
-            result.add( ALL, BooleanClause.Occur.MUST_NOT );
-            return result;
+            return (exp, b) -> {
+                BooleanQuery result = new BooleanQuery();
+                result.add( ALL, BooleanClause.Occur.MUST_NOT );
+                return result;
+            };
         }
-        for (Class<? extends LuceneExpressionHandler> handlerClass : handlers) {
 
-            // update traversed prefix
-            FieldnameBuilder currentPrefix = traversedPrefix;
-            traversedPrefix = (prefix != null) ? traversedPrefix.composite( prefix ) : traversedPrefix;
-
-            String currentLogIndent = logIndent;
-            logIndent += "    ";
-            // find expression handler
-            try {
-                LuceneExpressionHandler handler = handlerClass.newInstance();
-                handler.builder = this;
-                handler.resultType = resultType;
+        // update traversed prefix
+        FieldnameBuilder currentPrefix = traversedPrefix;
+        traversedPrefix = (prefix != null) ? traversedPrefix.composite( prefix ) : traversedPrefix;
+
+        String currentLogIndent = logIndent;
+        logIndent += "    ";
+        try {
+            LuceneExpressionHandler handler = handlerFor( expression.getClass() ).get();
+            handler.builder = this;
+            handler.resultType = resultType;
+            return handler.plan( expression );
+        }
+        finally {
+            traversedPrefix = currentPrefix;
+            logIndent = currentLogIndent;
+        }
+    }
 
-                Query result = handler.handle( expression );
 
-                if (result != null) {
-                    return result;
-                }
-            }
-            catch (ClassCastException e) {
-                // handler's type parameter does not match
-            }
-            catch (InstantiationException | IllegalAccessException e) {
-                throw new RuntimeException( e );
-            }
-            finally {
-                traversedPrefix = currentPrefix;
-                logIndent = currentLogIndent;
-            }
-        }
-        throw new UnsupportedOperationException( "Expression not supported: " + expression.getClass().getName() );
+    /**
+     * Signals that the plan currently compiled depends on the content of the
+     * store and must not be cached.
+     */
+    protected void uncacheable() {
+        cacheable = false;
     }
 
 
@@ -0,0 +1,170 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.polymap.model2.Entity;
+import org.polymap.model2.engine.TemplateProperty;
+import org.polymap.model2.query.grammar.AssociationEquals;
+import org.polymap.model2.query.grammar.BooleanExpression;
+import org.polymap.model2.query.grammar.ComparisonPredicate;
+import org.polymap.model2.query.grammar.Quantifier;
+import org.polymap.model2.store.recordstore.LuceneExpressionHandler.Plan;
+
+/**
+ * Caches the compiled {@link Plan}s of {@link LuceneQueryBuilder} by the shape
+ * of the expression. The shape is the tree of expression types and properties
+ * without the values, so queries that differ just in their values share one
+ * plan. Plans of expressions that depend on the content of the store (collection
+ * and association quantifiers) are not cached.
+ * <p/>
+ * The size of the cache is bounded; if it is exceeded, then the cache is
+ * cleared.
+ *
+ * @see RecordStoreAdapter#queryPlans()
+ * @author Falko Bräutigam
+ */
+public class LuceneQueryPlans {
+
+    public static final int         DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * The shape of the given expression: the types of the expressions and the
+     * properties they reference, without the values.
+     */
+    protected static String shapeOf( Class<? extends Entity> resultType, BooleanExpression expression ) {
+        StringBuilder buf = new StringBuilder( 128 ).append( resultType.getName() ).append( ':' );
+        appendShape( expression, buf );
+        return buf.toString();
+    }
+
+
+    protected static void appendShape( BooleanExpression exp, StringBuilder buf ) {
+        if (exp == null) {
+            buf.append( "null" );
+            return;
+        }
+        buf.append( exp.getClass().getName() );
+        if (exp instanceof ComparisonPredicate) {
+            buf.append( '[' ).append( nameOf( ((ComparisonPredicate)exp).prop ) ).append( ']' );
+        }
+        else if (exp instanceof Quantifier) {
+            Quantifier quantifier = (Quantifier)exp;
+            buf.append( '[' ).append( nameOf( quantifier.prop ) ).append( ',' ).append( quantifier.type ).append( ']' );
+        }
+        else if (exp instanceof AssociationEquals) {
+            buf.append( '[' ).append( nameOf( ((AssociationEquals)exp).assoc ) ).append( ']' );
+        }
+        if (exp.children != null && exp.children.length > 0) {
+            buf.append( '(' );
+            for (BooleanExpression child : exp.children) {
+                appendShape( child, buf );
+                buf.append( ',' );
+            }
+            buf.append( ')' );
+        }
+    }
+
+
+    protected static String nameOf( Object prop ) {
+        return LuceneQueryBuilder.simpleFieldname( (TemplateProperty)prop );
+    }
+
+
+    // instance *******************************************
+
+    private int                                 maxSize;
+
+    private ConcurrentHashMap<String,Plan>      plans = new ConcurrentHashMap( 64 );
+
+    private LongAdder                           hits = new LongAdder();
+
+    private LongAdder                           misses = new LongAdder();
+
+
+    public LuceneQueryPlans() {
+        this( DEFAULT_MAX_SIZE );
+    }
+
+
+    /**
+     * @param maxSize The maximum number of cached plans.
+     */
+    public LuceneQueryPlans( int maxSize ) {
+        assert maxSize > 0;
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * The cached plan of the given shape, or null.
+     */
+    Plan get( String shape ) {
+        Plan result = plans.get( shape );
+        (result != null ? hits : misses).increment();
+        return result;
+    }
+
+
+    void put( String shape, Plan plan ) {
+        if (plans.size() >= maxSize) {
+            plans.clear();
+        }
+        plans.put( shape, plan );
+    }
+
+
+    public void clear() {
+        plans.clear();
+    }
+
+
+    /**
+     * The number of cached plans.
+     */
+    public int size() {
+        return plans.size();
+    }
+
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+
+    /**
+     * The number of queries that had to be compiled, including the queries
+     * whose plans are not cached.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+
+    public double hitRatio() {
+        long requests = hitCount() + missCount();
+        return requests == 0 ? 1.0 : (double)hitCount() / requests;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", hitRatio=" + hitRatio() + "]";
+    }
+
+}
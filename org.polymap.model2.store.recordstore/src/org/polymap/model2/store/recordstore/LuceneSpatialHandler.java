@@ -16,7 +16,6 @@ package org.polymap.model2.store.recordstore;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.search.Query;
 
 import org.polymap.model2.query.grammar.BooleanExpression;
 
@@ -31,7 +30,7 @@ class LuceneSpatialHandler
     private static Log log = LogFactory.getLog( LuceneSpatialHandler.class );
 
     @Override
-    public Query handle( BooleanExpression expression ) {
+    public Plan plan( BooleanExpression expression ) {
         // XXX Auto-generated method stub
         throw new RuntimeException( "not yet implemented." );
     }
@@ -0,0 +1,223 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.FilteredTermsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * Matches the documents that have any of a set of terms in one field. The terms
+ * are kept in a sorted array and the index is visited by seeking from one term
+ * to the next, so that a big set of terms does not need a {@link BooleanQuery}
+ * clause per term. With the default rewrite method a big result is collected
+ * in a bitset filter.
+ *
+ * @author Falko Bräutigam
+ */
+public class LuceneTermsQuery
+        extends MultiTermQuery {
+
+    /** The default of {@link RecordStoreAdapter#termsQueryThreshold()}. */
+    public static final int     DEFAULT_THRESHOLD = 16;
+
+
+    /**
+     * The single index term that is matched by the given query, or null if the
+     * query is not a {@link TermQuery} or an exact {@link NumericRangeQuery} of
+     * the given field. Used to encode values the same way as the
+     * {@link org.polymap.recordstore.lucene.ValueCoders} do.
+     */
+    public static BytesRef termOf( String field, Query query ) {
+        if (query instanceof TermQuery) {
+            TermQuery termQuery = (TermQuery)query;
+            return termQuery.getTerm().field().equals( field ) ? termQuery.getTerm().bytes() : null;
+        }
+        else if (query instanceof NumericRangeQuery) {
+            NumericRangeQuery<?> range = (NumericRangeQuery)query;
+            Number value = range.getMin();
+            if (value == null || !value.equals( range.getMax() ) || !range.getField().equals( field )
+                    || !range.includesMin() || !range.includesMax()) {
+                return null;
+            }
+            // the full precision term is indexed for every precision step
+            BytesRefBuilder buf = new BytesRefBuilder();
+            if (value instanceof Long) {
+                NumericUtils.longToPrefixCoded( value.longValue(), 0, buf );
+            }
+            else if (value instanceof Integer) {
+                NumericUtils.intToPrefixCoded( value.intValue(), 0, buf );
+            }
+            else if (value instanceof Double) {
+                NumericUtils.longToPrefixCoded( NumericUtils.doubleToSortableLong( value.doubleValue() ), 0, buf );
+            }
+            else if (value instanceof Float) {
+                NumericUtils.intToPrefixCoded( NumericUtils.floatToSortableInt( value.floatValue() ), 0, buf );
+            }
+            else {
+                return null;
+            }
+            return buf.toBytesRef();
+        }
+        return null;
+    }
+
+
+    /**
+     * Encodes the given values into the terms of the given field.
+     *
+     * @param field The field to search.
+     * @param values The values to encode.
+     * @param equalQuery Creates the query of one value.
+     * @return The sorted, unique terms, or null if one of the values cannot be
+     *         {@link #termOf(String, Query) encoded}.
+     */
+    public static BytesRef[] termsOf( String field, Object[] values, Function<Object,Query> equalQuery ) {
+        BytesRef[] result = new BytesRef[ values.length ];
+        for (int i=0; i<values.length; i++) {
+            result[i] = termOf( field, equalQuery.apply( values[i] ) );
+            if (result[i] == null) {
+                return null;
+            }
+        }
+        Arrays.sort( result );
+        // remove duplicates
+        int size = 0;
+        for (int i=0; i<result.length; i++) {
+            if (size == 0 || !result[i].equals( result[size-1] )) {
+                result[size++] = result[i];
+            }
+        }
+        return size < result.length ? Arrays.copyOf( result, size ) : result;
+    }
+
+
+    // instance *******************************************
+
+    private BytesRef[]          terms;
+
+
+    /**
+     * @param field The field to search.
+     * @param terms The sorted and unique terms, as returned by
+     *        {@link #termsOf(String, Object[], Function)}. The array is not
+     *        copied and must not be modified afterwards.
+     */
+    public LuceneTermsQuery( String field, BytesRef[] terms ) {
+        super( field );
+        assert isSorted( terms ) : "Terms are not sorted/unique.";
+        this.terms = terms;
+    }
+
+
+    private static boolean isSorted( BytesRef[] terms ) {
+        for (int i=1; i<terms.length; i++) {
+            if (terms[i-1].compareTo( terms[i] ) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * The number of terms of this query.
+     */
+    public int size() {
+        return terms.length;
+    }
+
+
+    @Override
+    protected TermsEnum getTermsEnum( Terms fieldTerms, AttributeSource atts ) throws IOException {
+        return terms.length > 0 ? new SeekingTermsEnum( fieldTerms.iterator( null ) ) : TermsEnum.EMPTY;
+    }
+
+
+    /**
+     * Seeks from one wanted term to the next. Wanted terms that are not in the
+     * index are skipped.
+     */
+    protected class SeekingTermsEnum
+            extends FilteredTermsEnum {
+
+        /** The index of the next wanted term. */
+        private int             next;
+
+        public SeekingTermsEnum( TermsEnum tenum ) {
+            super( tenum, true );
+        }
+
+        @Override
+        protected BytesRef nextSeekTerm( BytesRef current ) throws IOException {
+            return next < terms.length ? terms[next] : null;
+        }
+
+        @Override
+        protected AcceptStatus accept( BytesRef term ) throws IOException {
+            // term is the ceiling of the last seek term
+            while (next < terms.length && terms[next].compareTo( term ) < 0) {
+                next ++;
+            }
+            if (next >= terms.length) {
+                return AcceptStatus.END;
+            }
+            else if (terms[next].equals( term )) {
+                next ++;
+                return AcceptStatus.YES_AND_SEEK;
+            }
+            else {
+                return AcceptStatus.NO_AND_SEEK;
+            }
+        }
+    }
+
+
+    @Override
+    public String toString( String defaultField ) {
+        StringBuilder buf = new StringBuilder( 64 );
+        if (!getField().equals( defaultField )) {
+            buf.append( getField() ).append( ':' );
+        }
+        return buf.append( "[" ).append( terms.length ).append( " terms]" ).toString();
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Arrays.hashCode( terms );
+    }
+
+
+    @Override
+    public boolean equals( Object obj ) {
+        return super.equals( obj ) && Arrays.equals( terms, ((LuceneTermsQuery)obj).terms );
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store.recordstore;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.polymap.model2.engine.UnitOfWorkNested;
+import org.polymap.recordstore.IRecordState;
+
+/**
+ * Copy-on-write view of an {@link IRecordState}. Reads go through to the parent
+ * state unless the field was written or removed. Written fields are kept in this
+ * overlay; the parent is never modified. Used for the entities of
+ * {@link UnitOfWorkNested}, which mostly just read the state of their parent.
+ * <p/>
+ * The values of a multi-valued field are copied from the parent into this
+ * overlay when the field is modified via {@link #add(String, Object)} the first
+ * time.
+ *
+ * @see RecordStoreUnitOfWork#overlayEntityState(org.polymap.model2.store.CompositeState)
+ * @author Falko Bräutigam
+ */
+class OverlayRecordState
+        implements IRecordState {
+
+    /**
+     * The values of a multi-valued field in {@link OverlayRecordState#written}.
+     */
+    protected static class Values
+            extends ArrayList<Object> {
+
+        public Values( Collection<?> values ) {
+            super( values );
+        }
+    }
+
+
+    private IRecordState            parent;
+
+    private Map<String,Object>      written = new HashMap( 32 );
+
+    private Set<String>             removed = new HashSet( 32 );
+
+
+    public OverlayRecordState( IRecordState parent ) {
+        assert parent != null;
+        this.parent = parent;
+    }
+
+
+    public IRecordState parent() {
+        return parent;
+    }
+
+
+    /**
+     * Copies the written and removed fields of this overlay into the parent
+     * state and resets this overlay.
+     */
+    public void mergeIntoParent() {
+        for (Entry<String,Object> entry : written.entrySet()) {
+            if (entry.getValue() instanceof Values) {
+                parent.remove( entry.getKey() );
+                for (Object value : (Values)entry.getValue()) {
+                    parent.add( entry.getKey(), value );
+                }
+            }
+            else {
+                parent.put( entry.getKey(), entry.getValue() );
+            }
+        }
+        for (String key : removed) {
+            parent.remove( key );
+        }
+        reset();
+    }
+
+
+    /**
+     * Discards the written and removed fields, so that this overlay shows the
+     * parent state again.
+     */
+    public void reset() {
+        written.clear();
+        removed.clear();
+    }
+
+
+    /**
+     * True if no field was written or removed.
+     */
+    public boolean isEmpty() {
+        return written.isEmpty() && removed.isEmpty();
+    }
+
+
+    @Override
+    public Object id() {
+        return parent.id();
+    }
+
+
+    @Override
+    public <T> IRecordState put( String key, T value ) {
+        removed.remove( key );
+        written.put( key, value );
+        return this;
+    }
+
+
+    @Override
+    public IRecordState add( String key, Object value ) {
+        Object current = written.get( key );
+        Values values = null;
+        if (current instanceof Values) {
+            values = (Values)current;
+        }
+        else {
+            // copy on first write
+            values = new Values( current != null || written.containsKey( key )
+                    ? Collections.singletonList( current )
+                    : removed.contains( key ) || parent.get( key ) == null
+                            ? Collections.EMPTY_LIST
+                            : parent.getList( key ) );
+            removed.remove( key );
+            written.put( key, values );
+        }
+        values.add( value );
+        return this;
+    }
+
+
+    @Override
+    public <T> T get( String key ) {
+        Object result = written.get( key );
+        if (result instanceof Values) {
+            return ((Values)result).isEmpty() ? null : (T)((Values)result).get( 0 );
+        }
+        else if (result != null || written.containsKey( key )) {
+            return (T)result;
+        }
+        return removed.contains( key ) ? null : parent.get( key );
+    }
+
+
+    @Override
+    public <T> List<T> getList( String key ) {
+        Object result = written.get( key );
+        if (result instanceof Values) {
+            return Collections.unmodifiableList( (List<T>)result );
+        }
+        else if (result != null || written.containsKey( key )) {
+            return Collections.singletonList( (T)result );
+        }
+        return removed.contains( key ) ? Collections.EMPTY_LIST : parent.getList( key );
+    }
+
+
+    @Override
+    public IRecordState remove( String key ) {
+        written.remove( key );
+        removed.add( key );
+        return this;
+    }
+
+
+    /**
+     * Iterates the written fields, then the fields of the parent that are not
+     * written or removed. {@link Iterator#remove()} is supported; other
+     * modifications during iteration are not reflected.
+     */
+    @Override
+    public Iterator<Entry<String,Object>> iterator() {
+        return new Iterator<Entry<String,Object>>() {
+
+            /** Snapshot, so that remove() does not interfere. */
+            private Iterator<Entry<String,Object>>  writtenIt = writtenEntries().iterator();
+
+            private Iterator<Entry<String,Object>>  parentIt = parent.iterator();
+
+            private Entry<String,Object>            next;
+
+            private Entry<String,Object>            current;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && writtenIt.hasNext()) {
+                    next = writtenIt.next();
+                }
+                while (next == null && parentIt.hasNext()) {
+                    Entry<String,Object> candidate = parentIt.next();
+                    if (!written.containsKey( candidate.getKey() ) && !removed.contains( candidate.getKey() )) {
+                        next = candidate;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Entry<String,Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                current = next;
+                next = null;
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                OverlayRecordState.this.remove( current.getKey() );
+                current = null;
+            }
+        };
+    }
+
+
+    /**
+     * The written fields, one entry per value of a multi-valued field.
+     */
+    protected List<Entry<String,Object>> writtenEntries() {
+        List<Entry<String,Object>> result = new ArrayList( written.size() * 2 );
+        for (Entry<String,Object> entry : written.entrySet()) {
+            if (entry.getValue() instanceof Values) {
+                for (Object value : (Values)entry.getValue()) {
+                    result.add( new SimpleImmutableEntry( entry.getKey(), value ) );
+                }
+            }
+            else {
+                result.add( new SimpleImmutableEntry( entry.getKey(), entry.getValue() ) );
+            }
+        }
+        return result;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[id=" + id() + ", written=" + written.size() + ", removed=" + removed.size() + "]";
+    }
+
+}
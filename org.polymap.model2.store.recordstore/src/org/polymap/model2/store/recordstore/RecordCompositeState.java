@@ -25,6 +25,7 @@ import java.util.Map.Entry;
 import org.apache.commons.lang3.StringUtils;
 
 import org.polymap.model2.Composite;
+import org.polymap.model2.runtime.IdGenerator;
 import org.polymap.model2.runtime.PropertyInfo;
 import org.polymap.model2.store.CompositeState;
 import org.polymap.model2.store.StoreCollectionProperty;
@@ -43,6 +44,16 @@ class RecordCompositeState
 
     public static final String      TYPE_KEY = "_type_";
     
+    /**
+     * The form of an Entity id in the store. Ids and the values of associations
+     * are stored as Strings, whatever the type of the ids of the repository is.
+     * 
+     * @see IdGenerator#normalize(Object)
+     */
+    public static String storeId( Object id ) {
+        return id != null ? id.toString() : null;
+    }
+    
 //    public static String buildKey( String... parts ) {
 //        // Joiner.on( KEY_DELIMITER ).skipNulls().join( baseKey, info.getNameInStore() );
 //        StringBuilder result = new StringBuilder( 256 );
@@ -63,18 +74,24 @@ class RecordCompositeState
     
     protected FieldnameBuilder      basename;
 
+    /** Converts the stored ids into the ids of the repository. */
+    protected IdGenerator           idGenerator;
+
     
-    public RecordCompositeState( IRecordState state ) {
+    public RecordCompositeState( IRecordState state, IdGenerator idGenerator ) {
         assert state != null;
+        assert idGenerator != null;
         this.state = state;
         this.basename = FieldnameBuilder.EMPTY;
+        this.idGenerator = idGenerator;
     }
 
-    private RecordCompositeState( IRecordState state, FieldnameBuilder basename ) {
+    private RecordCompositeState( IRecordState state, FieldnameBuilder basename, IdGenerator idGenerator ) {
         assert state != null;
         assert basename != null;
         this.state = state;
         this.basename = basename;
+        this.idGenerator = idGenerator;
     }
 
     @Override
@@ -84,7 +101,7 @@ class RecordCompositeState
             throw new IllegalStateException( "Composite property does not have an id." );            
         } 
         else {
-            return state.id();
+            return idGenerator.normalize( state.id() );
         }
     }
 
@@ -169,6 +186,9 @@ class RecordCompositeState
             if (value != null && info.getType().isEnum()) {
                 value = Enum.valueOf( info.getType(), (String)value );
             }
+            else if (value != null && info.isAssociation()) {
+                value = idGenerator.normalize( value );
+            }
             return value;
         }
 
@@ -176,6 +196,9 @@ class RecordCompositeState
             if (value == null) {
                 state.remove( fieldname.get() );
             }
+            else if (info.isAssociation()) {
+                state.put( fieldname.get(), storeId( value ) );
+            }
             else if (value instanceof Enum) {
                 state.put( fieldname.get(), ((Enum)value).toString() );
             }
@@ -208,7 +231,7 @@ class RecordCompositeState
         @Override
         public CompositeState get() {
             Object id = state.get( fieldname.composite( "_id_" ).get() );
-            return id != null ? new RecordCompositeState( state, fieldname ) : null;
+            return id != null ? new RecordCompositeState( state, fieldname, idGenerator ) : null;
         }
         
         @Override
@@ -218,7 +241,7 @@ class RecordCompositeState
             if (!info.getType().getName().equals( actualType.getName() )) {
                 state.put( fieldname.composite( TYPE_KEY ).get(), actualType.getName() );
             }
-            return new RecordCompositeState( state, fieldname );
+            return new RecordCompositeState( state, fieldname, idGenerator );
         }
 
         @Override
@@ -263,7 +286,8 @@ class RecordCompositeState
                 }
                 @Override
                 public Object next() {
-                    return state.get( fieldname.arrayElement( index++ ).get() );
+                    Object value = state.get( fieldname.arrayElement( index++ ).get() );
+                    return info.isAssociation() ? idGenerator.normalize( value ) : value;
                 }
                 @Override
                 public void remove() {
@@ -319,7 +343,7 @@ class RecordCompositeState
         
         @Override
         public boolean add( Object o ) {
-            state.put( fieldname.arrayElement( size() ).get(), o );
+            state.put( fieldname.arrayElement( size() ).get(), info.isAssociation() ? storeId( o ) : o );
             state.put( fieldname.arraySize().get(), size() + 1 );
             return true;
         }
@@ -340,7 +364,7 @@ class RecordCompositeState
         @Override
         public CompositeState createValue( Class actualType ) {
             FieldnameBuilder elmBasename = fieldname.arrayElement( size() );
-            RecordCompositeState result = new RecordCompositeState( state, elmBasename );
+            RecordCompositeState result = new RecordCompositeState( state, elmBasename, idGenerator );
             state.put( fieldname.arraySize().get(), size() + 1 );
             //
             if (!info.getType().getName().equals( actualType.getName() )) {
@@ -363,7 +387,7 @@ class RecordCompositeState
                 @Override
                 public Object next() {
                     assert Composite.class.isAssignableFrom( info().getType() );
-                    return new RecordCompositeState( state, fieldname.arrayElement( index++ ) );
+                    return new RecordCompositeState( state, fieldname.arrayElement( index++ ), idGenerator );
                 }
 
                 @Override
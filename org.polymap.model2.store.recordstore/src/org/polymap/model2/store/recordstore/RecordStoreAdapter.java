@@ -14,14 +14,26 @@
  */
 package org.polymap.model2.store.recordstore;
 
+import static org.polymap.model2.store.recordstore.RecordCompositeState.TYPE_KEY;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.logging.LogFactory;import org.apache.commons.logging.Log;
+import org.apache.lucene.search.BooleanQuery;
 
+import org.polymap.model2.Entity;
+import org.polymap.model2.runtime.CompositeInfo;
 import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.UnitOfWork;
 import org.polymap.model2.store.StoreRuntimeContext;
 import org.polymap.model2.store.StoreSPI;
 import org.polymap.model2.store.StoreUnitOfWork;
 import org.polymap.recordstore.IRecordState;
 import org.polymap.recordstore.IRecordStore;
+import org.polymap.recordstore.IRecordStore.Updater;
+import org.polymap.recordstore.ResultSet;
+import org.polymap.recordstore.SimpleQuery;
 
 /**
  * 
@@ -33,15 +45,174 @@ public class RecordStoreAdapter
 
     private static Log log = LogFactory.getLog( RecordStoreAdapter.class );
     
+    /** The number of records stored with one Updater by {@link #migrateCollectionLayout()}. */
+    public static final int         MIGRATE_BATCH_SIZE = 1000;
+    
     protected EntityRepository      repo;
     
     protected IRecordStore          store;
 
     private StoreRuntimeContext     context;
     
+    protected GroupCommit           groupCommit;
+    
+    protected LuceneQueryPlans      queryPlans = new LuceneQueryPlans();
+    
+    protected CollectionSizeStats   collectionSizeStats;
+    
+    protected CollectionLayout      collectionLayout = CollectionLayout.INDEXED;
+    
+    protected int                   termsQueryThreshold = LuceneTermsQuery.DEFAULT_THRESHOLD;
+    
     
     public RecordStoreAdapter( IRecordStore store ) {
         this.store = store;
+        this.collectionSizeStats = new CollectionSizeStats( store );
+    }
+
+
+    /**
+     * Enables group commit: the modifications of concurrently committing
+     * UnitOfWorks are applied with one {@link IRecordStore#prepareUpdate()
+     * Updater}. In this mode the modifications are written to the store in
+     * {@link StoreUnitOfWork#commit()}, so errors of the store are reported by
+     * commit() instead of prepareCommit().
+     * <p/>
+     * This weakens the prepare/commit contract: a successful
+     * {@link UnitOfWork#prepare()} does not guarantee that
+     * {@link UnitOfWork#commit()} succeeds. If commit() fails, then the versions
+     * of the states are restored and the UnitOfWork keeps its modifications, so
+     * it can be committed again or rolled back.
+     *
+     * @see GroupCommit
+     * @param maxBatches The maximum number of UnitOfWorks committed together.
+     * @param window The maximum time to wait for concurrent commits. 0 means that
+     *        just the commits are grouped that arrive while another group is
+     *        applied.
+     * @param unit
+     * @return this
+     */
+    public RecordStoreAdapter enableGroupCommit( int maxBatches, long window, TimeUnit unit ) {
+        this.groupCommit = new GroupCommit( store, maxBatches, window, unit );
+        return this;
+    }
+
+
+    /**
+     * The {@link GroupCommit} of this adapter, or null if group commit is not
+     * {@link #enableGroupCommit(int, long, TimeUnit) enabled}.
+     */
+    public GroupCommit groupCommit() {
+        return groupCommit;
+    }
+
+
+    /**
+     * The cache of compiled Lucene query plans of this adapter. Use
+     * {@link LuceneQueryPlans#hitRatio()} to monitor the cache.
+     */
+    public LuceneQueryPlans queryPlans() {
+        return queryPlans;
+    }
+
+
+    /**
+     * Sets the maximum number of values that are matched by a {@link BooleanQuery}
+     * with one (scoring) clause per value. Longer lists of values, like the ids
+     * of an association sub-query, are matched by one {@link LuceneTermsQuery}.
+     * 0 means that every list is matched by a LuceneTermsQuery. Default:
+     * {@link LuceneTermsQuery#DEFAULT_THRESHOLD}.
+     *
+     * @param threshold 0..{@link BooleanQuery#getMaxClauseCount()}
+     * @return this
+     */
+    public RecordStoreAdapter setTermsQueryThreshold( int threshold ) {
+        if (threshold < 0 || threshold > BooleanQuery.getMaxClauseCount()) {
+            throw new IllegalArgumentException( "Threshold must be 0.." + BooleanQuery.getMaxClauseCount() + ": " + threshold );
+        }
+        this.termsQueryThreshold = threshold;
+        return this;
+    }
+
+
+    public int termsQueryThreshold() {
+        return termsQueryThreshold;
+    }
+
+
+    /**
+     * The maximum collection sizes of this adapter, used to translate quantifier
+     * queries without searching the store.
+     */
+    public CollectionSizeStats collectionSizeStats() {
+        return collectionSizeStats;
+    }
+
+
+    /**
+     * Sets the index layout of collections. If the store already contains
+     * records then {@link #migrateCollectionLayout()} has to be called after the
+     * layout was changed. Default: {@link CollectionLayout#INDEXED}.
+     *
+     * @return this
+     */
+    public RecordStoreAdapter setCollectionLayout( CollectionLayout collectionLayout ) {
+        assert collectionLayout != null;
+        this.collectionLayout = collectionLayout;
+        return this;
+    }
+
+
+    public CollectionLayout collectionLayout() {
+        return collectionLayout;
+    }
+
+
+    /**
+     * Re-indexes the records of all entity types of the repository according to
+     * the current {@link #collectionLayout()}. Records that are indexed already
+     * are not written. Must be called before the store is queried, and must not
+     * run concurrently with committing UnitOfWorks.
+     *
+     * @return The number of records that were written.
+     * @throws Exception If the store failed. Batches written so far are kept;
+     *         calling this method again completes the migration.
+     */
+    public int migrateCollectionLayout() throws Exception {
+        assert repo != null : "Adapter is not yet initialized by a repository.";
+        int count = 0;
+        for (Class<? extends Entity> entityClass : repo.getConfig().entities.get()) {
+            CompositeInfo info = repo.infoOf( entityClass );
+            ResultSet rs = store.find( new SimpleQuery()
+                    .eq( TYPE_KEY, entityClass.getName() )
+                    .setMaxResults( Integer.MAX_VALUE ) );
+            Updater tx = store.prepareUpdate();
+            try {
+                int batchCount = 0;
+                for (IRecordState state : rs) {
+                    Map<String,Integer> sizes = CollectionSizeStats.sizesOf( state );
+                    if (sizes != null && collectionLayout.index( state, CollectionLayout.manyAssociations( sizes, info ) )) {
+                        tx.store( state );
+                        count ++;
+                        if (++batchCount >= MIGRATE_BATCH_SIZE) {
+                            tx.apply();
+                            tx = store.prepareUpdate();
+                            batchCount = 0;
+                        }
+                    }
+                }
+                tx.apply();
+            }
+            catch (Exception e) {
+                tx.discard();
+                throw e;
+            }
+            finally {
+                rs.close();
+            }
+        }
+        log.info( "Migrated records to collection layout " + collectionLayout + ": " + count );
+        return count;
     }
 
 
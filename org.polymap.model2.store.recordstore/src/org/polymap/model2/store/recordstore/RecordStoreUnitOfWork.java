@@ -17,7 +17,11 @@ package org.polymap.model2.store.recordstore;
 import static org.polymap.model2.store.recordstore.RecordCompositeState.TYPE_KEY;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -27,14 +31,17 @@ import java.io.IOException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.search.BooleanQuery;
 
 import com.google.common.collect.Iterables;
 
 import org.polymap.model2.Entity;
 import org.polymap.model2.query.Query;
 import org.polymap.model2.query.grammar.BooleanExpression;
+import org.polymap.model2.query.grammar.IdPredicate;
 import org.polymap.model2.runtime.ConcurrentEntityModificationException;
 import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
+import org.polymap.model2.runtime.IdGenerator;
 import org.polymap.model2.runtime.ModelRuntimeException;
 import org.polymap.model2.store.CloneCompositeStateSupport;
 import org.polymap.model2.store.CompositeState;
@@ -42,12 +49,14 @@ import org.polymap.model2.store.CompositeStateReference;
 import org.polymap.model2.store.StoreResultSet;
 import org.polymap.model2.store.StoreRuntimeContext;
 import org.polymap.model2.store.StoreUnitOfWork;
+import org.polymap.model2.store.VersionedStateSupport;
 import org.polymap.recordstore.IRecordState;
 import org.polymap.recordstore.IRecordStore;
 import org.polymap.recordstore.IRecordStore.Updater;
 import org.polymap.recordstore.RecordQuery;
 import org.polymap.recordstore.ResultSet;
 import org.polymap.recordstore.SimpleQuery;
+import org.polymap.recordstore.lucene.LuceneRecordQuery;
 import org.polymap.recordstore.lucene.LuceneRecordStore;
 
 /**
@@ -56,7 +65,7 @@ import org.polymap.recordstore.lucene.LuceneRecordStore;
  * @author <a href="http://www.polymap.de">Falko Bräutigam</a>
  */
 public class RecordStoreUnitOfWork
-        implements StoreUnitOfWork, CloneCompositeStateSupport {
+        implements StoreUnitOfWork, CloneCompositeStateSupport, VersionedStateSupport {
 
     private static Log log = LogFactory.getLog( RecordStoreUnitOfWork.class );
 
@@ -66,20 +75,47 @@ public class RecordStoreUnitOfWork
 
     private Updater                     tx;
 
+    /** The modifications to apply via {@link #groupCommit}. */
+    private GroupCommit.Batch           batch;
+
+    private GroupCommit                 groupCommit;
+
+    private LuceneQueryPlans            queryPlans;
+
+    private CollectionSizeStats         sizeStats;
+
+    private CollectionLayout            collectionLayout;
+
+    private int                         termsQueryThreshold;
+
+    private IdGenerator                 idGenerator;
+
+    /** The collection sizes of the states stored by the current commit. */
+    private Map<String,Map<String,Integer>> pendingSizes;
+
+    /** The versions of the states before {@link #prepareCommit(Iterable)}. */
+    private Map<IRecordState,Long>      previousVersions;
+
     private boolean                     prepareFailed;
     
     
     public RecordStoreUnitOfWork( StoreRuntimeContext context, RecordStoreAdapter rsa ) {
         this.context = context;
         this.store = rsa.store;
+        this.groupCommit = rsa.groupCommit;
+        this.queryPlans = rsa.queryPlans;
+        this.sizeStats = rsa.collectionSizeStats;
+        this.collectionLayout = rsa.collectionLayout;
+        this.termsQueryThreshold = rsa.termsQueryThreshold;
+        this.idGenerator = context.getRepository().getConfig().idGenerator.get();
     }
 
     
     @Override
     public <T extends Entity> CompositeState loadEntityState( Object id, Class<T> entityClass ) {
         try {
-            IRecordState state = store.get( id );
-            return state != null ? new RecordCompositeState( state ) : null;
+            IRecordState state = store.get( RecordCompositeState.storeId( id ) );
+            return state != null ? new RecordCompositeState( state, idGenerator ) : null;
         }
         catch (Exception e) {
             throw new ModelRuntimeException( e );
@@ -87,14 +123,97 @@ public class RecordStoreUnitOfWork
     }
 
 
+    /**
+     * Loads all states with one {@link IdPredicate} query. The query is split in
+     * chunks of {@link BooleanQuery#getMaxClauseCount()} ids.
+     */
+    @Override
+    public <T extends Entity> Map<Object,CompositeState> loadEntityStates( Collection<?> ids, Class<T> entityClass ) {
+        if (ids.isEmpty()) {
+            return Collections.EMPTY_MAP;
+        }
+        else if (ids.size() == 1) {
+            Object id = Iterables.getOnlyElement( ids );
+            CompositeState state = loadEntityState( id, entityClass );
+            return state != null ? Collections.singletonMap( id, state ) : Collections.EMPTY_MAP;
+        }
+        try {
+            Map<Object,CompositeState> result = new HashMap( ids.size() * 2 );
+            for (List<?> chunk : Iterables.partition( ids, BooleanQuery.getMaxClauseCount() )) {
+                // no type query, just as loadEntityState()
+                LuceneQueryBuilder builder = new LuceneQueryBuilder( (LuceneRecordStore)store, queryPlans, sizeStats, collectionLayout, termsQueryThreshold, "" );
+                org.apache.lucene.search.Query idQuery = builder.processExpression( 
+                        null, new IdPredicate( chunk.toArray() ), entityClass );
+                RecordQuery recordQuery = new LuceneRecordQuery( (LuceneRecordStore)store, idQuery );
+                recordQuery.setMaxResults( chunk.size() );
+                
+                // the store returns the id in its own (String) form, the caller
+                // expects the ids it has requested, numeric ids in particular
+                Map<String,Object> requested = new HashMap( chunk.size() * 2 );
+                for (Object id : chunk) {
+                    requested.put( RecordCompositeState.storeId( id ), id );
+                }
+                ResultSet results = store.find( recordQuery );
+                try {
+                    for (IRecordState state : results) {
+                        RecordCompositeState compositeState = new RecordCompositeState( state, idGenerator );
+                        Object id = requested.getOrDefault( RecordCompositeState.storeId( state.id() ), compositeState.id() );
+                        result.put( id, compositeState );
+                    }
+                }
+                finally {
+                    results.close();
+                }
+            }
+            return result;
+        }
+        catch (Exception e) {
+            throw new ModelRuntimeException( e );
+        }
+    }
+
+
+    @Override
+    public boolean isVersioned( Class<? extends Entity> entityClass ) {
+        return true;
+    }
+
+
+    @Override
+    public long version( Entity entity ) {
+        return version( (IRecordState)entity.state() );
+    }
+
+
+    protected long version( IRecordState state ) {
+        Number version = state.get( VERSION_KEY );
+        return version != null ? version.longValue() : NO_VERSION;
+    }
+
+
+    /**
+     * Loads the states of the given ids with one query, just as
+     * {@link #loadEntityStates(Collection, Class)}.
+     */
+    @Override
+    public <T extends Entity> Map<Object,Long> storedVersions( Collection<?> ids, Class<T> entityClass ) {
+        Map<Object,CompositeState> states = loadEntityStates( ids, entityClass );
+        Map<Object,Long> result = new HashMap( states.size() * 2 );
+        for (Map.Entry<Object,CompositeState> entry : states.entrySet()) {
+            result.put( entry.getKey(), version( ((RecordCompositeState)entry.getValue()).state ) );
+        }
+        return result;
+    }
+
+
     @Override
     public <T extends Entity> CompositeState newEntityState( Object id, Class<T> entityClass ) {
 //        if (id != null) {
 //            throw new UnsupportedOperationException( "Not supported: preset id in newly created entity" );
 //        }
-        IRecordState state = id != null ? store.newRecord( id ) : store.newRecord();
+        IRecordState state = id != null ? store.newRecord( RecordCompositeState.storeId( id ) ) : store.newRecord();
         state.put( TYPE_KEY, entityClass.getName() );
-        return new RecordCompositeState( state );
+        return new RecordCompositeState( state, idGenerator );
     }
 
 
@@ -105,7 +224,13 @@ public class RecordStoreUnitOfWork
             clonedState.put( entry.getKey(), entry.getValue() );
         }
         assert clonedState.id().equals( state.id() );
-        return new RecordCompositeState( clonedState );
+        return new RecordCompositeState( clonedState, idGenerator );
+    }
+
+
+    @Override
+    public CompositeState overlayEntityState( CompositeState state ) {
+        return new RecordCompositeState( new OverlayRecordState( ((RecordCompositeState)state).state ), idGenerator );
     }
 
 
@@ -114,6 +239,17 @@ public class RecordStoreUnitOfWork
         IRecordState from = ((RecordCompositeState)clonedState).state;
         IRecordState to = ((RecordCompositeState)state).state;
         
+        // overlay -> parent: just the written fields
+        if (from instanceof OverlayRecordState && ((OverlayRecordState)from).parent() == to) {
+            ((OverlayRecordState)from).mergeIntoParent();
+            return;
+        }
+        // parent -> overlay: discard written fields
+        if (to instanceof OverlayRecordState && ((OverlayRecordState)to).parent() == from) {
+            ((OverlayRecordState)to).reset();
+            return;
+        }
+        
         // cloned -> state
         Set<String> keys = new HashSet( 128 );
         for (Map.Entry<String,Object> entry : from) {
@@ -137,7 +273,7 @@ public class RecordStoreUnitOfWork
     @Override
     public <T extends Entity> CompositeState adoptEntityState( Object state, Class<T> entityClass ) {
         // XXX check if the state is valid
-        return new RecordCompositeState( (IRecordState)state );
+        return new RecordCompositeState( (IRecordState)state, idGenerator );
     }
 
 
@@ -150,7 +286,7 @@ public class RecordStoreUnitOfWork
             }
             else if (query.expression instanceof BooleanExpression) {
                 // FIXME
-                recordQuery = new LuceneQueryBuilder( (LuceneRecordStore)store )
+                recordQuery = new LuceneQueryBuilder( (LuceneRecordStore)store, queryPlans, sizeStats, collectionLayout, termsQueryThreshold, "" )
                         .createQuery( query.resultType, query.expression );
             }
             else {
@@ -171,7 +307,7 @@ public class RecordStoreUnitOfWork
                 }
                 @Override
                 public CompositeStateReference next() {
-                    IRecordState state = it.next();
+                    RecordCompositeState state = new RecordCompositeState( it.next(), idGenerator );
                     return new CompositeStateReference() {
                         @Override
                         public Object id() {
@@ -179,7 +315,7 @@ public class RecordStoreUnitOfWork
                         }
                         @Override
                         public CompositeState get() {
-                            return new RecordCompositeState( state );
+                            return state;
                         }
                     };
                 }
@@ -208,11 +344,52 @@ public class RecordStoreUnitOfWork
             throws IOException, ConcurrentEntityModificationException {
         assert tx == null;
         prepareFailed = false;
+        batch = null;
+        pendingSizes = null;
+        previousVersions = null;
         
         if (Iterables.isEmpty( modified )) {
             return;
         }
         
+        // the collection sizes are an upper bound, update before the
+        // states are visible and again after commit
+        pendingSizes = new HashMap();
+        for (Entity entity : modified) {
+            if (entity.status() == EntityStatus.CREATED
+                    || entity.status() == EntityStatus.MODIFIED) {
+                IRecordState state = (IRecordState)entity.state();
+                Map<String,Integer> sizes = CollectionSizeStats.sizesOf( state );
+                if (sizes != null) {
+                    CollectionSizeStats.collect( state.get( TYPE_KEY ), sizes, pendingSizes );
+                    if (collectionLayout != CollectionLayout.INDEXED) {
+                        collectionLayout.index( state, CollectionLayout.manyAssociations( sizes, entity.info() ) );
+                    }
+                }
+            }
+        }
+        sizeStats.update( pendingSizes );
+        
+        // group commit: just collect
+        previousVersions = new IdentityHashMap( 128 );
+        if (groupCommit != null) {
+            batch = new GroupCommit.Batch();
+            for (Entity entity : modified) {
+                IRecordState state = (IRecordState)entity.state();
+                if (entity.status() == EntityStatus.CREATED
+                        || entity.status() == EntityStatus.MODIFIED) {
+                    long version = version( state );
+                    previousVersions.put( state, version );
+                    state.put( VERSION_KEY, version + 1 );
+                    batch.store( state );
+                }
+                else if (entity.status() == EntityStatus.REMOVED) {
+                    batch.remove( state );
+                }
+            }
+            return;
+        }
+        
         this.tx = store.prepareUpdate();
         try {
             for (Entity entity : modified) {
@@ -220,6 +397,9 @@ public class RecordStoreUnitOfWork
 
                 if (entity.status() == EntityStatus.CREATED
                         || entity.status() == EntityStatus.MODIFIED) {
+                    long version = version( state );
+                    previousVersions.put( state, version );
+                    state.put( VERSION_KEY, version + 1 );
                     tx.store( state );
                 }
                 else if (entity.status() == EntityStatus.REMOVED) {
@@ -230,6 +410,7 @@ public class RecordStoreUnitOfWork
         catch (Exception e) {
             tx.discard();
             prepareFailed = true;
+            restoreVersions();
             
             if (e instanceof IOException) { 
                 throw (IOException)e; 
@@ -247,14 +428,57 @@ public class RecordStoreUnitOfWork
     }
 
     
+    /**
+     * The states are not written, restore the versions of
+     * {@link #prepareCommit(Iterable)}.
+     */
+    protected void restoreVersions() {
+        if (previousVersions != null) {
+            for (Map.Entry<IRecordState,Long> entry : previousVersions.entrySet()) {
+                if (entry.getValue() == NO_VERSION) {
+                    entry.getKey().remove( VERSION_KEY );
+                }
+                else {
+                    entry.getKey().put( VERSION_KEY, entry.getValue() );
+                }
+            }
+            previousVersions = null;
+        }
+    }
+
+
     @Override
     public void commit() {
         assert !prepareFailed : "Previous prepareCommit() failed.";
 
-        // if modified was empty then there is no tx at all
-        if (tx != null) {
-            tx.apply();
-            tx = null;
+        try {
+            // if modified was empty then there is no tx at all
+            if (tx != null) {
+                tx.apply();
+                tx = null;
+            }
+            else if (batch != null) {
+                groupCommit.commit( batch );
+            }
+            previousVersions = null;
+        }
+        catch (RuntimeException e) {
+            // the UnitOfWork keeps its modifications and may prepare/commit again;
+            // with group commit this is where the store fails
+            if (tx != null) {
+                tx.discard();
+                tx = null;
+            }
+            restoreVersions();
+            throw e;
+        }
+        finally {
+            batch = null;
+        }
+        // fields searched by a concurrent query since prepareCommit()
+        if (pendingSizes != null) {
+            sizeStats.update( pendingSizes );
+            pendingSizes = null;
         }
     }
 
@@ -275,6 +499,7 @@ public class RecordStoreUnitOfWork
             tx.discard();
             tx = null;
         }
+        batch = null;
     }
 
 
@@ -283,6 +508,7 @@ public class RecordStoreUnitOfWork
         if (tx != null && ! prepareFailed) {
             tx.discard();
         }
+        batch = null;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,295 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import javax.cache.CacheManager;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.expiry.AccessedExpiryPolicy;
+import javax.cache.expiry.Duration;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.engine.cache.LoadingCache;
+import org.polymap.model2.engine.cache.SimpleCacheManager;
+import org.polymap.model2.engine.cache.TinyLfuCache;
+import org.polymap.model2.engine.cache.TinyLfuCacheManager;
+
+/**
+ * Compares hit ratio, time and GC time of {@link SimpleCacheManager} and
+ * {@link TinyLfuCacheManager} caches on a Zipf distributed (skewed) access
+ * trace, as produced by typical Entity access.
+ *
+ * @author Falko Bräutigam
+ */
+public class CachePerformanceTest
+        extends TestCase {
+
+    private static final Log log = LogFactory.getLog( CachePerformanceTest.class );
+
+    private static final int        KEYS = 100000;
+
+    private static final int        ACCESSES = 1000000;
+
+    private static final int        MAX_SIZE = 10000;
+
+    private static final int        PAYLOAD_SIZE = 1024;
+
+    private int[]                   trace;
+
+
+    public CachePerformanceTest( String name ) {
+        super( name );
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        log.info( " --------------------------------------- " + getClass().getSimpleName() + " : " + getName() );
+        trace = zipfTrace( KEYS, ACCESSES, 0.99, 42 );
+    }
+
+
+    public void testSimpleCache() {
+        run( new SimpleCacheManager() );
+    }
+
+
+    public void testTinyLfuCache() {
+        LoadingCache<Integer,byte[]> cache = run( new TinyLfuCacheManager( MAX_SIZE ) );
+        TinyLfuCache tinyLfu = cache.unwrap( TinyLfuCache.class );
+        assertTrue( tinyLfu.weightedSize() <= MAX_SIZE );
+        log.info( "    evictions: " + tinyLfu.evictionCount() );
+    }
+
+
+    public void testExpiry() throws Exception {
+        MutableConfiguration config = new MutableConfiguration()
+                .setExpiryPolicyFactory( AccessedExpiryPolicy.factoryOf( new Duration( TimeUnit.MILLISECONDS, 50 ) ) );
+        TinyLfuCache<String,String> cache = (TinyLfuCache)new TinyLfuCacheManager( MAX_SIZE ).createCache( "expiry", config );
+        cache.put( "key", "value" );
+        assertEquals( "value", cache.get( "key" ) );
+        Thread.sleep( 100 );
+        assertNull( cache.get( "key" ) );
+        assertEquals( 0, cache.weightedSize() );
+    }
+
+
+    public void testEntryProcessorAndListeners() throws Exception {
+        TinyLfuCache<String,Integer> cache = (TinyLfuCache)new TinyLfuCacheManager( MAX_SIZE )
+                .createCache( "processor", new MutableConfiguration() );
+        List<String> events = new ArrayList();
+        CacheEntryListener<String,Integer> listener = new Listener( events );
+        MutableCacheEntryListenerConfiguration<String,Integer> listenerConfig = new MutableCacheEntryListenerConfiguration(
+                new FactoryBuilder.SingletonFactory( listener ), null, true, true );
+        cache.registerCacheEntryListener( listenerConfig );
+
+        // increment, create if absent
+        for (int i=0; i<3; i++) {
+            int result = cache.invoke( "counter", (entry, args) -> {
+                entry.setValue( entry.exists() ? entry.getValue() + 1 : 1 );
+                return entry.getValue();
+            });
+            assertEquals( i + 1, result );
+        }
+        assertEquals( 3, (int)cache.get( "counter" ) );
+        assertTrue( cache.invokeAll( Collections.singleton( "counter" ), (entry, args) -> {
+            entry.remove();
+            return null;
+        }).isEmpty() );
+        assertFalse( cache.containsKey( "counter" ) );
+        assertEquals( Arrays.asList( "CREATED:1", "UPDATED:2/1", "UPDATED:3/2", "REMOVED:3" ), events );
+
+        cache.deregisterCacheEntryListener( listenerConfig );
+        cache.put( "other", 1 );
+        assertEquals( 4, events.size() );
+    }
+
+
+    protected static class Listener
+            implements CacheEntryCreatedListener<String,Integer>, CacheEntryUpdatedListener<String,Integer>,
+                    CacheEntryRemovedListener<String,Integer> {
+
+        private List<String>    events;
+
+        public Listener( List<String> events ) {
+            this.events = events;
+        }
+
+        @Override
+        public void onCreated( Iterable<CacheEntryEvent<? extends String,? extends Integer>> created ) {
+            created.forEach( ev -> events.add( "CREATED:" + ev.getValue() ) );
+        }
+
+        @Override
+        public void onUpdated( Iterable<CacheEntryEvent<? extends String,? extends Integer>> updated ) {
+            updated.forEach( ev -> events.add( "UPDATED:" + ev.getValue() + "/" + ev.getOldValue() ) );
+        }
+
+        @Override
+        public void onRemoved( Iterable<CacheEntryEvent<? extends String,? extends Integer>> removed ) {
+            removed.forEach( ev -> events.add( "REMOVED:" + ev.getValue() ) );
+        }
+    }
+
+
+    public void testSingleFlight() throws Exception {
+        for (CacheManager cacheManager : new CacheManager[] {new SimpleCacheManager(), new TinyLfuCacheManager( MAX_SIZE )}) {
+            LoadingCache<Integer,byte[]> cache = LoadingCache.create( cacheManager, new MutableConfiguration() );
+            AtomicInteger loads = new AtomicInteger();
+            LoadingCache.Loader<Integer,byte[]> loader = key -> {
+                loads.incrementAndGet();
+                try { Thread.sleep( 100 ); } catch (InterruptedException e) { throw new RuntimeException( e ); }
+                return new byte[PAYLOAD_SIZE];
+            };
+            // concurrent misses on the same key
+            CountDownLatch start = new CountDownLatch( 1 );
+            List<byte[]> results = Collections.synchronizedList( new ArrayList() );
+            List<Thread> threads = new ArrayList();
+            for (int i=0; i<16; i++) {
+                Thread t = new Thread( () -> {
+                    try { start.await(); } catch (InterruptedException e) { throw new RuntimeException( e ); }
+                    results.add( cache.get( 1, loader ) );
+                });
+                threads.add( t );
+                t.start();
+            }
+            start.countDown();
+            for (Thread t : threads) {
+                t.join();
+            }
+            assertEquals( 1, loads.get() );
+            assertEquals( 16, results.size() );
+            results.forEach( result -> assertSame( results.get( 0 ), result ) );
+
+            // reentrant load of the same key does not wait for itself
+            byte[] outer = cache.get( 2, key -> {
+                byte[] inner = cache.get( key, loader );
+                assertNotNull( inner );
+                return new byte[0];
+            });
+            assertEquals( PAYLOAD_SIZE, outer.length );  // inner value was put first
+            
+            // bulk loads with overlapping keys
+            AtomicInteger bulkLoads = new AtomicInteger();
+            LoadingCache.BulkLoader<Integer,byte[]> bulkLoader = keys -> {
+                bulkLoads.addAndGet( keys.size() );
+                try { Thread.sleep( 50 ); } catch (InterruptedException e) { throw new RuntimeException( e ); }
+                Map<Integer,byte[]> result = new HashMap();
+                keys.forEach( key -> result.put( key, new byte[PAYLOAD_SIZE] ) );
+                return result;
+            };
+            List<Map<Integer,byte[]>> bulkResults = Collections.synchronizedList( new ArrayList() );
+            Thread t1 = new Thread( () -> bulkResults.add( cache.getAll( new HashSet( Arrays.asList( 10, 11, 12 ) ), bulkLoader ) ) );
+            Thread t2 = new Thread( () -> bulkResults.add( cache.getAll( new HashSet( Arrays.asList( 12, 13, 10 ) ), bulkLoader ) ) );
+            t1.start(); t2.start();
+            t1.join(); t2.join();
+            assertEquals( 4, bulkLoads.get() );
+            assertEquals( 2, bulkResults.size() );
+            bulkResults.forEach( result -> assertEquals( 3, result.size() ) );
+        }
+    }
+
+
+    protected LoadingCache<Integer,byte[]> run( CacheManager cacheManager ) {
+        MutableConfiguration config = new MutableConfiguration()
+                .setExpiryPolicyFactory( AccessedExpiryPolicy.factoryOf( Duration.ONE_MINUTE ) );
+        LoadingCache<Integer,byte[]> cache = LoadingCache.create( cacheManager, config );
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache.Loader<Integer,byte[]> loader = key -> {
+            loads.incrementAndGet();
+            return new byte[PAYLOAD_SIZE];
+        };
+
+        // warmup
+        for (int i=0; i<ACCESSES/10; i++) {
+            cache.get( trace[i], loader );
+        }
+        cache.clear();
+        loads.set( 0 );
+
+        long gcStart = gcTime();
+        Timer timer = Timer.startNow();
+        for (int i=0; i<ACCESSES; i++) {
+            assertNotNull( cache.get( trace[i], loader ) );
+        }
+        double hitRatio = 1d - (double)loads.get() / ACCESSES;
+        log.info( cacheManager.getClass().getSimpleName() + ": " + ACCESSES + " accesses in " + timer.elapsedTime() + "ms"
+                + ", hit ratio: " + String.format( "%.3f", hitRatio )
+                + ", GC time: " + (gcTime() - gcStart) + "ms" );
+        return cache;
+    }
+
+
+    /**
+     * The accumulated collection time of all garbage collectors.
+     */
+    protected long gcTime() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max( 0, gc.getCollectionTime() );
+        }
+        return result;
+    }
+
+
+    /**
+     * Creates a trace of keys with Zipf distribution.
+     *
+     * @param n The number of distinct keys.
+     * @param length The length of the trace.
+     * @param skew The exponent of the distribution.
+     */
+    protected static int[] zipfTrace( int n, int length, double skew, long seed ) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i=0; i<n; i++) {
+            sum += 1d / Math.pow( i + 1, skew );
+            cumulative[i] = sum;
+        }
+        Random random = new Random( seed );
+        int[] result = new int[length];
+        for (int i=0; i<length; i++) {
+            double r = random.nextDouble() * sum;
+            int index = Arrays.binarySearch( cumulative, r );
+            result[i] = index >= 0 ? index : Math.min( -index - 1, n - 1 );
+        }
+        return result;
+    }
+
+}
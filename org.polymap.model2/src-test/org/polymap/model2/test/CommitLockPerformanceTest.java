@@ -0,0 +1,241 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.test;
+
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.UnitOfWork;
+import org.polymap.model2.runtime.locking.CommitLockStrategy;
+
+import junit.framework.TestCase;
+
+/**
+ * Multi-threaded commit throughput of {@link CommitLockStrategy.Striped}. Every
+ * thread modifies its own entity, so the commits are disjoint. One stripe is
+ * equivalent to a repository wide lock.
+ *
+ * @author Falko Bräutigam
+ */
+public abstract class CommitLockPerformanceTest
+        extends TestCase {
+
+    private static final Log log = LogFactory.getLog( CommitLockPerformanceTest.class );
+
+    public static final int[]       THREADS = {1, 2, 4, 8, 16, 32};
+
+    protected EntityRepository      repo;
+
+
+    public CommitLockPerformanceTest( String name ) {
+        super( name );
+    }
+
+
+    /**
+     * Creates a new repository with {@link Employee} and the given strategy.
+     */
+    protected abstract EntityRepository newRepository( Supplier<CommitLockStrategy> commitLockStrategy )
+            throws Exception;
+
+
+    @Override
+    protected void setUp() throws Exception {
+        log.info( " --------------------------------------- " + getClass().getSimpleName() + " : " + getName() );
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (repo != null) {
+            repo.close();
+        }
+    }
+
+
+    public void testOverlappingSerialized() throws Exception {
+        Supplier<CommitLockStrategy> supplier = CommitLockStrategy.Striped.supplier( 16 );
+        CommitLockStrategy lock1 = supplier.get();
+        CommitLockStrategy lock2 = supplier.get();
+        CommitLockStrategy lock3 = supplier.get();
+        lock1.lock( singletonList( "id" ) );
+
+        // disjoint: does not wait
+        CountDownLatch disjoint = new CountDownLatch( 1 );
+        Thread t1 = new Thread( () -> {
+            lock3.lock( singletonList( "other" ) );
+            disjoint.countDown();
+            lock3.unlock( true );
+        });
+        t1.start();
+        assertTrue( disjoint.await( 5, TimeUnit.SECONDS ) );
+
+        // overlapping: waits
+        CountDownLatch overlapping = new CountDownLatch( 1 );
+        Thread t2 = new Thread( () -> {
+            lock2.lock( singletonList( "id" ) );
+            overlapping.countDown();
+            lock2.unlock( true );
+        });
+        t2.start();
+        assertFalse( overlapping.await( 200, TimeUnit.MILLISECONDS ) );
+        lock1.unlock( true );
+        assertTrue( overlapping.await( 5, TimeUnit.SECONDS ) );
+    }
+
+
+    /**
+     * prepare() is repeated by another thread, and commit() runs on a third
+     * thread. The commit lock is owned by the UnitOfWork, not by a thread.
+     */
+    public void testPrepareAndCommitOnDifferentThreads() throws Exception {
+        repo = newRepository( () -> new CommitLockStrategy.Serialize( 5, TimeUnit.SECONDS ) );
+        UnitOfWork uow = repo.newUnitOfWork();
+        uow.createEntity( Employee.class, null );
+        inThread( () -> { uow.prepare(); return null; } );
+        inThread( () -> { uow.prepare(); return null; } );
+        uow.commitAsync( command -> new Thread( command ).start() ).get( 10, TimeUnit.SECONDS );
+        uow.close();
+
+        // the lock was released
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        uow2.createEntity( Employee.class, null );
+        uow2.commit();
+        uow2.close();
+    }
+
+
+    /**
+     * prepare() again after more entities were modified locks the stripes of the
+     * new entities too.
+     */
+    public void testPrepareAgain() throws Exception {
+        repo = newRepository( CommitLockStrategy.Striped.supplier( CommitLockStrategy.Striped.DEFAULT_STRIPES ) );
+        UnitOfWork uow = repo.newUnitOfWork();
+        Employee employee = uow.createEntity( Employee.class, null );
+        Employee other = uow.createEntity( Employee.class, null );
+        uow.commit();
+        uow.close();
+
+        UnitOfWork uow1 = repo.newUnitOfWork();
+        uow1.entity( employee ).jap.set( 1 );
+        uow1.prepare();
+        uow1.entity( other ).jap.set( 1 );
+        uow1.prepare();
+
+        // overlapping with the entity modified after the first prepare(): waits
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        uow2.entity( other ).jap.set( 2 );
+        CountDownLatch prepared = new CountDownLatch( 1 );
+        Thread t = new Thread( () -> {
+            try {
+                uow2.prepare();
+                prepared.countDown();
+            }
+            catch (Exception e) {
+                throw new RuntimeException( e );
+            }
+        });
+        t.start();
+        assertFalse( prepared.await( 200, TimeUnit.MILLISECONDS ) );
+        uow1.commit();
+        assertTrue( prepared.await( 5, TimeUnit.SECONDS ) );
+        uow2.rollback();
+        uow1.close();
+        uow2.close();
+    }
+
+
+    protected void inThread( Callable<Object> task ) throws Exception {
+        AtomicReference<Exception> failure = new AtomicReference();
+        Thread t = new Thread( () -> {
+            try {
+                task.call();
+            }
+            catch (Exception e) {
+                failure.set( e );
+            }
+        });
+        t.start();
+        t.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+
+    public void testThroughput() throws Exception {
+        for (int stripes : new int[] {1, CommitLockStrategy.Striped.DEFAULT_STRIPES}) {
+            for (int threads : THREADS) {
+                throughput( stripes, threads, 50 );
+            }
+        }
+    }
+
+
+    protected void throughput( int stripes, int threadCount, int loops ) throws Exception {
+        repo = newRepository( CommitLockStrategy.Striped.supplier( stripes ) );
+
+        // one entity per thread
+        UnitOfWork uow = repo.newUnitOfWork();
+        List<Employee> employees = new ArrayList();
+        for (int i=0; i<threadCount; i++) {
+            employees.add( uow.createEntity( Employee.class, null ) );
+        }
+        uow.commit();
+        uow.close();
+
+        Timer timer = Timer.startNow();
+        List<Thread> threads = new ArrayList();
+        for (Employee employee : employees) {
+            Thread t = new Thread( () -> {
+                for (int i=0; i<loops; i++) {
+                    try (UnitOfWork tuow = repo.newUnitOfWork()) {
+                        tuow.entity( employee ).jap.set( i );
+                        tuow.commit();
+                    }
+                }
+            });
+            threads.add( t );
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = timer.elapsedTime();
+        log.info( "stripes: " + stripes + ", threads: " + threadCount + ", commits: " + threadCount*loops
+                + " in " + elapsed + "ms (" + (threadCount*loops*1000L / Math.max( 1, elapsed )) + "/s)" );
+
+        uow = repo.newUnitOfWork();
+        for (Employee employee : employees) {
+            assertEquals( loops - 1, (int)uow.entity( employee ).jap.get() );
+        }
+        uow.close();
+        repo.close();
+        repo = null;
+    }
+
+}
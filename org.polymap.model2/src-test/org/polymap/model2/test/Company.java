@@ -14,6 +14,8 @@
  */
 package org.polymap.model2.test;
 
+import java.util.Set;
+
 import org.polymap.model2.Association;
 import org.polymap.model2.CollectionProperty;
 import org.polymap.model2.Concerns;
@@ -22,6 +24,8 @@ import org.polymap.model2.ManyAssociation;
 import org.polymap.model2.MaxOccurs;
 import org.polymap.model2.Nullable;
 import org.polymap.model2.Property;
+import org.polymap.model2.runtime.EntityRuntimeContext;
+import org.polymap.model2.runtime.PropertyInfo;
 
 /**
  * A complex entity.
@@ -65,4 +69,12 @@ public class Company
 //            }
 //        });
     }
+    
+    /**
+     * Exposes {@link EntityRuntimeContext#getDirtyProperties()} for testing.
+     */
+    public Set<PropertyInfo> dirtyProperties() {
+        return context.getDirtyProperties();
+    }
+    
 }
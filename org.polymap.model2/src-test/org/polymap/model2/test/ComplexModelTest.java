@@ -14,9 +14,17 @@
  */
 package org.polymap.model2.test;
 
+import static com.google.common.collect.Sets.newHashSet;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import junit.framework.TestCase;
 
@@ -27,8 +35,14 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 
+import org.polymap.model2.engine.cache.TinyLfuCacheManager;
 import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
 import org.polymap.model2.runtime.ModelRuntimeException;
+import org.polymap.model2.runtime.TwoPhaseCommit;
+import org.polymap.model2.runtime.TwoPhaseCommit.CommitType;
+import org.polymap.model2.runtime.TwoPhaseCommit.TransactionAware;
+import org.polymap.model2.runtime.TwoPhaseCommit.UnitOfWorkAdapter;
 import org.polymap.model2.runtime.UnitOfWork;
 import org.polymap.model2.runtime.ValueInitializer;
 import org.polymap.model2.test.Employee.Rating;
@@ -132,6 +146,32 @@ public abstract class ComplexModelTest
     }
 
     
+    public void testManyAssociationIterate() {
+        Company company = uow.createEntity( Company.class, null );
+        List<Object> ids = new ArrayList();
+        for (int i=0; i<10; i++) {
+            Employee employee = uow.createEntity( Employee.class, null );
+            company.employees.add( employee );
+            ids.add( employee.id() );
+        }
+        uow.commit();
+
+        // fresh UnitOfWork: loads all employees at once
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        Company company2 = uow2.entity( company );
+        List<Object> iterated = company2.employees.stream().map( e -> e.id() ).collect( Collectors.toList() );
+        assertEquals( ids, iterated );
+
+        // entities(): order of ids, null for unknown id
+        ids.add( 1, "unknown" );
+        List<Employee> employees = uow2.entities( Employee.class, ids );
+        assertEquals( ids.size(), employees.size() );
+        assertNull( employees.get( 1 ) );
+        assertEquals( ids.get( 0 ), employees.get( 0 ).id() );
+        assertSame( uow2.entity( Employee.class, ids.get( 2 ) ), employees.get( 2 ) );
+    }
+
+
     public void testManyAssociationRemove() {
         // create entity
         Company company = uow.createEntity( Company.class, null );
@@ -252,6 +292,44 @@ public abstract class ComplexModelTest
     }
 
     
+    public void testDirtyProperties() throws Exception {
+        Company company = uow.createEntity( Company.class, null, (Company proto) -> {
+            proto.address.createValue( (Address address) -> {
+                address.street.set( "Jump" );
+                return address;
+            });
+            return proto;
+        });
+        uow.commit();
+        assertTrue( company.dirtyProperties().isEmpty() );
+
+        company.name.set( "dirty" );
+        assertEquals( newHashSet( company.name.info() ), company.dirtyProperties() );
+
+        // Composite property: marks the property of the Entity
+        company.address.get().nr.set( 2 );
+        company.docs.add( "doc" );
+        company.addEmployee( uow.createEntity( Employee.class, null ) );
+        assertEquals( newHashSet( company.name.info(), company.address.info(), company.docs.info(), company.employees.info() ), 
+                company.dirtyProperties() );
+        uow.commit();
+        assertTrue( company.dirtyProperties().isEmpty() );
+
+        // nested: propagated to parent
+        UnitOfWork nested = uow.newUnitOfWork();
+        Company nestedCompany = nested.entity( company );
+        nestedCompany.moreAddresses.createElement( (Address address) -> address );
+        assertEquals( newHashSet( company.moreAddresses.info() ), nestedCompany.dirtyProperties() );
+        nested.commit();
+        assertTrue( nestedCompany.dirtyProperties().isEmpty() );
+        assertEquals( newHashSet( company.moreAddresses.info() ), company.dirtyProperties() );
+        
+        uow.rollback();
+        assertTrue( company.dirtyProperties().isEmpty() );
+        nested.close();
+    }
+
+
     @SuppressWarnings( "unlikely-arg-type" )
     public void testPrimitiveCollection() {
         Company company = uow.createEntity( Company.class, null );
@@ -468,6 +546,60 @@ public abstract class ComplexModelTest
     }
 
     
+    public void testCloseDetached() throws Exception {
+        Employee employee = uow.createEntity( Employee.class, null );
+        uow.commit();
+        
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        Employee employee2 = uow2.entity( employee );
+        UnitOfWork nested = uow2.newUnitOfWork();
+        Employee nestedEmployee = nested.entity( employee );
+        assertEquals( EntityStatus.LOADED, nestedEmployee.status() );
+        
+        nested.close();
+        assertEquals( EntityStatus.DETACHED, nestedEmployee.status() );
+        assertEquals( EntityStatus.LOADED, employee2.status() );
+        
+        uow2.close();
+        assertEquals( EntityStatus.DETACHED, employee2.status() );
+        assertEquals( employee.id(), employee2.id() );
+        try {
+            employee2.name.get();
+            fail( "Entity should be detached." );
+        }
+        catch (ModelRuntimeException e) {
+            // ok
+        }
+    }
+
+    
+    public void testEvictedEntity() throws Exception {
+        Employee employee = uow.createEntity( Employee.class, null );
+        Employee other = uow.createEntity( Employee.class, null );
+        uow.commit();
+
+        // the cache of the UnitOfWork holds just one Entity
+        repo.getConfig().cacheManager.set( new TinyLfuCacheManager( 1 ) );
+        UnitOfWork uow2 = repo.newUnitOfWork();
+        Employee employee2 = uow2.entity( employee );
+        assertNotNull( uow2.entity( other ) );
+
+        // reload the evicted, still reachable Entity and modify both instances
+        Employee reloaded = uow2.entity( employee );
+        assertSame( employee2, reloaded );
+        employee2.name.set( "evicted" );
+        reloaded.jap.set( 42 );
+        uow2.commit();
+        uow2.close();
+
+        UnitOfWork uow3 = repo.newUnitOfWork();
+        Employee employee3 = uow3.entity( employee );
+        assertEquals( "evicted", employee3.name.get() );
+        assertEquals( 42, (int)employee3.jap.get() );
+        uow3.close();
+    }
+
+
     public void testRollbackRemoved() throws Exception {
         Employee employee = uow.createEntity( Employee.class, null, (Employee proto) -> {
             proto.name.set( "employee" );
@@ -575,4 +707,129 @@ public abstract class ComplexModelTest
         assertEquals( 1, company.employees.size() );
     }
 
+
+    public void testCommitAsync() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Employee employee = uow.createEntity( Employee.class, null, (Employee proto) -> {
+                proto.name.set( "async" );
+                return proto;
+            });
+            uow.commitAsync( executor ).get( 10, TimeUnit.SECONDS );
+            assertEquals( "async", repo.newUnitOfWork().entity( employee ).name.get() );
+
+            // prepare in this thread, commit in executor
+            employee.name.set( "async2" );
+            uow.prepare();
+            executor.submit( () -> uow.commit() ).get( 10, TimeUnit.SECONDS );
+            assertEquals( "async2", repo.newUnitOfWork().entity( employee ).name.get() );
+
+            // commit lock was released by the executor thread
+            employee.name.set( "async3" );
+            uow.commit();
+            
+            // TwoPhaseCommit
+            UnitOfWork uow2 = repo.newUnitOfWork();
+            uow2.entity( employee ).name.set( "2pc" );
+            new TwoPhaseCommit( new UnitOfWorkAdapter( uow2 ) )
+                    .commitAsync( CommitType.CLOSE, executor ).get( 10, TimeUnit.SECONDS );
+            assertFalse( uow2.isOpen() );
+            assertEquals( "2pc", repo.newUnitOfWork().entity( employee ).name.get() );
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+    public void testParallelPrepare() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try {
+            Employee employee = uow.createEntity( Employee.class, null );
+            uow.commit();
+
+            // both prepares must run at the same time to pass the latch
+            CountDownLatch latch = new CountDownLatch( 2 );
+            UnitOfWork uow2 = repo.newUnitOfWork();
+            uow2.entity( employee ).name.set( "parallel" );
+            TwoPhaseCommit tpc = new TwoPhaseCommit().parallelPrepare( executor ).parallelCommit( executor );
+            tpc.register( new Participant( latch, null ) );
+            tpc.register( new Participant( latch, null ) );
+            tpc.register( new UnitOfWorkAdapter( uow2 ) );
+            tpc.commitOrRollback( CommitType.CLOSE );
+            assertFalse( uow2.isOpen() );
+            assertEquals( "parallel", repo.newUnitOfWork().entity( employee ).name.get() );
+
+            // failing prepare rolls back all resources
+            UnitOfWork uow3 = repo.newUnitOfWork();
+            uow3.entity( employee ).name.set( "failed" );
+            Participant failing = new Participant( null, new Exception( "prepare failed" ) );
+            Participant other = new Participant( null, null );
+            tpc = new TwoPhaseCommit().parallelPrepare( executor );
+            tpc.register( new UnitOfWorkAdapter( uow3 ) );
+            tpc.register( failing );
+            tpc.register( other );
+            try {
+                tpc.commitOrRollback( CommitType.KEEP_OPEN );
+                fail( "Prepare should have failed." );
+            }
+            catch (Exception e) {
+                assertEquals( "prepare failed", e.getMessage() );
+            }
+            assertTrue( failing.rolledBack );
+            assertTrue( other.rolledBack );
+            assertFalse( other.committed );
+            assertEquals( "parallel", repo.newUnitOfWork().entity( employee ).name.get() );
+            uow3.close();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * {@link TransactionAware} that optionally waits for other participants
+     * and/or fails in {@link #prepare()}.
+     */
+    protected static class Participant
+            implements TransactionAware {
+
+        private CountDownLatch      latch;
+
+        private Exception           failure;
+
+        public volatile boolean     committed, rolledBack;
+
+        public Participant( CountDownLatch latch, Exception failure ) {
+            this.latch = latch;
+            this.failure = failure;
+        }
+
+        @Override
+        public void prepare() throws Exception {
+            if (latch != null) {
+                latch.countDown();
+                assertTrue( "Prepare is not parallel.", latch.await( 5, TimeUnit.SECONDS ) );
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public void commit() {
+            committed = true;
+        }
+
+        @Override
+        public void rollback() {
+            rolledBack = true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
 }
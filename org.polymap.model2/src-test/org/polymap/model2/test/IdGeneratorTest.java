@@ -0,0 +1,119 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.runtime.IdGenerator;
+import org.polymap.model2.runtime.IdGenerator.Snowflake;
+
+import junit.framework.TestCase;
+
+/**
+ * Test of {@link IdGenerator.Snowflake}.
+ *
+ * @author Falko Bräutigam
+ */
+public class IdGeneratorTest
+        extends TestCase {
+
+    private static final Log log = LogFactory.getLog( IdGeneratorTest.class );
+
+
+    public void testOrdered() {
+        Snowflake generator = new Snowflake( 7 );
+        long start = System.currentTimeMillis();
+        long prev = -1;
+        for (int i=0; i<100000; i++) {
+            long id = generator.nextLong();
+            assertTrue( id > prev );
+            assertEquals( 7, Snowflake.node( id ) );
+            prev = id;
+        }
+        assertTrue( Snowflake.timestamp( prev ) >= start );
+    }
+
+
+    public void testClockBackwards() {
+        long[] clock = {System.currentTimeMillis()};
+        Snowflake generator = new Snowflake( 1 ) {
+            @Override
+            protected long currentTimeMillis() {
+                return clock[0];
+            }
+        };
+        long id1 = generator.nextLong();
+        clock[0] -= 10000;
+        long id2 = generator.nextLong();
+        assertTrue( id2 > id1 );
+
+        // sequence overflow borrows the next millisecond, no blocking
+        long prev = id2;
+        for (int i=0; i<(1 << Snowflake.SEQUENCE_BITS) * 3; i++) {
+            long id = generator.nextLong();
+            assertTrue( id > prev );
+            prev = id;
+        }
+    }
+
+
+    public void testNodes() {
+        try {
+            new Snowflake( Snowflake.MAX_NODE + 1 );
+            fail( "Node out of range." );
+        }
+        catch (IllegalArgumentException e) {
+            // ok
+        }
+        // different nodes never collide
+        Snowflake node1 = new Snowflake( 1 );
+        Snowflake node2 = new Snowflake( 2 );
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        for (int i=0; i<10000; i++) {
+            assertTrue( ids.add( node1.nextLong() ) );
+            assertTrue( ids.add( node2.nextLong() ) );
+        }
+    }
+
+
+    public void testConcurrent() throws Exception {
+        Snowflake generator = new Snowflake( 0 );
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int loops = 100000;
+        Timer timer = Timer.startNow();
+        List<Thread> threads = new ArrayList();
+        for (int i=0; i<8; i++) {
+            Thread t = new Thread( () -> {
+                for (int j=0; j<loops; j++) {
+                    ids.add( generator.nextLong() );
+                }
+            });
+            threads.add( t );
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        log.info( "ids: " + ids.size() + " in " + timer.elapsedTime() + "ms" );
+        assertEquals( 8 * loops, ids.size() );
+    }
+
+}
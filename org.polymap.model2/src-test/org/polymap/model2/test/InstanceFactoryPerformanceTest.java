@@ -0,0 +1,147 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.Composite;
+import org.polymap.model2.PropertyBase;
+import org.polymap.model2.engine.CompositeInfoImpl;
+import org.polymap.model2.engine.InstanceFactory;
+import org.polymap.model2.engine.InstanceFactory.PropertyField;
+
+/**
+ * Compares the reflective instantiation/wiring of Composites with the
+ * {@link InstanceFactory} used by the engine. No store is involved, properties
+ * are wired with dummy instances.
+ *
+ * @author Falko Bräutigam
+ */
+public class InstanceFactoryPerformanceTest
+        extends TestCase {
+
+    private static final Log log = LogFactory.getLog( InstanceFactoryPerformanceTest.class );
+
+    private static final int        LOOPS = 200000;
+
+    private static final int        WARMUP = 20000;
+
+
+    public InstanceFactoryPerformanceTest( String name ) {
+        super( name );
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        log.info( " --------------------------------------- " + getClass().getSimpleName() + " : " + getName() );
+    }
+
+
+    public void testReflectionVsFactory() throws Exception {
+        // dummies
+        List<Field> fields = new ArrayList();
+        List<PropertyBase> dummies = new ArrayList();
+        Class superClass = Employee.class;
+        while (superClass != null) {
+            for (Field field : superClass.getDeclaredFields()) {
+                if (PropertyBase.class.isAssignableFrom( field.getType() )) {
+                    fields.add( field );
+                    dummies.add( dummy( field.getType() ) );
+                }
+            }
+            superClass = superClass.getSuperclass();
+        }
+        InstanceFactory<Employee> factory = new CompositeInfoImpl( Employee.class ).instanceFactory();
+        assertEquals( fields.size(), factory.fields().length );
+
+        reflection( fields, dummies, WARMUP );
+        factory( factory, dummies, WARMUP );
+
+        Timer timer = Timer.startNow();
+        Employee last = reflection( fields, dummies, LOOPS );
+        log.info( "Reflection: " + LOOPS + " instances in " + timer.elapsedTime() + "ms" );
+        assertNotNull( last.jap );
+
+        timer.start();
+        last = factory( factory, dummies, LOOPS );
+        log.info( "InstanceFactory: " + LOOPS + " instances in " + timer.elapsedTime() + "ms" );
+        assertNotNull( last.jap );
+        assertNotNull( last.company );
+    }
+
+
+    /**
+     * The reflective way the engine used to build instances.
+     */
+    protected Employee reflection( List<Field> fields, List<PropertyBase> dummies, int loops ) throws Exception {
+        Field contextField = Composite.class.getDeclaredField( "context" );
+        contextField.setAccessible( true );
+        Employee result = null;
+        for (int i=0; i<loops; i++) {
+            Constructor<?> ctor = Employee.class.getConstructor( ArrayUtils.EMPTY_CLASS_ARRAY );
+            result = (Employee)ctor.newInstance( ArrayUtils.EMPTY_OBJECT_ARRAY );
+            contextField.set( result, null );
+            Class superClass = Employee.class;
+            int index = 0;
+            while (superClass != null) {
+                for (Field field : superClass.getDeclaredFields()) {
+                    if (PropertyBase.class.isAssignableFrom( field.getType() )) {
+                        field.setAccessible( true );
+                        if (field.get( result ) == null) {
+                            field.set( result, dummies.get( index++ ) );
+                        }
+                    }
+                }
+                superClass = superClass.getSuperclass();
+            }
+        }
+        return result;
+    }
+
+
+    protected Employee factory( InstanceFactory<Employee> factory, List<PropertyBase> dummies, int loops ) {
+        PropertyField[] fields = factory.fields();
+        Employee result = null;
+        for (int i=0; i<loops; i++) {
+            result = factory.newInstance( null );
+            for (int j=0; j<fields.length; j++) {
+                if (fields[j].get( result ) == null) {
+                    fields[j].set( result, dummies.get( j ) );
+                }
+            }
+        }
+        return result;
+    }
+
+
+    protected PropertyBase dummy( Class<?> type ) {
+        return (PropertyBase)Proxy.newProxyInstance( getClass().getClassLoader(), new Class[] {type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException( "Dummy property." );
+                });
+    }
+
+}
@@ -88,6 +88,10 @@ public abstract class PerformanceTest
         log.info( "Load time: " + timer.elapsedTime() + "ms" );
         logHeap();
 
+        timer.start();
+        uow2.close();
+        log.info( "Close time: " + timer.elapsedTime() + "ms" );
+
         //
         timer.start();
         UnitOfWork uow3 = repo.newUnitOfWork();
@@ -95,6 +95,40 @@ public abstract class SimpleQueryTest
     }
 
     
+    public void testStreaming() throws Exception {
+        createEntities();
+        uow.commit();
+        Employee wanted = Expressions.template( Employee.class, repo );
+
+        // unmodified
+        ResultSet<Employee> rs = uow.query( Employee.class ).streaming().execute();
+        assertEquals( 2, rs.size() );
+        assertEquals( 2, rs.stream().count() );
+        try {
+            rs.iterator();
+            fail( "Streaming ResultSet must not be iterated twice." );
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+
+        // modified: size() without loading
+        az.firstname.set( "Ulli" );
+        uow.removeEntity( ulli );
+        uow.createEntity( Employee.class, null, (Employee proto) -> {
+            proto.firstname.set( "Ulli" );
+            return proto;
+        });
+        rs = uow.query( Employee.class ).where( eq( wanted.firstname, "Ulli" ) ).streaming().execute();
+        assertEquals( 2, rs.size() );
+        assertEquals( 2, Iterables.size( rs ) );
+
+        rs = uow.query( Employee.class ).streaming().execute();
+        assertEquals( 2, rs.size() );
+        assertEquals( 2, rs.stream().count() );
+    }
+
+
     public void testEqual() throws Exception {
         createEntities();
 
@@ -15,9 +15,11 @@
 package org.polymap.model2.engine;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -39,6 +41,9 @@ public abstract class CachingResultSet<T extends Entity>
 
     private static Log log = LogFactory.getLog( CachingResultSet.class );
 
+    /** The number of {@link #cachedIds} to load at once, see {@link #entities(List)}. */
+    public static final int PREFETCH_SIZE = 100;
+
     /** null after one full run */
     protected Iterator<T>   delegate;
     
@@ -62,11 +67,29 @@ public abstract class CachingResultSet<T extends Entity>
     protected abstract T entity( Object id );
 
 
+    /**
+     * Loads the entities for the given ids. Used to load the {@link #cachedIds} in
+     * chunks of {@link #PREFETCH_SIZE} on subsequent runs. This default
+     * implementation calls {@link #entity(Object)} for every id.
+     *
+     * @param ids
+     * @return List of entities in the order of the given ids.
+     */
+    protected List<T> entities( List<Object> ids ) {
+        return ids.stream().map( id -> entity( id ) ).collect( Collectors.toList() );
+    }
+
+
     @Override
     public Iterator<T> iterator() {
         return new Iterator<T>() {
             int index = -1;
             
+            /** The prefetched chunk of {@link #cachedIds} starting at {@link #prefetchedIndex}. */
+            List<T> prefetched = Collections.EMPTY_LIST;
+            
+            int prefetchedIndex;
+            
             @Override
             public boolean hasNext() {
                 if (index+1 < cachedIds.size() || (delegate != null && delegate.hasNext())) {
@@ -84,7 +107,12 @@ public abstract class CachingResultSet<T extends Entity>
                     throw new NoSuchElementException( "index = " + index );
                 }
                 if (++index < cachedIds.size()) {
-                    return entity( cachedIds.get( index ) );
+                    if (index >= prefetchedIndex + prefetched.size()) {
+                        int end = Math.min( index + PREFETCH_SIZE, cachedIds.size() );
+                        prefetched = entities( cachedIds.subList( index, end ) );
+                        prefetchedIndex = index;
+                    }
+                    return prefetched.get( index - prefetchedIndex );
                 }
                 else {
                     assert index == cachedIds.size() : "index == cachedIds.size(): " +  index + ", " + cachedIds.size();
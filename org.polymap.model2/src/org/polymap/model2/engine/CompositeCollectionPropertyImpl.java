@@ -23,6 +23,7 @@ import com.google.common.collect.Iterators;
 import org.polymap.model2.Composite;
 import org.polymap.model2.runtime.EntityRuntimeContext;
 import org.polymap.model2.runtime.ModelRuntimeException;
+import org.polymap.model2.runtime.PropertyInfo;
 import org.polymap.model2.runtime.ValueInitializer;
 import org.polymap.model2.store.CompositeState;
 import org.polymap.model2.store.StoreCollectionProperty;
@@ -44,10 +45,15 @@ class CompositeCollectionPropertyImpl<T extends Composite>
      */
     // XXX make it a Cache?
     private List<T>                 cache;
+    
+    /** The property of the Entity that contains this property. */
+    private PropertyInfo            rootProperty;
 
     
-    public CompositeCollectionPropertyImpl( EntityRuntimeContext entityContext, StoreCollectionProperty storeProp ) {
+    public CompositeCollectionPropertyImpl( EntityRuntimeContext entityContext, StoreCollectionProperty storeProp, 
+            PropertyInfo rootProperty ) {
         super( entityContext, storeProp );
+        this.rootProperty = rootProperty;
     }
 
     
@@ -56,7 +62,7 @@ class CompositeCollectionPropertyImpl<T extends Composite>
         Class actualType = initializer.rawResultType().orElse( info().getType() );
         CompositeState state = (CompositeState)storeProp.createValue( actualType );
                 
-        InstanceBuilder builder = new InstanceBuilder( entityContext );
+        InstanceBuilder builder = new InstanceBuilder( entityContext, rootProperty );
         Composite value = builder.newComposite( state, (Class<U>)actualType );
         
         if (initializer != null) {
@@ -92,7 +98,7 @@ class CompositeCollectionPropertyImpl<T extends Composite>
             Iterator<CompositeState> it = (Iterator<CompositeState>)storeProp.iterator();
             while (it.hasNext()) {
                 CompositeState state = it.next();
-                InstanceBuilder builder = new InstanceBuilder( entityContext );
+                InstanceBuilder builder = new InstanceBuilder( entityContext, rootProperty );
                 T instance = (T)builder.newComposite( state, state.compositeInstanceType( info().getType() ) );
                 cache.add( instance );
             }
@@ -17,9 +17,11 @@ package org.polymap.model2.engine;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import java.lang.reflect.Field;
 
@@ -43,8 +45,17 @@ public final class CompositeInfoImpl
 
     private Class<? extends Composite>      compositeClass;
     
-    /** Maps property name into PropertyInfo. */
-    private Map<String,PropertyInfo>        propertyInfos = new HashMap();
+    /** Maps property name into PropertyInfo; ordered by {@link PropertyInfo#index()}. */
+    private Map<String,PropertyInfo>        propertyInfos = new LinkedHashMap();
+    
+    /** Lazily created, see {@link #instanceFactory()}. */
+    private volatile InstanceFactory        instanceFactory;
+    
+    /** Lazily created, see {@link #wiringPlan()}. */
+    private volatile WiringPlan             wiringPlan;
+    
+    /** Plans of sub-classes of {@link #compositeClass}, see {@link #wiringPlan(Class)}. */
+    private ConcurrentMap<Class,WiringPlan> subclassPlans = new ConcurrentHashMap( 4 );
     
 //    private Lazy<Composite>                 template = new LockedLazyInit();
     
@@ -65,11 +76,11 @@ public final class CompositeInfoImpl
      */
     protected void initPropertyInfos() throws Exception {
         Class superClass = compositeClass;
+        int index = 0;
         while (superClass != null) {
             for (Field field : superClass.getDeclaredFields()) {
                 if (PropertyBase.class.isAssignableFrom( field.getType() )) {
-                    
-                    PropertyInfoImpl info = new PropertyInfoImpl( field );
+                    PropertyInfoImpl info = new PropertyInfoImpl( field, index++ );
                     propertyInfos.put( info.getName(), info );
                 }
             }
@@ -150,4 +161,37 @@ public final class CompositeInfoImpl
         return compositeClass.getAnnotation( Immutable.class ) != null;
     }
 
+    /**
+     * The factory of instances of this Composite type. Created on first access;
+     * concurrent inits are ok here.
+     */
+    public InstanceFactory instanceFactory() {
+        if (instanceFactory == null) {
+            instanceFactory = new InstanceFactory( compositeClass );
+        }
+        return instanceFactory;
+    }
+
+    /**
+     * The plan to wire the properties of instances of this Composite type.
+     * Compiled on first access; concurrent inits are ok here.
+     */
+    WiringPlan wiringPlan() {
+        if (wiringPlan == null) {
+            wiringPlan = new WiringPlan( instanceFactory(), this );
+        }
+        return wiringPlan;
+    }
+
+    /**
+     * The plan to wire the properties of the given actual type. For Composite
+     * properties the actual type might be a sub-class of the declared type (see
+     * TypedValueInitializer).
+     */
+    WiringPlan wiringPlan( Class<? extends Composite> actualType ) {
+        return actualType.equals( compositeClass )
+                ? wiringPlan()
+                : subclassPlans.computeIfAbsent( actualType, type -> new WiringPlan( new InstanceFactory( type ), this ) );
+    }
+
 }
@@ -36,6 +36,9 @@ class CompositePropertyImpl<T extends Composite>
     private EntityRuntimeContext            entityContext;
     
     private StoreProperty<CompositeState>   storeProp;
+    
+    /** The property of the Entity that contains this property. */
+    private PropertyInfo                    rootProperty;
 
     /**
      * Cache of the Composite value. As building the Composite is an expensive
@@ -47,9 +50,10 @@ class CompositePropertyImpl<T extends Composite>
 
 
     protected CompositePropertyImpl( EntityRuntimeContext entityContext, 
-            StoreProperty<CompositeState> underlying ) {
+            StoreProperty<CompositeState> underlying, PropertyInfo rootProperty ) {
         this.storeProp = underlying;
         this.entityContext = entityContext;
+        this.rootProperty = rootProperty;
     }
 
     
@@ -67,7 +71,7 @@ class CompositePropertyImpl<T extends Composite>
         if (value == null) {
             CompositeState state = storeProp.get();
             if (state != null) {
-                InstanceBuilder builder = new InstanceBuilder( entityContext );
+                InstanceBuilder builder = new InstanceBuilder( entityContext, rootProperty );
                 value = builder.newComposite( state, state.compositeInstanceType( info().getType() ) );
             }
             else {
@@ -93,7 +97,7 @@ class CompositePropertyImpl<T extends Composite>
             CompositeState state = storeProp.createValue( actualType );
             assert state != null : "Store must not return null as newValue().";
 
-            InstanceBuilder builder = new InstanceBuilder( entityContext );
+            InstanceBuilder builder = new InstanceBuilder( entityContext, rootProperty );
             U result = (U)builder.newComposite( state, actualType );
 
             if (initializer != null) {
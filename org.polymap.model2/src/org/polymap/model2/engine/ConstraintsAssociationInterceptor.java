@@ -18,7 +18,6 @@ import org.polymap.model2.Association;
 import org.polymap.model2.Entity;
 import org.polymap.model2.engine.EntityRepositoryImpl.EntityRuntimeContextImpl;
 import org.polymap.model2.runtime.ModelRuntimeException;
-import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
 
 /**
  *
@@ -29,8 +28,8 @@ final class ConstraintsAssociationInterceptor<T extends Entity>
         extends ConstraintsInterceptor<T>
         implements Association<T> {
 
-    public ConstraintsAssociationInterceptor( Association<T> delegate, EntityRuntimeContextImpl context ) {
-        super( delegate, context );
+    public ConstraintsAssociationInterceptor( Association<T> delegate, EntityRuntimeContextImpl context, boolean isImmutable, boolean isNullable ) {
+        super( delegate, context, isImmutable, isNullable );
     }
 
     
@@ -64,7 +63,7 @@ final class ConstraintsAssociationInterceptor<T extends Entity>
         }
         delegate().set( value );
         
-        context.raiseStatus( EntityStatus.MODIFIED );
+        markModified();
     }
 
 }
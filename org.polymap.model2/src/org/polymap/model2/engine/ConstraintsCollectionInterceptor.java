@@ -21,7 +21,6 @@ import org.polymap.model2.CollectionProperty;
 import org.polymap.model2.engine.EntityRepositoryImpl.EntityRuntimeContextImpl;
 import org.polymap.model2.runtime.ModelRuntimeException;
 import org.polymap.model2.runtime.ValueInitializer;
-import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
 
 /**
  * 
@@ -31,8 +30,8 @@ final class ConstraintsCollectionInterceptor<T>
         extends ConstraintsInterceptor<T>
         implements CollectionProperty<T> {
 
-    public ConstraintsCollectionInterceptor( CollectionProperty<T> delegate, EntityRuntimeContextImpl context ) {
-        super( delegate, context );
+    public ConstraintsCollectionInterceptor( CollectionProperty<T> delegate, EntityRuntimeContextImpl context, boolean isImmutable, boolean isNullable ) {
+        super( delegate, context, isImmutable, isNullable );
     }
 
     protected CollectionProperty<T> coll() {
@@ -72,7 +71,7 @@ final class ConstraintsCollectionInterceptor<T>
         if (isImmutable) {
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
-        context.raiseStatus( EntityStatus.MODIFIED );
+        markModified();
         return coll().createElement( initializer );
     }
 
@@ -86,7 +85,7 @@ final class ConstraintsCollectionInterceptor<T>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().add( e )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -101,7 +100,7 @@ final class ConstraintsCollectionInterceptor<T>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().addAll( c )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -116,7 +115,7 @@ final class ConstraintsCollectionInterceptor<T>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().remove( o )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -131,7 +130,7 @@ final class ConstraintsCollectionInterceptor<T>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().removeAll( c )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -146,7 +145,7 @@ final class ConstraintsCollectionInterceptor<T>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().retainAll( c )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -158,7 +157,7 @@ final class ConstraintsCollectionInterceptor<T>
     public void clear() {
         context.checkState();
         coll().clear();
-        context.raiseStatus( EntityStatus.MODIFIED );
+        markModified();
     }
 
     @Override
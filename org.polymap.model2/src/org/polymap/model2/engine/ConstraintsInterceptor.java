@@ -18,6 +18,7 @@ import org.polymap.model2.DefaultValue;
 import org.polymap.model2.Immutable;
 import org.polymap.model2.PropertyBase;
 import org.polymap.model2.engine.EntityRepositoryImpl.EntityRuntimeContextImpl;
+import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
 import org.polymap.model2.runtime.PropertyInfo;
 
 /**
@@ -41,13 +42,20 @@ abstract class ConstraintsInterceptor<T>
     
     protected boolean                   isNullable;
 
+    /**
+     * The entity level property that is marked dirty on modification. This is
+     * the property itself, or the property of the Entity that contains the
+     * Composite of this property. Set by {@link InstanceBuilder}.
+     */
+    protected PropertyInfo              dirtyProperty;
+
     
-    public ConstraintsInterceptor( PropertyBase<T> delegate, EntityRuntimeContextImpl context ) {
+    public ConstraintsInterceptor( PropertyBase<T> delegate, EntityRuntimeContextImpl context, 
+            boolean isImmutable, boolean isNullable ) {
         this.delegate = delegate;
         this.context = context;
-        PropertyInfo info = delegate.info();
-        this.isImmutable = info.isImmutable();
-        this.isNullable = info.isNullable();
+        this.isImmutable = isImmutable;
+        this.isNullable = isNullable;
     }
 
 
@@ -57,6 +65,16 @@ abstract class ConstraintsInterceptor<T>
     }
 
 
+    /**
+     * Raises the status of the Entity to {@link EntityStatus#MODIFIED} and
+     * marks {@link #dirtyProperty} dirty.
+     */
+    protected void markModified() {
+        context.raiseStatus( EntityStatus.MODIFIED );
+        context.markDirty( dirtyProperty != null ? dirtyProperty : info() );
+    }
+
+
     protected String fullPropName() {
         return context.getEntity().info().getName() + "." + info().getName();
     }
@@ -21,7 +21,6 @@ import org.polymap.model2.CollectionProperty;
 import org.polymap.model2.Entity;
 import org.polymap.model2.ManyAssociation;
 import org.polymap.model2.engine.EntityRepositoryImpl.EntityRuntimeContextImpl;
-import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
 import org.polymap.model2.runtime.ModelRuntimeException;
 
 /**
@@ -32,8 +31,8 @@ final class ConstraintsManyAssociationInterceptor<T extends Entity>
         extends ConstraintsInterceptor<T>
         implements ManyAssociation<T> {
 
-    public ConstraintsManyAssociationInterceptor( ManyAssociation<T> delegate, EntityRuntimeContextImpl context ) {
-        super( delegate, context );
+    public ConstraintsManyAssociationInterceptor( ManyAssociation<T> delegate, EntityRuntimeContextImpl context, boolean isImmutable, boolean isNullable ) {
+        super( delegate, context, isImmutable, isNullable );
     }
 
     protected ManyAssociation<T> coll() {
@@ -73,7 +72,7 @@ final class ConstraintsManyAssociationInterceptor<T extends Entity>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().add( e )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -88,7 +87,7 @@ final class ConstraintsManyAssociationInterceptor<T extends Entity>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().addAll( c )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -103,7 +102,7 @@ final class ConstraintsManyAssociationInterceptor<T extends Entity>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().remove( o )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -118,7 +117,7 @@ final class ConstraintsManyAssociationInterceptor<T extends Entity>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().removeAll( c )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -133,7 +132,7 @@ final class ConstraintsManyAssociationInterceptor<T extends Entity>
             throw new ModelRuntimeException( "Property is @Immutable: " + fullPropName() );
         }
         if (coll().retainAll( c )) {
-            context.raiseStatus( EntityStatus.MODIFIED );
+            markModified();
             return true;
         }
         else {
@@ -145,7 +144,7 @@ final class ConstraintsManyAssociationInterceptor<T extends Entity>
     public void clear() {
         context.checkState();
         coll().clear();
-        context.raiseStatus( EntityStatus.MODIFIED );
+        markModified();
     }
 
     @Override
@@ -19,7 +19,6 @@ import org.polymap.model2.engine.EntityRepositoryImpl.EntityRuntimeContextImpl;
 import org.polymap.model2.runtime.ImmutableException;
 import org.polymap.model2.runtime.NotNullableException;
 import org.polymap.model2.runtime.ValueInitializer;
-import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
 
 /**
  * 
@@ -37,8 +36,8 @@ final class ConstraintsPropertyInterceptor<T>
     protected Object                    defaultValue = UNINITIALIZED;
     
 
-    public ConstraintsPropertyInterceptor( Property<T> delegate, EntityRuntimeContextImpl context ) {
-        super( delegate, context );
+    public ConstraintsPropertyInterceptor( Property<T> delegate, EntityRuntimeContextImpl context, boolean isImmutable, boolean isNullable ) {
+        super( delegate, context, isImmutable, isNullable );
     }
 
     
@@ -82,14 +81,14 @@ final class ConstraintsPropertyInterceptor<T>
         }
         delegate().set( value );
         
-        context.raiseStatus( EntityStatus.MODIFIED );
+        markModified();
     }
 
     
     @Override
     public <U extends T> U createValue( ValueInitializer<U> initializer ) {
         context.checkState();
-        context.raiseStatus( EntityStatus.MODIFIED );
+        markModified();
         return delegate().createValue( initializer );
     }
 
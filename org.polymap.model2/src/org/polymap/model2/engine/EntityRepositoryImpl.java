@@ -17,10 +17,13 @@ package org.polymap.model2.engine;
 import static java.util.Arrays.stream;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 
 import java.lang.reflect.Field;
 
@@ -238,6 +241,9 @@ public class EntityRepositoryImpl
         
         private Object                  id;
 
+        /** Lazily initialized, see {@link #markDirty(PropertyInfo)}. */
+        private Set<PropertyInfo>       dirty;
+
         
         EntityRuntimeContextImpl( CompositeState state, EntityStatus status, UnitOfWork uow ) {
             assert state != null;
@@ -258,6 +264,15 @@ public class EntityRepositoryImpl
             uow = null;
         }
         
+        /**
+         * True if this entity was {@link #detach() detached} or its
+         * {@link UnitOfWork} was closed. Closing a UnitOfWork does not visit its
+         * entities, so this is checked on every access.
+         */
+        protected boolean isDetached() {
+            return status == EntityStatus.DETACHED || uow == null || !((UnitOfWorkImpl)uow).isOpen();
+        }
+        
         /**
          * For some {@link Cache} implementations used by {@link UnitOfWorkImpl} it
          * is possible that cache entries are evicted while there are still
@@ -267,7 +282,7 @@ public class EntityRepositoryImpl
          */
         protected void checkState() {
             assert status != EntityStatus.EVICTED;
-            if (status == EntityStatus.DETACHED || uow == null) {
+            if (isDetached()) {
                 throw new ModelRuntimeException( "Entity is detached after UnitOfWork has been closed or rolled back: " + entity );
             }
         }
@@ -308,7 +323,7 @@ public class EntityRepositoryImpl
 
         @Override
         public EntityStatus getStatus() {
-            return status;
+            return isDetached() ? EntityStatus.DETACHED : status;
         }
 
         @Override
@@ -326,6 +341,26 @@ public class EntityRepositoryImpl
         public void resetStatus( EntityStatus newStatus ) {
             checkState();
             this.status = newStatus;
+            if (newStatus == EntityStatus.LOADED) {
+                dirty = null;
+            }
+        }
+
+        /**
+         * Marks the given entity level property as modified.
+         *
+         * @see #getDirtyProperties()
+         */
+        public void markDirty( PropertyInfo property ) {
+            if (dirty == null) {
+                dirty = new HashSet( 8 );
+            }
+            dirty.add( property );
+        }
+
+        @Override
+        public Set<PropertyInfo> getDirtyProperties() {
+            return dirty != null ? Collections.unmodifiableSet( dirty ) : Collections.EMPTY_SET;
         }
 
         @Override
@@ -0,0 +1,215 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.polymap.model2.Composite;
+import org.polymap.model2.PropertyBase;
+import org.polymap.model2.runtime.EntityRuntimeContext;
+import org.polymap.model2.runtime.ModelRuntimeException;
+
+/**
+ * Creates instances of one {@link Composite} type and provides direct access to
+ * its {@link PropertyBase} fields. Constructor and fields are resolved once and
+ * bound to {@link MethodHandle}s, so building an instance does not need any
+ * reflective lookup or access check.
+ * <p/>
+ * Instances are created and cached by {@link CompositeInfoImpl#instanceFactory()}.
+ *
+ * @author Falko Bräutigam
+ */
+public final class InstanceFactory<T extends Composite> {
+
+    private static final MethodHandles.Lookup   lookup = MethodHandles.lookup();
+
+    private static final MethodType             CTOR_TYPE = MethodType.methodType( Object.class );
+
+    private static final MethodType             GETTER_TYPE = MethodType.methodType( Object.class, Object.class );
+
+    private static final MethodType             SETTER_TYPE = MethodType.methodType( void.class, Object.class, Object.class );
+
+    /** Setter of {@link Composite#context}; static final so that it is constant folded. */
+    private static final MethodHandle           contextSetter;
+
+    private static final MethodHandle           contextGetter;
+
+    static {
+        try {
+            Field f = Composite.class.getDeclaredField( "context" );
+            f.setAccessible( true );
+            contextSetter = lookup.unreflectSetter( f ).asType( SETTER_TYPE );
+            contextGetter = lookup.unreflectGetter( f ).asType( GETTER_TYPE );
+        }
+        catch (Exception e) {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
+
+
+    /**
+     * The context of the given Composite.
+     */
+    static EntityRuntimeContext contextOf( Composite composite ) {
+        try {
+            Object result = contextGetter.invokeExact( (Object)composite );
+            return (EntityRuntimeContext)result;
+        }
+        catch (Throwable e) {
+            throw propagate( e );
+        }
+    }
+
+
+    protected static RuntimeException propagate( Throwable e ) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException)e;
+        }
+        else if (e instanceof Error) {
+            throw (Error)e;
+        }
+        else {
+            return new ModelRuntimeException( e );
+        }
+    }
+
+
+    // instance *******************************************
+
+    private Class<T>                compositeClass;
+
+    /** Null if the Composite type is abstract or does not have a public default ctor. */
+    private MethodHandle            ctor;
+
+    private PropertyField[]         fields;
+
+
+    InstanceFactory( Class<T> compositeClass ) {
+        this.compositeClass = compositeClass;
+        try {
+            if (!Modifier.isAbstract( compositeClass.getModifiers() )) {
+                try {
+                    ctor = lookup.unreflectConstructor( compositeClass.getConstructor() ).asType( CTOR_TYPE );
+                }
+                catch (NoSuchMethodException e) {
+                    ctor = null;
+                }
+            }
+
+            List<PropertyField> result = new ArrayList();
+            Class superClass = compositeClass;
+            while (superClass != null) {
+                for (Field field : superClass.getDeclaredFields()) {
+                    if (PropertyBase.class.isAssignableFrom( field.getType() )) {
+                        result.add( new PropertyField( field ) );
+                    }
+                }
+                superClass = superClass.getSuperclass();
+            }
+            fields = result.toArray( new PropertyField[result.size()] );
+        }
+        catch (IllegalAccessException e) {
+            throw new ModelRuntimeException( "Unable to access members of: " + compositeClass.getName(), e );
+        }
+    }
+
+
+    public Class<T> compositeClass() {
+        return compositeClass;
+    }
+
+
+    /**
+     * Creates a new instance and sets the given context. Properties are left
+     * uninitialized.
+     */
+    public T newInstance( EntityRuntimeContext context ) {
+        if (ctor == null) {
+            throw new ModelRuntimeException( "Composite type is abstract or has no public default constructor: " + compositeClass.getName() );
+        }
+        try {
+            Object instance = ctor.invokeExact();
+            contextSetter.invokeExact( instance, (Object)context );
+            return (T)instance;
+        }
+        catch (Throwable e) {
+            throw propagate( e );
+        }
+    }
+
+
+    /**
+     * All {@link PropertyBase} fields of the Composite type, including all super
+     * classes. Fields of the type itself come first.
+     */
+    public PropertyField[] fields() {
+        return fields;
+    }
+
+
+    /**
+     * A {@link PropertyBase} field of a Composite type.
+     */
+    public static final class PropertyField {
+
+        private Field               field;
+
+        private MethodHandle        getter;
+
+        private MethodHandle        setter;
+
+        protected PropertyField( Field field ) throws IllegalAccessException {
+            this.field = field;
+            field.setAccessible( true );
+            this.getter = lookup.unreflectGetter( field ).asType( GETTER_TYPE );
+            this.setter = lookup.unreflectSetter( field ).asType( SETTER_TYPE );
+        }
+
+        public Field field() {
+            return field;
+        }
+
+        public String name() {
+            return field.getName();
+        }
+
+        public PropertyBase get( Composite composite ) {
+            try {
+                Object result = getter.invokeExact( (Object)composite );
+                return (PropertyBase)result;
+            }
+            catch (Throwable e) {
+                throw propagate( e );
+            }
+        }
+
+        public void set( Composite composite, PropertyBase value ) {
+            try {
+                setter.invokeExact( (Object)composite, (Object)value );
+            }
+            catch (Throwable e) {
+                throw propagate( e );
+            }
+        }
+    }
+
+}
@@ -15,10 +15,12 @@
 package org.polymap.model2.engine;
 
 import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-
-import com.google.common.base.Function;
-import com.google.common.collect.Iterators;
+import java.util.List;
+import java.util.Map;
 
 import org.polymap.model2.Entity;
 import org.polymap.model2.ManyAssociation;
@@ -64,17 +66,55 @@ class ManyAssociationImpl<T extends Entity>
         return storeProp.size();
     }
 
+    /**
+     * Loads the associated entities in chunks of
+     * {@link CachingResultSet#PREFETCH_SIZE} while the iteration advances, so that
+     * contains() and loops that break early do not load all entities.
+     */
     @Override
     public Iterator<T> iterator() {
         UnitOfWork uow = context.getUnitOfWork();
-        Class<? extends Entity> entityType = info().getType();
+        Class<T> entityType = info().getType();
         
-        return Iterators.transform( storeProp.iterator(), new Function<Object,T>() {
+        // iterate the store property in order to support remove()
+        Iterator<Object> ids = storeProp.iterator();
+        return new Iterator<T>() {
+            
+            /** Reads the ids of the next chunk ahead; null after remove(). */
+            private Iterator<Object>    ahead = storeProp.iterator();
+            
+            private Map<Object,T>       chunk = Collections.EMPTY_MAP;
+            
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+            
+            @Override
+            public T next() {
+                Object id = ids.next();
+                if (!chunk.containsKey( id ) && ahead != null) {
+                    List<Object> chunkIds = new ArrayList( CachingResultSet.PREFETCH_SIZE );
+                    while (ahead.hasNext() && chunkIds.size() < CachingResultSet.PREFETCH_SIZE) {
+                        chunkIds.add( ahead.next() );
+                    }
+                    List<T> entities = uow.entities( entityType, chunkIds );
+                    chunk = new HashMap( chunkIds.size() * 2 );
+                    for (int i=0; i<chunkIds.size(); i++) {
+                        chunk.put( chunkIds.get( i ), entities.get( i ) );
+                    }
+                }
+                // not prefetched: after remove(), or store property modified
+                return chunk.containsKey( id ) ? chunk.get( id ) : uow.entity( entityType, id );
+            }
+            
             @Override
-            public T apply( Object id ) {
-                return (T)uow.entity( entityType, id );
+            public void remove() {
+                ids.remove();
+                // the ahead iterator is not in sync anymore
+                ahead = null;
             }
-        });
+        };
     }
 
     @Override
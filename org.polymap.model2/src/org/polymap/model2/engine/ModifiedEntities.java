@@ -0,0 +1,170 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.polymap.model2.Entity;
+import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
+
+/**
+ * The modified (created, modified, removed) entities of a {@link UnitOfWorkImpl},
+ * id -> entity. Additionally the entities are indexed by their type and bucketed
+ * into {@link EntityStatus#CREATED} and stored (MODIFIED or REMOVED) entities.
+ * This allows to merge query results with the modified entities with cost
+ * proportional to the modified entities of the queried type.
+ * <p/>
+ * The bucket is chosen by the status when the entity is added. A CREATED entity
+ * keeps its status until commit; a MODIFIED entity may become REMOVED later, so
+ * the status of stored entities has to be checked by the caller.
+ * <p/>
+ * Just the operations that maintain the index are provided. The views
+ * {@link #keySet()}, {@link #values()} and {@link #entrySet()} are not
+ * modifiable.
+ *
+ * @author Falko Bräutigam
+ */
+public class ModifiedEntities {
+
+    /**
+     * The modified entities of one type.
+     */
+    protected static class TypeIndex {
+
+        public final ConcurrentMap<Object,Entity> created = new ConcurrentHashMap( 64, 0.75f, 2 );
+
+        public final ConcurrentMap<Object,Entity> stored = new ConcurrentHashMap( 64, 0.75f, 2 );
+
+        protected void add( Entity entity ) {
+            (entity.status() == EntityStatus.CREATED ? created : stored).put( entity.id(), entity );
+        }
+
+        protected void remove( Entity entity ) {
+            created.remove( entity.id(), entity );
+            stored.remove( entity.id(), entity );
+        }
+    }
+
+
+    // instance *******************************************
+
+    private ConcurrentMap<Object,Entity>    entities = new ConcurrentHashMap( 256, 0.75f, 4 );
+
+    /** Unmodifiable view of {@link #entities}. */
+    private Map<Object,Entity>              view = Collections.unmodifiableMap( entities );
+
+    private ConcurrentMap<Class,TypeIndex>  types = new ConcurrentHashMap( 32, 0.75f, 2 );
+
+
+    /**
+     * The entities of exactly the given type that were {@link EntityStatus#CREATED}
+     * in this UnitOfWork.
+     */
+    public <T extends Entity> Collection<T> created( Class<T> type ) {
+        TypeIndex index = types.get( type );
+        return index != null ? (Collection<T>)index.created.values() : Collections.EMPTY_LIST;
+    }
+
+
+    /**
+     * The entities of exactly the given type that exist in the underlying store and
+     * were {@link EntityStatus#MODIFIED} or {@link EntityStatus#REMOVED} in this
+     * UnitOfWork.
+     */
+    public <T extends Entity> Collection<T> stored( Class<T> type ) {
+        TypeIndex index = types.get( type );
+        return index != null ? (Collection<T>)index.stored.values() : Collections.EMPTY_LIST;
+    }
+
+
+    protected TypeIndex index( Entity entity ) {
+        return types.computeIfAbsent( entity.getClass(), type -> new TypeIndex() );
+    }
+
+
+    public Entity get( Object id ) {
+        return entities.get( id );
+    }
+
+
+    public boolean containsKey( Object id ) {
+        return entities.containsKey( id );
+    }
+
+
+    public boolean isEmpty() {
+        return entities.isEmpty();
+    }
+
+
+    public int size() {
+        return entities.size();
+    }
+
+
+    public Entity put( Object id, Entity entity ) {
+        Entity previous = entities.put( id, entity );
+        if (previous != null) {
+            index( previous ).remove( previous );
+        }
+        index( entity ).add( entity );
+        return previous;
+    }
+
+
+    public Entity putIfAbsent( Object id, Entity entity ) {
+        Entity previous = entities.putIfAbsent( id, entity );
+        if (previous == null) {
+            index( entity ).add( entity );
+        }
+        return previous;
+    }
+
+
+    public Entity remove( Object id ) {
+        Entity previous = entities.remove( id );
+        if (previous != null) {
+            index( previous ).remove( previous );
+        }
+        return previous;
+    }
+
+
+    public void clear() {
+        entities.clear();
+        types.clear();
+    }
+
+
+    public Set<Object> keySet() {
+        return view.keySet();
+    }
+
+
+    public Collection<Entity> values() {
+        return view.values();
+    }
+
+
+    public Set<Map.Entry<Object,Entity>> entrySet() {
+        return view.entrySet();
+    }
+
+}
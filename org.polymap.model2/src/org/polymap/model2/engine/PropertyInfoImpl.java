@@ -24,6 +24,8 @@ import java.lang.reflect.Type;
 import org.polymap.model2.Association;
 import org.polymap.model2.CollectionProperty;
 import org.polymap.model2.Composite;
+import org.polymap.model2.DefaultValue;
+import org.polymap.model2.Defaults;
 import org.polymap.model2.Computed;
 import org.polymap.model2.Description;
 import org.polymap.model2.Immutable;
@@ -33,42 +35,120 @@ import org.polymap.model2.NameInStore;
 import org.polymap.model2.Nullable;
 import org.polymap.model2.PropertyBase;
 import org.polymap.model2.Queryable;
+import org.polymap.model2.runtime.CompositeInfo;
+import org.polymap.model2.runtime.EntityRepository;
 import org.polymap.model2.runtime.ModelRuntimeException;
 import org.polymap.model2.runtime.PropertyInfo;
 import org.polymap.model2.runtime.ValueInitializer;
 
 /**
- * 
+ * All metadata derived from the annotations and the generic type of the field
+ * is snapshotted when the info is created (that is, when the
+ * {@link EntityRepository} is built), so the accessors are cheap enough for the
+ * hot paths of the engine and the stores. A field without type parameter fails
+ * when the repository is built.
+ * <p/>
+ * The {@link #getDefaultValue() default value} is resolved on first access and
+ * cached, so an unsupported {@link DefaultValue}/{@link Defaults} type fails on
+ * first access, just as before.
  *
  * @author <a href="http://www.polymap.de">Falko Bräutigam</a>
  */
 public class PropertyInfoImpl<T>
         implements PropertyInfo<T> {
 
-    private Field                   field;
+    private static final Object             UNRESOLVED = new Object();
 
+    private final Field                     field;
+
+    private final int                       index;
+    
+    private final Class<T>                  type;
+    
+    private final Optional<ParameterizedType> parameterizedType;
+    
+    private final Optional<String>          description;
+    
+    private final String                    nameInStore;
+    
+    private final boolean                   isAssociation;
+    
+    private final boolean                   isNullable;
+    
+    private final boolean                   isImmutable;
+    
+    private final boolean                   isComputed;
     
+    private final boolean                   isQueryable;
+    
+    private final int                       maxOccurs;
+    
+    /** Lazily resolved, {@link #UNRESOLVED} until first access. */
+    private volatile Object                 defaultValue = UNRESOLVED;
+
+    
+    /**
+     * Creates an info that is not part of a {@link CompositeInfo}. Its
+     * {@link #index()} is -1.
+     */
     public PropertyInfoImpl( Field field ) {
+        this( field, -1 );
+    }
+
+    
+    public PropertyInfoImpl( Field field, int index ) {
         assert PropertyBase.class.isAssignableFrom( field.getType() );
         this.field = field;
+        this.index = index;
+        
+        Optional<Class<T>> opt = ValueInitializer.rawTypeParameter( field.getGenericType() );
+        this.type = opt.orElseThrow( () -> new ModelRuntimeException( "Type param missing: " + toString() ) );
+        
+        Type typeArg = ((ParameterizedType)field.getGenericType()).getActualTypeArguments()[0];
+        this.parameterizedType = typeArg instanceof ParameterizedType 
+                ? Optional.of( (ParameterizedType)typeArg ) : Optional.empty();
+        
+        Description a = field.getAnnotation( Description.class );
+        this.description = a != null ? Optional.of( a.value() ) : Optional.empty();
+        
+        NameInStore nameInStoreAnnotation = field.getAnnotation( NameInStore.class );
+        this.nameInStore = nameInStoreAnnotation != null ? nameInStoreAnnotation.value() : field.getName();
+        
+        this.isAssociation = Association.class.isAssignableFrom( field.getType() )
+                || ManyAssociation.class.isAssignableFrom( field.getType() );
+        this.isNullable = field.getAnnotation( Nullable.class ) != null;
+        this.isImmutable = field.getAnnotation( Immutable.class ) != null;
+        this.isComputed = field.getAnnotation( Computed.class ) != null;
+        this.isQueryable = field.getAnnotation( Queryable.class ) != null;
+        
+        MaxOccurs maxOccursAnnotation = field.getAnnotation( MaxOccurs.class );
+        if (CollectionProperty.class.isAssignableFrom( field.getType() )
+                || ManyAssociation.class.isAssignableFrom( field.getType() )) {
+            this.maxOccurs = maxOccursAnnotation != null ? maxOccursAnnotation.value() : Integer.MAX_VALUE;
+        }
+        else {
+            assert maxOccursAnnotation == null : "@MaxOccurs is not allowed on single value properties.";
+            this.maxOccurs = 1;
+        }
     }
 
     Field getField() {
         return field;
     }
 
+    @Override
+    public int index() {
+        return index;
+    }
+
     @Override
     public Class<T> getType() {
-        Optional<Class<T>> opt = ValueInitializer.rawTypeParameter( field.getGenericType() );
-        return opt.orElseThrow( () -> new ModelRuntimeException( "Type param missing: " + toString() ) );
+        return type;
     }
     
     @Override
     public Optional<ParameterizedType> getParameterizedType() {
-        ParameterizedType declaredType = (ParameterizedType)field.getGenericType();
-        Type result = declaredType.getActualTypeArguments()[0];
-        return result instanceof ParameterizedType 
-                ? Optional.of( (ParameterizedType)result ) : Optional.empty();
+        return parameterizedType;
     }
     
     @Override
@@ -78,60 +158,52 @@ public class PropertyInfoImpl<T>
 
     @Override
     public Optional<String> getDescription() {
-        Description a = getAnnotation( Description.class );
-        return a != null ? Optional.of( a.value() ) : Optional.empty();
+        return description;
     }
 
     @Override
     public String getNameInStore() {
-        return field.getAnnotation( NameInStore.class ) != null
-                ? field.getAnnotation( NameInStore.class ).value()
-                : field.getName();
+        return nameInStore;
     }
 
     @Override
     public boolean isAssociation() {
-        return Association.class.isAssignableFrom( field.getType() )
-                || ManyAssociation.class.isAssignableFrom( field.getType() );
+        return isAssociation;
     }
 
     @Override
     public boolean isNullable() {
-        return field.getAnnotation( Nullable.class ) != null;
+        return isNullable;
     }
 
     @Override
     public boolean isImmutable() {
-        return field.getAnnotation( Immutable.class ) != null;
+        return isImmutable;
     }
 
     @Override
     public boolean isComputed() {
-        return field.getAnnotation( Computed.class ) != null;
+        return isComputed;
     }
 
     @Override
     public boolean isQueryable() {
-        return field.getAnnotation( Queryable.class ) != null;
+        return isQueryable;
     }
 
     @Override
     public int getMaxOccurs() {
-        if (CollectionProperty.class.isAssignableFrom( field.getType() )
-                || ManyAssociation.class.isAssignableFrom( field.getType() )) {
-            return field.getAnnotation( MaxOccurs.class ) != null
-                    ? field.getAnnotation( MaxOccurs.class ).value()
-                    : Integer.MAX_VALUE;
-        }
-        else {
-            assert field.getAnnotation( MaxOccurs.class ) == null : "@MaxOccurs is not allowed on single value properties.";
-            return 1;
-        }
+        return maxOccurs;
     }
 
     @Override
     public T getDefaultValue() {
-        return (T)DefaultValues.valueOf( this );
+        // concurrent first access resolves twice, the values are immutable
+        Object result = defaultValue;
+        if (result == UNRESOLVED) {
+            defaultValue = result = DefaultValues.valueOf( this );
+        }
+        return (T)result;
     }
 
     @Override    
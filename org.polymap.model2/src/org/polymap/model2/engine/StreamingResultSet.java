@@ -0,0 +1,89 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.polymap.model2.Entity;
+import org.polymap.model2.query.Query;
+import org.polymap.model2.query.ResultSet;
+
+/**
+ * Forward-only {@link ResultSet} of a {@link Query#streaming()} query. In
+ * contrast to {@link CachingResultSet} no ids are kept, so the result can be
+ * iterated just once.
+ *
+ * @author Falko Bräutigam
+ */
+public abstract class StreamingResultSet<T extends Entity>
+        implements ResultSet<T> {
+
+    /** null after {@link #iterator()} was called. */
+    protected Iterator<T>   delegate;
+
+    /** The cached size; not synchronized */
+    protected int           cachedSize = -1;
+
+
+    public StreamingResultSet( Iterator<T> delegate ) {
+        this.delegate = delegate;
+    }
+
+
+    /**
+     * Computes the size of this result set without iterating the results.
+     */
+    protected abstract int computeSize();
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException If this method was called before.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        if (delegate == null) {
+            throw new IllegalStateException( "Streaming ResultSet can be iterated just once." );
+        }
+        Iterator<T> result = delegate;
+        delegate = null;
+        return result;
+    }
+
+
+    @Override
+    public int size() {
+        if (cachedSize == -1) {
+            cachedSize = computeSize();
+        }
+        return cachedSize;
+    }
+
+
+    @Override
+    public Stream<T> stream() {
+        return StreamSupport.stream( spliterator(), false );
+    }
+
+
+    @Override
+    public void close() {
+        delegate = null;
+    }
+
+}
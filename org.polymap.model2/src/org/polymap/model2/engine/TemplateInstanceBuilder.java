@@ -16,9 +16,7 @@ package org.polymap.model2.engine;
 
 import java.util.AbstractCollection;
 import java.util.Iterator;
-
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -69,15 +67,12 @@ public final class TemplateInstanceBuilder {
             }
             assert compositeInfo != null : "No info for Composite type: " + entityClass.getName();
 
-            // create instance
-            Constructor<?> ctor = entityClass.getConstructor( new Class[] {} );
-            T instance = (T)ctor.newInstance( new Object[] {} );
-            
-            // set context
-            InstanceBuilder.contextField.set( instance, new TemplateEntityRuntimeContext() );
+            // create instance, set context
+            WiringPlan plan = ((CompositeInfoImpl)compositeInfo).wiringPlan( entityClass );
+            T instance = (T)plan.factory().newInstance( new TemplateEntityRuntimeContext() );
             
             // properties
-            initProperties( instance );
+            initProperties( instance, plan );
             
             return instance;
         }
@@ -95,51 +90,28 @@ public final class TemplateInstanceBuilder {
      * Composite properties are init with {@link CompositePropertyImpl} which comes back to 
      * {@link TemplateInstanceBuilder} when the value is accessed.
      */
-    protected void initProperties( Composite instance ) throws Exception {
-        Class superClass = instance.getClass();
-        while (superClass != null) {
-            // XXX cache fields
-            for (Field field : superClass.getDeclaredFields()) {
-                if (PropertyBase.class.isAssignableFrom( field.getType() )) {
-                    field.setAccessible( true );
-
-                    PropertyInfo info = compositeInfo.getProperty( field.getName() );
-                    PropertyBase prop = null;
-
-                    // single property
-                    if (Property.class.isAssignableFrom( field.getType() )) {
-                        // Computed
-                        if (info.isComputed()) {
-                            prop = new NotQueryableProperty( info );
-                        }
-                        // primitive or Composite
-                        else {
-                            prop = new PropertyImpl( info );
-                        }
-                    }
-
-                    // Collection
-                    else if (CollectionProperty.class.isAssignableFrom( field.getType() )) {
-                        // primitive or Composite
-                        prop = new CollectionPropertyImpl( info );
-                    }
-
-                    // Association
-                    else if (Association.class.isAssignableFrom( field.getType() )) {
-                        prop = new AssociationImpl( info );
-                    }
-
-                    // ManyAssociation
-                    else if (ManyAssociation.class.isAssignableFrom( field.getType() )) {
-                        prop = new ManyAssociationImpl( info );
-                    }
-
-                    // set field
-                    //assert prop != null : "Unable to build property instance for: " + field;
-                    field.set( instance, prop );                    
-                }
+    protected void initProperties( Composite instance, WiringPlan plan ) throws Exception {
+        for (WiringPlan.Slot slot : plan.slots()) {
+            PropertyInfo info = slot.info;
+            PropertyBase prop = null;
+            switch (slot.kind) {
+                // single property, primitive or Composite
+                case PROPERTY:
+                case COMPOSITE_PROPERTY: prop = new PropertyImpl( info ); break;
+                case COMPUTED_PROPERTY: prop = new NotQueryableProperty( info ); break;
+                // Collection, primitive or Composite
+                case COLLECTION: 
+                case COMPOSITE_COLLECTION: prop = new CollectionPropertyImpl( info ); break;
+                // Association
+                case ASSOCIATION:
+                case COMPUTED_ASSOCIATION: prop = new AssociationImpl( info ); break;
+                // ManyAssociation
+                case MANY_ASSOCIATION:
+                case COMPUTED_MANY_ASSOCIATION: prop = new ManyAssociationImpl( info ); break;
+                default: 
+                    throw new IllegalStateException( "Unhandled property kind: " + slot );
             }
-            superClass = superClass.getSuperclass();
+            slot.field.set( instance, prop );
         }
     }
 
@@ -350,6 +322,11 @@ public final class TemplateInstanceBuilder {
             throw new UnsupportedOperationException( "Method is not allowed for template Composite instance." );
         }
 
+        @Override
+        public Set<PropertyInfo> getDirtyProperties() {
+            throw new UnsupportedOperationException( "Method is not allowed for template Composite instance." );
+        }
+
         @Override
         public UnitOfWork getUnitOfWork() {
             throw new UnsupportedOperationException( "Method is not allowed for template Composite instance." );
@@ -16,23 +16,34 @@ package org.polymap.model2.engine;
 
 import static com.google.common.collect.Iterators.concat;
 import static com.google.common.collect.Iterators.filter;
+import static com.google.common.collect.Iterators.partition;
 import static com.google.common.collect.Iterators.transform;
-import static org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus.CREATED;
+import static org.polymap.model2.query.Expressions.and;
+import static org.polymap.model2.query.Expressions.id;
 import static org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus.MODIFIED;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import java.io.IOException;
 
-import javax.cache.Cache;
 import javax.cache.CacheManager;
 import javax.cache.configuration.MutableConfiguration;
 import javax.cache.expiry.AccessedExpiryPolicy;
@@ -42,14 +53,19 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.Iterators;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
 
 import org.polymap.model2.Composite;
 import org.polymap.model2.Entity;
 import org.polymap.model2.engine.EntityRepositoryImpl.EntityRuntimeContextImpl;
+import org.polymap.model2.engine.cache.ConcurrentReferenceHashMap;
+import org.polymap.model2.engine.cache.ConcurrentReferenceHashMap.ReferenceType;
+import org.polymap.model2.engine.cache.EntityStateCache;
 import org.polymap.model2.engine.cache.LoadingCache;
+import org.polymap.model2.engine.cache.LoadingCache.BulkLoader;
 import org.polymap.model2.engine.cache.LoadingCache.Loader;
-import org.polymap.model2.engine.cache.SimpleCache;
 import org.polymap.model2.query.Query;
 import org.polymap.model2.query.ResultSet;
 import org.polymap.model2.query.grammar.BooleanExpression;
@@ -63,6 +79,7 @@ import org.polymap.model2.runtime.ValueInitializer;
 import org.polymap.model2.runtime.locking.CommitLockStrategy;
 import org.polymap.model2.store.CloneCompositeStateSupport;
 import org.polymap.model2.store.CompositeState;
+import org.polymap.model2.store.CompositeStateReference;
 import org.polymap.model2.store.StoreResultSet;
 import org.polymap.model2.store.StoreUnitOfWork;
 
@@ -78,8 +95,6 @@ public class UnitOfWorkImpl
 
     protected static final Exception        PREPARED = new Exception( "Successfully prepared for commit." );
     
-    private static AtomicInteger            idCount = new AtomicInteger( (int)Math.abs( System.currentTimeMillis() ) );
-    
     protected EntityRepositoryImpl          repo;
     
     /** Only set if this is the root UnitOfwork, or null if this is a nested instance. */
@@ -90,13 +105,39 @@ public class UnitOfWorkImpl
     
     protected LoadingCache<String,Composite> loadedMixins;
     
-    /** Strong reference to Entities that must not be GCed from {@link #loaded} cache. */
-    protected ConcurrentMap<Object,Entity>  modified;
+    /**
+     * Strong reference to Entities that must not be GCed or evicted from
+     * {@link #loaded} cache. The loaders of {@link #loaded} check this first, so a
+     * modified Entity keeps its identity even if a size bounded cache has evicted it.
+     */
+    protected ModifiedEntities              modified;
+    
+    /**
+     * Weak references to all Entities built by this UnitOfWork, id -> entity. The
+     * loaders of {@link #loaded} check this after {@link #modified}, so an Entity
+     * that was evicted by a size bounded or expiring cache keeps its identity as
+     * long as the client holds a reference to it.
+     */
+    protected ConcurrentReferenceHashMap<Object,Entity> reachable = new ConcurrentReferenceHashMap( 
+            256, 0.75f, 4, ReferenceType.STRONG, ReferenceType.WEAK, null );
+    
+    /** The shared second-level cache, or null if not configured or not supported by the store. */
+    protected EntityStateCache              stateCache;
     
     protected volatile Exception            prepareResult;
     
     protected CommitLockStrategy            commitLock;
 
+    /**
+     * True if this UnitOfWork holds the {@link #commitLock}. The lock is owned by
+     * the UnitOfWork, not by a thread, so prepare(), commit() and rollback() can be
+     * called from different threads.
+     */
+    private AtomicBoolean                   commitLocked = new AtomicBoolean();
+
+    /** See {@link #addCloseHandler(Runnable)}. */
+    private Queue<Runnable>                 closeHandlers = new ConcurrentLinkedQueue();
+
     
     protected UnitOfWorkImpl( EntityRepositoryImpl repo, StoreUnitOfWork suow ) {
         this.repo = repo;
@@ -110,10 +151,13 @@ public class UnitOfWorkImpl
         
         this.loaded = LoadingCache.create( cacheManager, cacheConfig );
         this.loadedMixins = LoadingCache.create( cacheManager, cacheConfig );
-        this.modified = new ConcurrentHashMap( SimpleCache.INITIAL_SIZE, 0.75f, SimpleCache.CONCURRENCY );
+        this.modified = new ModifiedEntities();
 
         commitLock = repo.getConfig().commitLockStrategy.get().get();
         
+        EntityStateCache sharedCache = repo.getConfig().stateCache.get();
+        this.stateCache = sharedCache != null && suow instanceof CloneCompositeStateSupport ? sharedCache : null;
+        
 //        // check evicted entries and re-insert if modified
 //        this.loaded.addEvictionListener( new CacheEvictionListener<Object,Entity>() {
 //            public void onEviction( Object key, Entity entity ) {
@@ -147,12 +191,12 @@ public class UnitOfWorkImpl
     public <T extends Entity> T createEntity( Class<T> entityClass, Object id, ValueInitializer<T>... initializers ) {
         checkOpen();
         // build id; don't depend on store's ability to deliver id for newly created state
-        id = id != null ? id : entityClass.getSimpleName() + "." + idCount.getAndIncrement();
+        id = id != null ? id : repo.getConfig().idGenerator.get().newId( entityClass );
 
         CompositeState state = storeUow.newEntityState( id, entityClass );
         assert id == null || state.id().equals( id );
         
-        T result = repo.buildEntity( state, entityClass, this );
+        T result = buildEntity( id, state, entityClass );
         repo.contextOf( result ).raiseStatus( EntityStatus.CREATED );
 
         boolean ok = loaded.putIfAbsent( id, result );
@@ -189,6 +233,129 @@ public class UnitOfWorkImpl
     }
 
 
+    @Override
+    public <T extends Entity> List<T> entities( final Class<T> entityClass, final Collection<?> ids ) {
+        assert entityClass != null : "Given entity Class is null.";
+        assert ids != null : "Given ids are null.";
+        checkOpen();
+        
+        // load the states of all not yet loaded entities in one round trip
+        Map<Object,Entity> entities = loaded.getAll( new HashSet( ids ), new BulkLoader<Object,Entity>() {
+            public Map<Object,Entity> loadAll( Set<?> keys ) {
+                Map<Object,Entity> loadedEntities = new HashMap( keys.size() * 2 );
+                Set<Object> toLoad = new HashSet( keys );
+                for (Iterator<Object> it=toLoad.iterator(); it.hasNext(); ) {
+                    Object id = it.next();
+                    Entity evicted = evicted( id );
+                    if (evicted != null) {
+                        loadedEntities.put( id, evicted );
+                        it.remove();
+                    }
+                }
+                for (Map.Entry<Object,CompositeState> entry : loadEntityStates( toLoad, entityClass ).entrySet()) {
+                    loadedEntities.put( entry.getKey(), buildEntity( entry.getKey(), entry.getValue(), entityClass ) );
+                }
+                return loadedEntities;
+            }
+        });
+        return ids.stream()
+                .map( id -> (T)entities.get( id ) )
+                .map( entity -> entity != null && entity.status() != EntityStatus.REMOVED ? entity : null )
+                .collect( Collectors.toList() );
+    }
+
+
+    /**
+     * Builds the entities for the given preloaded states. All entities that are
+     * not yet loaded are put into the {@link #loaded} cache in one call.
+     * 
+     * @param entityClass
+     * @param refs The references delivered by the {@link StoreResultSet}.
+     * @return List of entities in the order of the given references. An element
+     *         is null if the entity was not found.
+     */
+    protected <T extends Entity> List<T> preloaded( final Class<T> entityClass, List<CompositeStateReference> refs ) {
+        Map<Object,CompositeStateReference> byId = new HashMap( refs.size() * 2 );
+        for (CompositeStateReference ref : refs) {
+            byId.put( ref.id(), ref );
+        }
+        Map<Object,Entity> entities = loaded.getAll( byId.keySet(), new BulkLoader<Object,Entity>() {
+            public Map<Object,Entity> loadAll( Set<?> keys ) {
+                Map<Object,Entity> loadedEntities = new HashMap( keys.size() * 2 );
+                for (Object id : keys) {
+                    // evicted from cache but modified or still reachable
+                    Entity evicted = evicted( id );
+                    if (evicted != null) {
+                        loadedEntities.put( id, evicted );
+                        continue;
+                    }
+                    // get preloaded; fall back to the store if it returned null
+                    CompositeState state = byId.get( id ).get();
+                    state = state != null ? state : loadEntityState( id, entityClass );
+                    if (state != null) {
+                        loadedEntities.put( id, buildEntity( id, state, entityClass ) );
+                    }
+                }
+                return loadedEntities;
+            }
+        });
+        return refs.stream()
+                .map( ref -> (T)entities.get( ref.id() ) )
+                .collect( Collectors.toList() );
+    }
+
+
+    /**
+     * Loads the state of the given id from the {@link #stateCache}, if present,
+     * or from the store.
+     */
+    protected <T extends Entity> CompositeState loadEntityState( Object id, Class<T> entityClass ) {
+        if (stateCache == null) {
+            return storeUow.loadEntityState( id, entityClass );
+        }
+        CloneCompositeStateSupport suow = (CloneCompositeStateSupport)storeUow;
+        CompositeState result = stateCache.get( id, entityClass, suow );
+        if (result == null) {
+            long version = stateCache.version( id );
+            result = storeUow.loadEntityState( id, entityClass );
+            if (result != null) {
+                stateCache.put( id, version, result, suow );
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Loads the states of the given ids from the {@link #stateCache}, if present.
+     * All other states are loaded from the store in one call.
+     */
+    protected <T extends Entity> Map<Object,CompositeState> loadEntityStates( Collection<?> ids, Class<T> entityClass ) {
+        if (stateCache == null) {
+            return storeUow.loadEntityStates( ids, entityClass );
+        }
+        CloneCompositeStateSupport suow = (CloneCompositeStateSupport)storeUow;
+        Map<Object,CompositeState> result = new HashMap( ids.size() * 2 );
+        Map<Object,Long> missing = new HashMap( ids.size() * 2 );
+        for (Object id : ids) {
+            CompositeState state = stateCache.get( id, entityClass, suow );
+            if (state != null) {
+                result.put( id, state );
+            }
+            else {
+                missing.put( id, stateCache.version( id ) );
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<Object,CompositeState> entry : storeUow.loadEntityStates( missing.keySet(), entityClass ).entrySet()) {
+                stateCache.put( entry.getKey(), missing.get( entry.getKey() ), entry.getValue(), suow );
+                result.put( entry.getKey(), entry.getValue() );
+            }
+        }
+        return result;
+    }
+
+
     /**
      * 
      *
@@ -207,11 +374,16 @@ public class UnitOfWorkImpl
         checkOpen();
         T result = (T)loaded.get( id, new Loader<Object,Entity>() {
             public Entity load( Object key ) throws RuntimeException {
+                // evicted from cache but modified or still reachable
+                Entity evicted = evicted( id );
+                if (evicted != null) {
+                    return evicted;
+                }
                 // get preloaded if provided
                 CompositeState state = preloaded != null ? preloaded.get() : null;
                 // no preloaded or it returned null?
-                state = state != null ? state : storeUow.loadEntityState( id, entityClass );
-                return state != null ? repo.buildEntity( state, entityClass, UnitOfWorkImpl.this ) : null;
+                state = state != null ? state : loadEntityState( id, entityClass );
+                return state != null ? buildEntity( id, state, entityClass ) : null;
             }
         });
         return result != null && result.status() != EntityStatus.REMOVED ? result : null;
@@ -232,11 +404,34 @@ public class UnitOfWorkImpl
         // build Entity instance
         return (T)loaded.get( id, new Loader<Object,Entity>() {
             public Entity load( Object key ) throws RuntimeException {
-                return repo.buildEntity( compositeState, entityClass, UnitOfWorkImpl.this );
+                Entity evicted = evicted( id );
+                return evicted != null ? evicted : buildEntity( id, compositeState, entityClass );
             }
         });
     }
 
+
+    /**
+     * The Entity of the given id that was evicted from {@link #loaded} but is
+     * {@link #modified} or still {@link #reachable}.
+     *
+     * @return The Entity, or null if it has to be loaded.
+     */
+    protected Entity evicted( Object id ) {
+        Entity result = modified.get( id );
+        return result != null ? result : reachable.get( id );
+    }
+
+
+    /**
+     * Builds a new Entity instance and registers it as {@link #reachable}.
+     */
+    protected <T extends Entity> T buildEntity( Object id, CompositeState state, Class<T> entityClass ) {
+        T result = repo.buildEntity( state, entityClass, this );
+        reachable.put( id, result );
+        return result;
+    }
+
     
     public <T extends Composite> T mixin( final Class<T> mixinClass, final Entity entity ) {
         assert mixinClass != null : "mixinClass must not be null.";
@@ -276,8 +471,8 @@ public class UnitOfWorkImpl
 
                 // unmodified
                 final StoreResultSet rs = storeUow.executeQuery( this );
-                Iterator<T> results = transform( rs,
-                        ref -> entity( entityClass, ref.id(), ref ) );
+                Iterator<T> results = concat( transform( partition( rs, CachingResultSet.PREFETCH_SIZE ),
+                        refs -> preloaded( entityClass, refs ).iterator() ) );
                 Iterator<T> unmodifiedResults = filter( results,
                         entity -> {
                             EntityStatus status = entity != null ? entity.status() : EntityStatus.REMOVED;
@@ -285,13 +480,32 @@ public class UnitOfWorkImpl
                             return status == EntityStatus.LOADED;                            
                         });
 
-                // modified
-                // XXX not cached, done for every call to iterator()
+                // modified: evaluated once, when first needed by iterator or size()
                 assert expression instanceof BooleanExpression;
-                Iterator<T> modifiedResults = (Iterator<T>)filter( modified.values().iterator(),
-                        entity -> entity.getClass().equals( entityClass ) 
-                                    && (entity.status() == CREATED || entity.status() == MODIFIED )
-                                    && expression.evaluate( entity ) );
+                Supplier<List<T>> modifiedMatches = Suppliers.memoize( () -> modifiedMatches( entityClass, expression ) )::get;
+                Iterator<T> modifiedResults = lazyIterator( modifiedMatches );
+
+                // size without loading the entities
+                Supplier<Integer> size = () -> {
+                    int delta = modifiedDelta( entityClass, expression, modifiedMatches.get(), 
+                            idsExpression -> storeCount( entityClass, idsExpression ) );
+                    return Math.max( 0, Math.min( maxResults, rs.size() + delta ) );
+                };
+
+                // forward-only, no ids kept
+                if (streaming) {
+                    return new StreamingResultSet<T>( concat( unmodifiedResults, modifiedResults ) ) {
+                        @Override
+                        protected int computeSize() {
+                            return size.get();
+                        }
+                        @Override
+                        public void close() {
+                            rs.close();
+                            super.close();
+                        }
+                    };
+                }
 
                 // ResultSet, caching the ids for subsequent runs
                 return new CachingResultSet<T>( concat( unmodifiedResults, modifiedResults ) ) {
@@ -300,13 +514,13 @@ public class UnitOfWorkImpl
                         return UnitOfWorkImpl.this.entity( entityClass, id, null );
                     }
                     @Override
+                    protected List<T> entities( List<Object> ids ) {
+                        return UnitOfWorkImpl.this.entities( entityClass, ids );
+                    }
+                    @Override
                     public int size() {
                         if (cachedSize == -1) {
-                            cachedSize = delegate == null
-                                    ? cachedIds.size()
-                                    : modified.isEmpty() 
-                                            ? rs.size()
-                                            : Iterators.size( iterator() );
+                            cachedSize = delegate == null ? cachedIds.size() : size.get();
                         }
                         return cachedSize;
                     }
@@ -321,6 +535,73 @@ public class UnitOfWorkImpl
     }
 
     
+    /**
+     * The number of results of the given query in the store.
+     */
+    protected <T extends Entity> int storeCount( Class<T> entityClass, BooleanExpression expression ) {
+        return storeUow.count( query( entityClass ).where( expression ) );
+    }
+
+
+    /**
+     * The created and modified entities of exactly the given type that match the
+     * given expression. Just the entities of the given type are evaluated, see
+     * {@link ModifiedEntities}.
+     */
+    protected <T extends Entity> List<T> modifiedMatches( Class<T> entityClass, BooleanExpression expression ) {
+        List<T> result = new ArrayList();
+        for (T entity : modified.created( entityClass )) {
+            if (expression.evaluate( entity )) {
+                result.add( entity );
+            }
+        }
+        for (T entity : modified.stored( entityClass )) {
+            if (entity.status() == MODIFIED && expression.evaluate( entity )) {
+                result.add( entity );
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Iterator over the result of the given supplier, which is called when the
+     * iterator is first used.
+     */
+    protected static <T> Iterator<T> lazyIterator( Supplier<List<T>> supplier ) {
+        return new AbstractIterator<T>() {
+            private Iterator<T> delegate;
+            @Override
+            protected T computeNext() {
+                delegate = delegate != null ? delegate : supplier.get().iterator();
+                return delegate.hasNext() ? delegate.next() : endOfData();
+            }
+        };
+    }
+
+
+    /**
+     * The difference between the number of results of the given query in the
+     * underlying store (or parent) and in this UnitOfWork. This is computed from
+     * the {@link #modified} entities, without loading any entity.
+     *
+     * @param matches The result of {@link #modifiedMatches(Class, BooleanExpression)}.
+     * @param count Counts the results of the underlying store (or parent) for the
+     *        given query, which is restricted to the ids of modified entities.
+     */
+    protected <T extends Entity> int modifiedDelta( Class<T> entityClass, BooleanExpression expression, 
+            List<T> matches, Function<BooleanExpression,Integer> count ) {
+        int result = matches.size();
+        // store/parent results of modified/removed entities are filtered
+        List<Object> storedIds = modified.stored( entityClass ).stream()
+                .map( entity -> entity.id() ).collect( Collectors.toList() );
+        for (List<Object> chunk : Lists.partition( storedIds, CachingResultSet.PREFETCH_SIZE )) {
+            result -= count.apply( and( expression, id( chunk.toArray() ) ) );
+        }
+        return result;
+    }
+
+
     @Override
     public UnitOfWork newUnitOfWork() {
         checkOpen();
@@ -353,10 +634,41 @@ public class UnitOfWorkImpl
     }
     
     
+    /**
+     * Acquires the {@link #commitLock} for the {@link #modified} entities. If the
+     * lock is held already, because prepare() is called again without
+     * commit/rollback, then it is released and acquired for the current set of
+     * modified entities, which might have grown since the last prepare().
+     */
+    protected void lockCommit() {
+        unlockCommit( false );
+        commitLock.lock( modified.keySet() );
+        commitLocked.set( true );
+    }
+
+
+    /**
+     * Releases the {@link #commitLock}, if held by this UnitOfWork. Can be called
+     * from any thread.
+     */
+    protected void unlockCommit( boolean check ) {
+        if (commitLocked.getAndSet( false )) {
+            commitLock.unlock( check );
+        }
+    }
+
+
+    @Override
+    public CompletableFuture<Void> commitAsync( Executor executor ) {
+        checkOpen();
+        return CompletableFuture.runAsync( () -> commit(), executor );
+    }
+
+
     @Override
     public void prepare() throws IOException, ConcurrentEntityModificationException {
         checkOpen();
-        commitLock.lock();
+        lockCommit();
         try {
             prepareResult = null;
             lifecycle( State.BEFORE_PREPARE );
@@ -404,14 +716,26 @@ public class UnitOfWorkImpl
         }
         // commit store
         lifecycle( State.BEFORE_COMMIT );
-        storeUow.commit();
-        prepareResult = null;
-        
-        resetStatusLoaded();
-        lifecycle( State.AFTER_COMMIT );
-        
-        modified.clear();
-        commitLock.unlock( true );
+        if (stateCache != null) {
+            // no snapshot of the old states while the store is committing
+            stateCache.invalidate( modified.keySet() );
+        }
+        boolean success = false;
+        try {
+            storeUow.commit();
+            prepareResult = null;
+            
+            resetStatusLoaded();
+            lifecycle( State.AFTER_COMMIT );
+            
+            modified.clear();
+            success = true;
+        }
+        finally {
+            // failed: modifications are kept, next commit() prepares again
+            prepareResult = null;
+            unlockCommit( success );
+        }
     }
 
     
@@ -419,9 +743,13 @@ public class UnitOfWorkImpl
      * Reset status of all {@link #modified} entities (after {@link #commit()}).
      */
     protected void resetStatusLoaded() {        
+        if (stateCache != null) {
+            stateCache.invalidate( modified.keySet() );
+        }
         for (Map.Entry<Object,Entity> entry : modified.entrySet()) {
             if (entry.getValue().status() == EntityStatus.REMOVED) {
                 loaded.remove( entry.getKey() );
+                reachable.remove( entry.getKey(), entry.getValue() );
             }
             else {
                 repo.contextOf( entry.getValue() ).resetStatus( EntityStatus.LOADED );
@@ -452,6 +780,7 @@ public class UnitOfWorkImpl
             if (entry.getValue().status() == EntityStatus.CREATED) {
                 InstanceBuilder.contextOf( entry.getValue() ).detach();
                 loaded.remove( entry.getKey() );
+                reachable.remove( entry.getKey(), entry.getValue() );
             }
             else {
                 repo.contextOf( entry.getValue() ).resetStatus( EntityStatus.LOADED );
@@ -461,7 +790,7 @@ public class UnitOfWorkImpl
 
         modified.clear();        
         prepareResult = null;        
-        commitLock.unlock( true );
+        unlockCommit( true );
     }
 
 
@@ -469,7 +798,7 @@ public class UnitOfWorkImpl
     public void reload( Entity entity ) throws ModelRuntimeException {
         EntityRuntimeContextImpl context = repo.contextOf( entity );
         assert context.getUnitOfWork() == this;
-        assert loaded.containsKey( entity.id() );
+        assert loaded.containsKey( entity.id() ) || modified.containsKey( entity.id() );
         assert entity.status() != EntityStatus.CREATED : "Illegal: reload() of CREATED entity";
   
         // XXX 
@@ -486,20 +815,38 @@ public class UnitOfWorkImpl
     @Override
     public void close() {
         if (isOpen()) {
-            // detach loaded Entities to avoid leaks and improper state access
-            for (Cache.Entry<Object,Entity> entry : loaded) {
-                InstanceBuilder.contextOf( entry.getValue() ).detach();
-            }            
-            commitLock.unlock( false );
+            unlockCommit( false );
+            runCloseHandlers();
             storeUow.close();
+            // constant time: the Entities are not visited; they check isOpen() on
+            // every access (EntityRuntimeContextImpl#checkState()); caches and
+            // Entities are released to GC
             repo = null;
-            loaded.clear();
             loaded = null;
-            modified.clear();
+            loadedMixins = null;
             modified = null;
         }
     }
 
+    @Override
+    public void addCloseHandler( Runnable handler ) {
+        checkOpen();
+        closeHandlers.add( handler );
+    }
+
+
+    protected void runCloseHandlers() {
+        for (Runnable handler = closeHandlers.poll(); handler != null; handler = closeHandlers.poll()) {
+            try {
+                handler.run();
+            }
+            catch (Exception e) {
+                log.warn( "Close handler failed: " + handler, e );
+            }
+        }
+    }
+
+
     @Override
     protected void finalize() throws Throwable {
         if (isOpen()) {
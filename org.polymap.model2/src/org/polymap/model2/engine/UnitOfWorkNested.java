@@ -18,21 +18,22 @@ import static com.google.common.collect.Iterators.concat;
 import static com.google.common.collect.Iterators.filter;
 import static com.google.common.collect.Iterators.transform;
 import static java.util.Collections.singletonList;
-import static org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus.CREATED;
-import static org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus.MODIFIED;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import java.io.IOException;
 
-import javax.cache.Cache;
-
+import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Iterators;
 
 import org.polymap.model2.Entity;
+import org.polymap.model2.engine.EntityRepositoryImpl.EntityRuntimeContextImpl;
 import org.polymap.model2.engine.cache.LoadingCache.Loader;
 import org.polymap.model2.query.Query;
 import org.polymap.model2.query.ResultSet;
@@ -61,6 +62,8 @@ public class UnitOfWorkNested
         super( repo, storeUow );
         this.parent = parent;
         assert parent != null : "parent must not be null.";
+        // states are cloned from parent; just the parent uses the shared cache
+        this.stateCache = null;
     }
     
     
@@ -76,9 +79,12 @@ public class UnitOfWorkNested
         checkOpen();
         T result = (T)loaded.get( id, new Loader<Object,Entity>() {
             public Entity load( Object key ) throws RuntimeException {
-                // just clone the entire Entity and its state; copy-on-write would probably
-                // be faster and less memory consuming but also would introduce a lot more complexity;
-                // maybe I will later investigate a global copy-on-write cache for Entities
+                // evicted from cache but modified or still reachable
+                Entity evicted = evicted( id );
+                if (evicted != null) {
+                    return evicted;
+                }
+                // copy-on-write view of the parent state; just written fields are copied
                 T parentEntity = parent.entity( entityClass, id );
                 
                 if (parentEntity == null) {
@@ -86,8 +92,8 @@ public class UnitOfWorkNested
                 }
                 else {
                     CompositeState parentState = repo.contextOf( parentEntity ).getState();
-                    CompositeState state = storeUow().cloneEntityState( parentState );
-                    return repo.buildEntity( state, entityClass, UnitOfWorkNested.this );
+                    CompositeState state = storeUow().overlayEntityState( parentState );
+                    return buildEntity( id, state, entityClass );
                 }
             }
         });
@@ -95,6 +101,18 @@ public class UnitOfWorkNested
     }
 
 
+    @Override
+    public <T extends Entity> List<T> entities( Class<T> entityClass, Collection<?> ids ) {
+        // batch load into parent; keep strong refs until the clones are built
+        List<T> parentEntities = parent.entities( entityClass, ids );
+        List<T> result = new ArrayList( parentEntities.size() );
+        for (Object id : ids) {
+            result.add( entity( entityClass, id ) );
+        }
+        return result;
+    }
+
+
     @Override
     public <T extends Entity> T entityForState( final Class<T> entityClass, Object state ) {
         throw new RuntimeException( "not yet implemented." );
@@ -125,11 +143,11 @@ public class UnitOfWorkNested
             @Override
             public ResultSet<T> execute() {
                 // unmodified ***
-                final ResultSet<T> parentRs = parent.query( entityClass )
+                Query<T> parentQuery = parent.query( entityClass )
                         .where( expression )
                         .maxResults( maxResults )
-                        .firstResult( firstResult )
-                        .execute();
+                        .firstResult( firstResult );
+                final ResultSet<T> parentRs = streaming ? parentQuery.streaming().execute() : parentQuery.execute();
                 // adopt entities
                 Iterator<T> results = transform( parentRs.iterator(),
                         entity -> entity( entityClass, entity.id() ) );
@@ -143,10 +161,33 @@ public class UnitOfWorkNested
 
                 // modified ***
                 assert expression instanceof BooleanExpression;
-                Iterator<T> modifiedResults = (Iterator<T>)filter( modified.values().iterator(),
-                        entity -> entity.getClass().equals( entityClass ) 
-                                    && (entity.status() == CREATED || entity.status() == MODIFIED )
-                                    && expression.evaluate( entity ) );
+                Supplier<List<T>> modifiedMatches = Suppliers.memoize( () -> modifiedMatches( entityClass, expression ) )::get;
+                Iterator<T> modifiedResults = lazyIterator( modifiedMatches );
+
+                // size without loading the entities
+                Supplier<Integer> size = () -> {
+                    int delta = modifiedDelta( entityClass, expression, modifiedMatches.get(), idsExpression -> {
+                        try (ResultSet<T> idsRs = parent.query( entityClass ).where( idsExpression ).streaming().execute()) {
+                            return idsRs.size();
+                        }
+                    });
+                    return Math.max( 0, Math.min( maxResults, parentRs.size() + delta ) );
+                };
+
+                // forward-only, no ids kept
+                if (streaming) {
+                    return new StreamingResultSet<T>( concat( unmodifiedResults, modifiedResults ) ) {
+                        @Override
+                        protected int computeSize() {
+                            return size.get();
+                        }
+                        @Override
+                        public void close() {
+                            parentRs.close();
+                            super.close();
+                        }
+                    };
+                }
 
                 // ResultSet, caching the ids for subsequent runs
                 return new CachingResultSet<T>( concat( unmodifiedResults, modifiedResults ) ) {
@@ -155,13 +196,13 @@ public class UnitOfWorkNested
                         return UnitOfWorkNested.this.entity( entityClass, id, null );
                     }
                     @Override
+                    protected List<T> entities( List<Object> ids ) {
+                        return UnitOfWorkNested.this.entities( entityClass, ids );
+                    }
+                    @Override
                     public int size() {
                         if (cachedSize == -1) {
-                            cachedSize = delegate == null
-                                    ? cachedIds.size()
-                                    : modified.isEmpty() 
-                                            ? parentRs.size()
-                                            : Iterators.size( iterator() );
+                            cachedSize = delegate == null ? cachedIds.size() : size.get();
                         }
                         return cachedSize;
                     }
@@ -191,7 +232,7 @@ public class UnitOfWorkNested
     @Override
     public void prepare() throws IOException, ConcurrentEntityModificationException {
         checkOpen();
-        commitLock.lock();
+        lockCommit();
         prepareResult = null;
         lifecycle( State.BEFORE_PREPARE );
         for (Entity entity : modified.values()) {
@@ -215,7 +256,9 @@ public class UnitOfWorkNested
                     throw new ConcurrentEntityModificationException( "Entity was removed in parent UnitOfWork.", singletonList( entity ) );
                 }
 
-                repo.contextOf( parentEntity ).raiseStatus( entity.status() );
+                EntityRuntimeContextImpl parentContext = repo.contextOf( parentEntity );
+                parentContext.raiseStatus( entity.status() );
+                repo.contextOf( entity ).getDirtyProperties().forEach( parentContext::markDirty );
 
                 CompositeState parentState = repo.contextOf( parentEntity ).getState();
                 CompositeState clonedState = repo.contextOf( entity ).getState();
@@ -245,13 +288,19 @@ public class UnitOfWorkNested
         }
         prepareResult = null;
         
-        // reset Entity status
-        lifecycle( State.BEFORE_COMMIT );
-        resetStatusLoaded();
-        lifecycle( State.AFTER_COMMIT );
-        
-        modified.clear();
-        commitLock.unlock( true );
+        boolean success = false;
+        try {
+            // reset Entity status
+            lifecycle( State.BEFORE_COMMIT );
+            resetStatusLoaded();
+            lifecycle( State.AFTER_COMMIT );
+            
+            modified.clear();
+            success = true;
+        }
+        finally {
+            unlockCommit( success );
+        }
     }
 
 
@@ -266,6 +315,7 @@ public class UnitOfWorkNested
             if (entity.status() == EntityStatus.CREATED) {
                 InstanceBuilder.contextOf( entity ).detach();
                 loaded.remove( entry.getKey() );
+                reachable.remove( entry.getKey(), entity );
             }
             else {
                 CompositeState state = repo.contextOf( entity ).getState();
@@ -281,7 +331,7 @@ public class UnitOfWorkNested
         
         lifecycle( State.AFTER_ROLLBACK );
         prepareResult = null;
-        commitLock.unlock( false );
+        unlockCommit( false );
     }
 
 
@@ -293,11 +343,9 @@ public class UnitOfWorkNested
 
     public void close() {
         if (isOpen()) {
-            // detach loaded Entities in order to avoid leaks and improper state access
-            for (Cache.Entry<Object,Entity> entry : loaded) {
-                InstanceBuilder.contextOf( entry.getValue() ).detach();
-            }
-            commitLock.unlock( false );
+            // Entities are not visited, see UnitOfWorkImpl#close()
+            unlockCommit( false );
+            runCloseHandlers();
             repo = null;
             loaded = null;
             modified = null;
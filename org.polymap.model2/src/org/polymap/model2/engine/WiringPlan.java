@@ -0,0 +1,219 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java.lang.reflect.Field;
+
+import org.polymap.model2.Association;
+import org.polymap.model2.AssociationConcern;
+import org.polymap.model2.CollectionProperty;
+import org.polymap.model2.CollectionPropertyConcern;
+import org.polymap.model2.Composite;
+import org.polymap.model2.Computed;
+import org.polymap.model2.ComputedPropertyBase;
+import org.polymap.model2.Concerns;
+import org.polymap.model2.ManyAssociation;
+import org.polymap.model2.Property;
+import org.polymap.model2.PropertyConcern;
+import org.polymap.model2.engine.InstanceFactory.PropertyField;
+import org.polymap.model2.runtime.CompositeInfo;
+import org.polymap.model2.runtime.ModelRuntimeException;
+import org.polymap.model2.runtime.PropertyInfo;
+
+/**
+ * The immutable plan of how to wire the properties of a {@link Composite} type.
+ * All decisions that depend on the type only (kind of property, computed,
+ * concerns, constraints) are made once when the plan is compiled. The
+ * {@link InstanceBuilder} just replays the {@link Slot}s for every new instance.
+ * <p/>
+ * Plans are created and cached by {@link CompositeInfoImpl#wiringPlan()}.
+ *
+ * @author Falko Bräutigam
+ */
+final class WiringPlan {
+
+    /**
+     * The pre-resolved kind of a property and its store backend.
+     */
+    enum Kind {
+        /** {@link Property} with primitive value. */
+        PROPERTY,
+        /** {@link Property} with {@link Composite} value. */
+        COMPOSITE_PROPERTY,
+        /** {@link Computed} {@link Property}. */
+        COMPUTED_PROPERTY,
+        ASSOCIATION,
+        COMPUTED_ASSOCIATION,
+        MANY_ASSOCIATION,
+        COMPUTED_MANY_ASSOCIATION,
+        /** {@link CollectionProperty} with primitive values. */
+        COLLECTION,
+        /** {@link CollectionProperty} with {@link Composite} values. */
+        COMPOSITE_COLLECTION
+    }
+
+
+    /**
+     * One property of the Composite type.
+     */
+    static final class Slot {
+
+        public final PropertyField          field;
+
+        public final PropertyInfo           info;
+
+        public final Kind                   kind;
+
+        /** The type of the {@link Computed} property, or null. */
+        public final Class<? extends ComputedPropertyBase> computedType;
+
+        /** Class and field concerns, in the order they are to be applied. */
+        public final Class[]                concerns;
+
+        public final boolean                isImmutable;
+
+        public final boolean                isNullable;
+
+        protected Slot( PropertyField field, PropertyInfo info ) {
+            this.field = field;
+            this.info = info;
+            this.isImmutable = info.isImmutable();
+            this.isNullable = info.isNullable();
+
+            Field f = field.field();
+            Class<?> type = f.getType();
+            Computed computed = f.getAnnotation( Computed.class );
+            this.computedType = computed != null ? computed.value() : null;
+
+            if (Property.class.isAssignableFrom( type )) {
+                kind = computed != null ? Kind.COMPUTED_PROPERTY
+                        : Composite.class.isAssignableFrom( info.getType() ) ? Kind.COMPOSITE_PROPERTY : Kind.PROPERTY;
+            }
+            else if (Association.class.isAssignableFrom( type )) {
+                assert info.isAssociation();
+                kind = computed != null ? Kind.COMPUTED_ASSOCIATION : Kind.ASSOCIATION;
+            }
+            else if (ManyAssociation.class.isAssignableFrom( type )) {
+                assert info.isAssociation();
+                assert info.getMaxOccurs() > 1 : "Field has improper @MaxOccurs: " + propName( f );
+                kind = computed != null ? Kind.COMPUTED_MANY_ASSOCIATION : Kind.MANY_ASSOCIATION;
+            }
+            else if (CollectionProperty.class.isAssignableFrom( type )) {
+                assert info.getMaxOccurs() > 1 : "Field has improper @MaxOccurs: " + propName( f );
+                if (computed != null) {
+                    throw new UnsupportedOperationException( "Computed CollectionProperty is not supported yet: " + propName( f ) );
+                }
+                if (isNullable) {
+                    throw new ModelRuntimeException( "CollectionProperty cannot be @Nullable." );
+                }
+                kind = Composite.class.isAssignableFrom( info.getType() ) ? Kind.COMPOSITE_COLLECTION : Kind.COLLECTION;
+            }
+            else {
+                throw new ModelRuntimeException( "Unhandled property type: " + propName( f ) );
+            }
+
+            this.concerns = concerns( f );
+        }
+
+        /**
+         * Class and field {@link Concerns} of the given field. The types are
+         * checked to match the kind of property.
+         */
+        protected static Class[] concerns( Field field ) {
+            List<Class> result = new ArrayList();
+            // Class concerns
+            Concerns ca = field.getDeclaringClass().getAnnotation( Concerns.class );
+            if (ca != null) {
+                result.addAll( Arrays.asList( ca.value() ) );
+            }
+            // Field concerns
+            Concerns fa = field.getAnnotation( Concerns.class );
+            if (fa != null) {
+                result.addAll( Arrays.asList( fa.value() ) );
+            }
+            // early check concern type
+            for (Class concernType : result) {
+                if (Property.class.isAssignableFrom( field.getType() )
+                        && !PropertyConcern.class.isAssignableFrom( concernType )) {
+                    throw new ModelRuntimeException( "Concerns of Property have to extend PropertyConcern: " + concernType.getName() + " @ " + field.getName() );
+                }
+                else if (CollectionProperty.class.isAssignableFrom( field.getType() )
+                        && !CollectionPropertyConcern.class.isAssignableFrom( concernType )) {
+                    throw new ModelRuntimeException( "Concerns of CollectionProperty have to extend CollectionPropertyConcern: " + concernType.getName() + " @ " + field.getName() );
+                }
+                else if (Association.class.isAssignableFrom( field.getType() )
+                        && !AssociationConcern.class.isAssignableFrom( concernType )) {
+                    throw new ModelRuntimeException( "Concerns of Association have to extend AssociationConcern: " + concernType.getName() + " @ " + field.getName() );
+                }
+            }
+            return result.toArray( new Class[result.size()] );
+        }
+
+        @Override
+        public String toString() {
+            return "Slot[" + propName( field.field() ) + ", kind=" + kind + "]";
+        }
+    }
+
+
+    static String propName( Field field ) {
+        return field.getDeclaringClass().getSimpleName() + "#" + field.getName();
+    }
+
+
+    // instance *******************************************
+
+    private InstanceFactory         factory;
+
+    private Slot[]                  slots;
+
+
+    /**
+     * Compiles the plan for the Composite type of the given factory.
+     *
+     * @param factory The factory of the (actual) type to build.
+     * @param compositeInfo The info of the declared type, which might be a super
+     *        class of the type of the factory.
+     */
+    public WiringPlan( InstanceFactory factory, CompositeInfo compositeInfo ) {
+        this.factory = factory;
+        PropertyField[] fields = factory.fields();
+        this.slots = new Slot[fields.length];
+        for (int i=0; i<fields.length; i++) {
+            PropertyInfo info = compositeInfo.getProperty( fields[i].name() );
+            assert info != null : "No property info for field: " + propName( fields[i].field() ) + " ! - Entity type correctly declared in EntityRepository?";
+            slots[i] = new Slot( fields[i], info );
+        }
+    }
+
+
+    public InstanceFactory factory() {
+        return factory;
+    }
+
+
+    /**
+     * The slots of all properties, including all super classes, in the order of
+     * {@link InstanceFactory#fields()}.
+     */
+    public Slot[] slots() {
+        return slots;
+    }
+
+}
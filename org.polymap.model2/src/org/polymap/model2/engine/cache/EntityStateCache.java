@@ -0,0 +1,219 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.Entity;
+import org.polymap.model2.engine.cache.TinyLfuCacheManager.TinyLfuConfiguration;
+import org.polymap.model2.runtime.EntityRepository;
+import org.polymap.model2.runtime.UnitOfWork;
+import org.polymap.model2.store.CloneCompositeStateSupport;
+import org.polymap.model2.store.CompositeState;
+
+/**
+ * Repository wide, second-level cache of committed {@link CompositeState}s. A
+ * {@link UnitOfWork} gets a private clone of the cached snapshot instead of
+ * loading the state from the store.
+ * <p/>
+ * Snapshots are keyed by id and version. The version of an id is incremented
+ * whenever an {@link Entity} with this id is committed. A snapshot is valid only
+ * if it was loaded with the current version. So a snapshot of a state that was
+ * loaded while a concurrent commit was in progress is never returned.
+ * <p/>
+ * Versions are kept in a fixed number of stripes, so the memory used for
+ * versions does not grow with the number of entities. Ids of the same stripe
+ * invalidate each other, which just causes a cache miss.
+ * <p/>
+ * The snapshots are never handed out, so they are immutable. The store must
+ * support {@link CloneCompositeStateSupport}.
+ *
+ * @see EntityRepository.Configuration#stateCache
+ * @author Falko Bräutigam
+ */
+public class EntityStateCache {
+
+    private static Log log = LogFactory.getLog( EntityStateCache.class );
+
+    public static final int         DEFAULT_STRIPES = 4096;
+
+    /**
+     * The immutable cached state of an Entity.
+     */
+    protected static final class Snapshot {
+
+        public final long           version;
+
+        public final CompositeState state;
+
+        public Snapshot( long version, CompositeState state ) {
+            this.version = version;
+            this.state = state;
+        }
+    }
+
+
+    // instance *******************************************
+
+    private Cache<Object,Snapshot>  snapshots;
+
+    private AtomicLongArray         versions;
+
+    private LongAdder               hits = new LongAdder();
+
+    private LongAdder               misses = new LongAdder();
+
+    private LongAdder               invalidations = new LongAdder();
+
+
+    /**
+     * Creates a new instance with a {@link TinyLfuCache} of the given maximum
+     * number of snapshots.
+     */
+    public EntityStateCache( long maxSize ) {
+        this( new TinyLfuCacheManager( maxSize ), maxSize, DEFAULT_STRIPES );
+    }
+
+
+    /**
+     * Creates a new instance that creates its cache from the given
+     * {@link CacheManager}. The cache is shared by all UnitOfWorks of the
+     * repository and is never cleared, so it has to be size bounded.
+     *
+     * @param cacheManager A {@link TinyLfuCacheManager}.
+     * @param maxSize The maximum number of snapshots.
+     * @param stripes The number of version stripes.
+     * @throws IllegalArgumentException If the given manager does not create size
+     *         bounded caches.
+     */
+    public EntityStateCache( CacheManager cacheManager, long maxSize, int stripes ) {
+        if (!(cacheManager instanceof TinyLfuCacheManager)) {
+            throw new IllegalArgumentException( "A size bounded TinyLfuCacheManager is required: " + cacheManager );
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException( "maxSize must be greater than 0: " + maxSize );
+        }
+        this.snapshots = cacheManager.createCache( "EntityStateCache-" + hashCode(), 
+                new TinyLfuConfiguration().setMaximumWeight( maxSize ) );
+        this.versions = new AtomicLongArray( FrequencySketch.ceilingPowerOfTwo( stripes ) );
+    }
+
+
+    protected int stripe( Object id ) {
+        return FrequencySketch.spread( id.hashCode() ) & (versions.length() - 1);
+    }
+
+
+    /**
+     * The current version of the given id. Must be called <b>before</b> the state
+     * is loaded from the store and passed to {@link #put(Object, long, CompositeState, CloneCompositeStateSupport)}
+     * afterwards.
+     */
+    public long version( Object id ) {
+        return versions.get( stripe( id ) );
+    }
+
+
+    /**
+     * Returns a clone of the cached state of the given id.
+     *
+     * @param suow The store UnitOfWork to clone and adopt the state with.
+     * @return Newly created state, or null if there is no valid snapshot.
+     */
+    public <T extends Entity> CompositeState get( Object id, Class<T> entityClass, CloneCompositeStateSupport suow ) {
+        Snapshot snapshot = snapshots.get( id );
+        if (snapshot != null && snapshot.version == version( id )) {
+            hits.increment();
+            // adopt, so that decorators (OptimisticLocking) see the state as loaded
+            CompositeState clone = suow.cloneEntityState( snapshot.state );
+            return suow.adoptEntityState( clone.getUnderlying(), entityClass );
+        }
+        misses.increment();
+        return null;
+    }
+
+
+    /**
+     * Caches a snapshot of the given state, if the version has not changed since
+     * the state was loaded. The given state must not have been modified yet.
+     *
+     * @param version The {@link #version(Object)} before the state was loaded.
+     */
+    public void put( Object id, long version, CompositeState state, CloneCompositeStateSupport suow ) {
+        if (version == version( id )) {
+            snapshots.put( id, new Snapshot( version, suow.cloneEntityState( state ) ) );
+        }
+    }
+
+
+    /**
+     * Invalidates the snapshots of the given ids. This is called before and after
+     * the modifications are committed to the store.
+     */
+    public void invalidate( Iterable<Object> ids ) {
+        for (Object id : ids) {
+            versions.incrementAndGet( stripe( id ) );
+            snapshots.remove( id );
+            invalidations.increment();
+        }
+    }
+
+
+    /**
+     * Removes all snapshots.
+     */
+    public void clear() {
+        for (int i=0; i<versions.length(); i++) {
+            versions.incrementAndGet( i );
+        }
+        snapshots.clear();
+    }
+
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+
+    public long invalidationCount() {
+        return invalidations.sum();
+    }
+
+
+    public double hitRatio() {
+        long requests = hitCount() + missCount();
+        return requests == 0 ? 1.0 : (double)hitCount() / requests;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[hits=" + hitCount() + ", misses=" + missCount()
+                + ", invalidations=" + invalidationCount() + ", hitRatio=" + hitRatio() + "]";
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine.cache;
+
+/**
+ * Count-Min sketch of the access frequency of keys, as used by the TinyLFU
+ * admission policy of {@link TinyLfuCache}. Every counter has 4 bits, so the
+ * maximum frequency is 15. All counters are halved after a sample of 10 times
+ * the capacity of the sketch was recorded, so that the history ages.
+ * <p/>
+ * Not thread-safe. Access is guarded by the eviction lock of the cache.
+ *
+ * @author Falko Bräutigam
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final long   RESET_MASK = 0x7777777777777777L;
+
+    private static final int    MAX_COUNT = 15;
+
+    /** 16 counters of 4 bits per long. */
+    private long[]              table;
+
+    private int                 tableMask;
+
+    private int                 sampleSize;
+
+    private int                 size;
+
+
+    /**
+     * @param capacity The expected number of distinct keys in the cache.
+     */
+    public FrequencySketch( long capacity ) {
+        int maximum = (int)Math.min( Math.max( capacity, 16 ), 1 << 30 );
+        table = new long[ceilingPowerOfTwo( maximum )];
+        tableMask = table.length - 1;
+        sampleSize = 10 * maximum;
+    }
+
+
+    /**
+     * The estimated number of occurrences of the given key, between 0 and 15.
+     */
+    public int frequency( Object key ) {
+        int hash = spread( key.hashCode() );
+        int start = (hash & 3) << 2;
+        int result = MAX_COUNT;
+        for (int i=0; i<4; i++) {
+            int index = indexOf( hash, i );
+            int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+            result = Math.min( result, count );
+        }
+        return result;
+    }
+
+
+    /**
+     * Increments the occurrences of the given key, if not yet saturated.
+     */
+    public void increment( Object key ) {
+        int hash = spread( key.hashCode() );
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i=0; i<4; i++) {
+            added |= incrementAt( indexOf( hash, i ), start + i );
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+
+    protected boolean incrementAt( int index, int counter ) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Halves all counters.
+     */
+    protected void reset() {
+        int odd = 0;
+        for (int i=0; i<table.length; i++) {
+            odd += Long.bitCount( table[i] & 0x1111111111111111L );
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+
+    protected int indexOf( int item, int i ) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return ((int)hash) & tableMask;
+    }
+
+
+    protected static int spread( int x ) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+
+    protected static int ceilingPowerOfTwo( int x ) {
+        return 1 << -Integer.numberOfLeadingZeros( x - 1 );
+    }
+
+}
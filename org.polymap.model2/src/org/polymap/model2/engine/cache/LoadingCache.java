@@ -14,6 +14,8 @@
  */
 package org.polymap.model2.engine.cache;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -23,9 +25,6 @@ import javax.cache.CacheManager;
 import javax.cache.configuration.CacheEntryListenerConfiguration;
 import javax.cache.configuration.CompleteConfiguration;
 import javax.cache.configuration.Configuration;
-import javax.cache.configuration.MutableConfiguration;
-import javax.cache.integration.CacheLoader;
-import javax.cache.integration.CacheLoaderException;
 import javax.cache.integration.CompletionListener;
 import javax.cache.processor.EntryProcessor;
 import javax.cache.processor.EntryProcessorException;
@@ -60,41 +59,65 @@ public class LoadingCache<K,V>
         public V load( K key );
     }
     
+    /**
+     * Loads a set of keys in one call.
+     */
+    public interface BulkLoader<K,V> {
+        
+        /**
+         * @return Map of the loaded values. Keys without a value are not contained.
+         */
+        public Map<K,V> loadAll( Set<? extends K> keys );
+    }
+    
     
     // instance *******************************************
 
     private Cache<K,V>                  delegate;
     
-    private ThreadLocal<Loader<K,V>>    threadLoader = new ThreadLocal();
+    private SingleFlight<K,V>           flights;
     
     
     public LoadingCache( CacheManager cacheManager, CompleteConfiguration config ) {
-        MutableConfiguration newConfig = config instanceof MutableConfiguration 
-                ? (MutableConfiguration)config : new MutableConfiguration( config );
-                
-        newConfig.setCacheLoaderFactory( () -> new CacheLoader<K,V>() {
-            @Override
-            public V load( K key ) throws CacheLoaderException {
-                return threadLoader.get().load( key );
-            }
-            @Override
-            public Map<K,V> loadAll( Iterable<? extends K> keys ) throws CacheLoaderException {
-                throw new RuntimeException( "not yet implemented." );
+        delegate = cacheManager.createCache( "LoadingCache-" + hashCode(), config );
+        // re-check with containsKey() first, so that misses are not counted twice
+        flights = new SingleFlight<K,V>( key -> delegate.containsKey( key ) ? delegate.get( key ) : null, (key,value) -> {
+            if (!delegate.putIfAbsent( key, value )) {
+                V previous = delegate.get( key );
+                return previous != null ? previous : value;
             }
+            return value;
         });
-        
-        delegate = cacheManager.createCache( "LoadingCache-" + hashCode(), newConfig );
     }
 
 
+    /**
+     * Gets the value of the given key. If the key is not present in the cache,
+     * then the value is loaded by the given {@link Loader}. Concurrent misses on
+     * the same key share one load.
+     */
     public V get( K key, Loader<K,V> loader ) {
-        threadLoader.set( loader );
-        try {
-            return get( key );
-        }
-        finally {
-            threadLoader.remove();
+        V value = delegate.get( key );
+        return value != null ? value : flights.load( key, loader );
+    }
+
+
+    /**
+     * Gets the values for the given keys. All keys that are not present in the
+     * cache are loaded with one call of the given {@link BulkLoader}, except for
+     * keys that are currently loaded by other threads.
+     *
+     * @return Map of the values. Keys without a value are not contained.
+     */
+    public Map<K,V> getAll( Set<? extends K> keys, BulkLoader<K,V> loader ) {
+        Map<K,V> result = delegate.getAll( keys );
+        if (result.size() < keys.size()) {
+            Set<K> missing = new HashSet( keys );
+            missing.removeAll( result.keySet() );
+            result = new HashMap( result );
+            result.putAll( flights.loadAll( missing, loader ) );
         }
+        return result;
     }
 
 
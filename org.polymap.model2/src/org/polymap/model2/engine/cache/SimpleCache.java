@@ -14,6 +14,8 @@
  */
 package org.polymap.model2.engine.cache;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -60,6 +62,12 @@ public class SimpleCache<K,V>
     
     private CacheLoader<K,V>        loader;
     
+    /** Concurrent misses on the same key share one {@link #loader} call. */
+    private SingleFlight<K,V>       flights = new SingleFlight<K,V>( key -> entries.get( key ), (key,value) -> {
+        V previous = entries.putIfAbsent( key, value );
+        return previous != null ? previous : value;
+    });
+    
     
     public SimpleCache( Configuration config ) {
         if (config instanceof CompleteConfiguration) {
@@ -97,22 +105,36 @@ public class SimpleCache<K,V>
             return value;
         }
         else if (loader != null) {
-            // we do not prevent threads from concurrently creating a value for the
-            // same key! but we make sure that just one value is returned to all threads
-            value = loader.load( key );
-            if (value != null) {
-                V previous = entries.putIfAbsent( key, value );
-                value = previous != null ? previous : value;
-            }
-            return value;
+            return flights.load( key, loader::load );
         }
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * All keys that are not present are loaded with one call of
+     * {@link CacheLoader#loadAll(Iterable)}, except for keys that are currently
+     * loaded by other threads.
+     */
     @Override
     public Map<K,V> getAll( Set<? extends K> keys ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        checkOpen();
+        Map<K,V> result = new HashMap( keys.size() * 2 );
+        Set<K> missing = new HashSet();
+        for (K key : keys) {
+            V value = entries.get( key );
+            if (value != null) {
+                result.put( key, value );
+            }
+            else {
+                missing.add( key );
+            }
+        }
+        if (!missing.isEmpty() && loader != null) {
+            result.putAll( flights.loadAll( missing, _keys -> loader.loadAll( _keys ) ) );
+        }
+        return result;
     }
 
     @Override
@@ -122,8 +144,41 @@ public class SimpleCache<K,V>
 
     @Override
     public void loadAll( Set<? extends K> keys, boolean replaceExistingValues, CompletionListener completionListener ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        checkOpen();
+        try {
+            if (loader != null) {
+                Set<K> toLoad = new HashSet();
+                for (K key : keys) {
+                    if (replaceExistingValues || !entries.containsKey( key )) {
+                        toLoad.add( key );
+                    }
+                }
+                if (!toLoad.isEmpty()) {
+                    for (Map.Entry<K,V> entry : loader.loadAll( toLoad ).entrySet()) {
+                        if (entry.getValue() == null) {
+                            continue;
+                        }
+                        else if (replaceExistingValues) {
+                            entries.put( entry.getKey(), entry.getValue() );
+                        }
+                        else {
+                            entries.putIfAbsent( entry.getKey(), entry.getValue() );
+                        }
+                    }
+                }
+            }
+            if (completionListener != null) {
+                completionListener.onCompletion();
+            }
+        }
+        catch (Exception e) {
+            if (completionListener != null) {
+                completionListener.onException( e );
+            }
+            else {
+                throw e;
+            }
+        }
     }
 
     @Override
@@ -133,8 +188,7 @@ public class SimpleCache<K,V>
 
     @Override
     public V getAndPut( K key, V value ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        return entries.put( key, value );
     }
 
     @Override
@@ -154,44 +208,39 @@ public class SimpleCache<K,V>
 
     @Override
     public boolean remove( K key, V oldValue ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        return entries.remove( key, oldValue );
     }
 
     @Override
     public V getAndRemove( K key ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        return entries.remove( key );
     }
 
     @Override
     public boolean replace( K key, V oldValue, V newValue ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        return entries.replace( key, oldValue, newValue );
     }
 
     @Override
     public boolean replace( K key, V value ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        return entries.replace( key, value ) != null;
     }
 
     @Override
     public V getAndReplace( K key, V value ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        return entries.replace( key, value );
     }
 
     @Override
     public void removeAll( Set<? extends K> keys ) {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        for (K key : keys) {
+            entries.remove( key );
+        }
     }
 
     @Override
     public void removeAll() {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
+        entries.clear();
     }
 
     @Override
@@ -0,0 +1,212 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine.cache;
+
+import static java.util.Collections.emptyMap;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.polymap.model2.engine.cache.LoadingCache.BulkLoader;
+import org.polymap.model2.engine.cache.LoadingCache.Loader;
+
+/**
+ * Makes sure that concurrent misses on the same key share one load. The first
+ * thread that misses a key registers an in-flight future and loads the value;
+ * other threads missing the same key wait for this future instead of loading the
+ * value again.
+ * <p/>
+ * A thread that loads a key it is already loading (reentrant load from inside
+ * the loader) loads directly instead of waiting for itself. Bulk loads first
+ * finish their own keys and then wait for the keys loaded by other threads, so
+ * that bulk loads with overlapping keys cannot block each other.
+ *
+ * @author Falko Bräutigam
+ */
+public class SingleFlight<K,V> {
+
+    /**
+     * One in-flight load of a key.
+     */
+    protected static class Flight<V> {
+
+        public final Thread                 thread = Thread.currentThread();
+
+        public final CompletableFuture<V>   future = new CompletableFuture();
+    }
+
+
+    // instance *******************************************
+
+    private ConcurrentHashMap<K,Flight<V>>  inflight = new ConcurrentHashMap( 32 );
+
+    private Function<K,V>                   lookup;
+
+    private BiFunction<K,V,V>               publish;
+
+
+    /**
+     * @param lookup Gets the value of a key from the cache, or null if not present.
+     * @param publish Puts a loaded value into the cache if no value is present.
+     *        Returns the value that is in the cache afterwards.
+     */
+    public SingleFlight( Function<K,V> lookup, BiFunction<K,V,V> publish ) {
+        this.lookup = lookup;
+        this.publish = publish;
+    }
+
+
+    /**
+     * Loads the value of the given key, which was not found in the cache, or
+     * waits for the load of another thread.
+     *
+     * @return The value, or null if the loader did not find a value.
+     */
+    public V load( K key, Loader<K,V> loader ) {
+        Flight<V> flight = new Flight();
+        Flight<V> other = inflight.putIfAbsent( key, flight );
+        if (other != null) {
+            return other.thread == flight.thread
+                    ? doLoad( key, loader )
+                    : await( other );
+        }
+        try {
+            V value = doLoad( key, loader );
+            flight.future.complete( value );
+            return value;
+        }
+        catch (RuntimeException|Error e) {
+            flight.future.completeExceptionally( e );
+            throw e;
+        }
+        finally {
+            inflight.remove( key, flight );
+        }
+    }
+
+
+    protected V doLoad( K key, Loader<K,V> loader ) {
+        // re-check: another flight may have finished since the caller missed
+        V value = lookup.apply( key );
+        if (value == null) {
+            value = loader.load( key );
+            if (value != null) {
+                value = publish.apply( key, value );
+            }
+        }
+        return value;
+    }
+
+
+    /**
+     * Loads the values of the given keys, which were not found in the cache. Keys
+     * that are not yet loaded by other threads are loaded with one call of the
+     * given {@link BulkLoader}.
+     *
+     * @return Map of the values. Keys without a value are not contained.
+     */
+    public Map<K,V> loadAll( Set<? extends K> keys, BulkLoader<K,V> loader ) {
+        Map<K,V> result = new HashMap( keys.size() * 2 );
+        Map<K,Flight<V>> own = new HashMap( keys.size() * 2 );
+        Map<K,Flight<V>> others = new HashMap();
+        for (K key : keys) {
+            Flight<V> flight = new Flight();
+            Flight<V> other = inflight.putIfAbsent( key, flight );
+            if (other == null || other.thread == flight.thread) {
+                // a reentrant key is loaded but not registered
+                own.put( key, flight );
+            }
+            else {
+                others.put( key, other );
+            }
+        }
+
+        try {
+            Set<K> toLoad = new HashSet();
+            for (K key : own.keySet()) {
+                V value = lookup.apply( key );
+                if (value != null) {
+                    result.put( key, value );
+                }
+                else {
+                    toLoad.add( key );
+                }
+            }
+            Map<K,V> loaded = !toLoad.isEmpty() ? loader.loadAll( toLoad ) : emptyMap();
+            for (K key : toLoad) {
+                V value = loaded.get( key );
+                if (value != null) {
+                    result.put( key, publish.apply( key, value ) );
+                }
+            }
+            for (Map.Entry<K,Flight<V>> entry : own.entrySet()) {
+                entry.getValue().future.complete( result.get( entry.getKey() ) );
+            }
+        }
+        catch (RuntimeException|Error e) {
+            for (Flight<V> flight : own.values()) {
+                flight.future.completeExceptionally( e );
+            }
+            throw e;
+        }
+        finally {
+            for (Map.Entry<K,Flight<V>> entry : own.entrySet()) {
+                inflight.remove( entry.getKey(), entry.getValue() );
+            }
+        }
+
+        // wait for other threads after our own flights are done
+        for (Map.Entry<K,Flight<V>> entry : others.entrySet()) {
+            V value = await( entry.getValue() );
+            if (value != null) {
+                result.put( entry.getKey(), value );
+            }
+        }
+        return result;
+    }
+
+
+    protected V await( Flight<V> flight ) {
+        try {
+            return flight.future.join();
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * The number of currently running loads.
+     */
+    public int size() {
+        return inflight.size();
+    }
+
+}
@@ -0,0 +1,1139 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.Configuration;
+import javax.cache.configuration.Factory;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryEventFilter;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.event.EventType;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.EternalExpiryPolicy;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CompletionListener;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorException;
+import javax.cache.processor.EntryProcessorResult;
+import javax.cache.processor.MutableEntry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Size bounded cache with W-TinyLFU eviction and admission policy.
+ * <p/>
+ * New entries are added to a small LRU <b>window</b> (1% of the maximum
+ * weight). Entries leaving the window compete for a place in the <b>main</b>
+ * space, which is a segmented LRU of <b>probation</b> and <b>protected</b>
+ * entries. A candidate is admitted only if its estimated access frequency
+ * ({@link FrequencySketch}) is higher than the frequency of the entry it would
+ * evict. This keeps frequently used entries even if a scan or a burst of one
+ * time accesses passes by.
+ * <p/>
+ * The {@link ExpiryPolicy} of the configuration is honoured: expired entries
+ * are never returned and are removed lazily on access and during maintenance.
+ * <p/>
+ * Reads are lock-free. The policy is updated under a lock; access events that
+ * cannot get the lock are buffered and replayed later, or dropped if the buffer
+ * is full. Writes always take the lock. {@link EntryProcessor}s are executed
+ * under the lock.
+ * <p/>
+ * Listeners are notified synchronously of created, updated and removed
+ * entries. Entries that expire or are evicted because of the size bound are
+ * not reported.
+ *
+ * @see TinyLfuCacheManager
+ * @author Falko Bräutigam
+ */
+public class TinyLfuCache<K,V>
+        implements Cache<K,V> {
+
+    private static Log log = LogFactory.getLog( TinyLfuCache.class );
+
+    /**
+     * Computes the weight of an entry.
+     */
+    @FunctionalInterface
+    public interface Weigher<K,V> {
+        public int weigh( K key, V value );
+    }
+
+    public static final Weigher         SINGLETON_WEIGHER = (key, value) -> 1;
+
+    private static final int            READ_BUFFER_SIZE = 128;
+
+    private static final double         WINDOW_PERCENT = 0.01;
+
+    private static final double         PROTECTED_PERCENT = 0.80;
+
+    protected enum QueueType { WINDOW, PROBATION, PROTECTED }
+
+
+    /**
+     * An entry of the cache and a node in one of the access order queues.
+     */
+    protected static final class Node<K,V> {
+        final K             key;
+        volatile V          value;
+        volatile long       expireAt;
+        int                 weight;
+        QueueType           queue;
+        boolean             alive = true;
+        Node<K,V>           prev, next;
+
+        Node( K key, V value, int weight ) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+
+    /**
+     * Doubly-linked, access ordered queue of {@link Node}s. Least recently used
+     * first.
+     */
+    protected static final class AccessOrderQueue<K,V> {
+        Node<K,V>           head, tail;
+
+        void addLast( Node<K,V> node ) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            }
+            else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove( Node<K,V> node ) {
+            if (node.prev == null) {
+                head = node.next;
+            }
+            else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            }
+            else {
+                node.next.prev = node.prev;
+            }
+            node.prev = node.next = null;
+        }
+
+        void moveToLast( Node<K,V> node ) {
+            if (tail != node) {
+                remove( node );
+                addLast( node );
+            }
+        }
+    }
+
+
+    /**
+     * A registered {@link CacheEntryListener} and its filter.
+     */
+    protected static final class ListenerRegistration<K,V> {
+        final CacheEntryListenerConfiguration<K,V>          config;
+        final CacheEntryListener<? super K,? super V>       listener;
+        final CacheEntryEventFilter<? super K,? super V>    filter;
+
+        ListenerRegistration( CacheEntryListenerConfiguration<K,V> config ) {
+            this.config = config;
+            this.listener = config.getCacheEntryListenerFactory().create();
+            this.filter = config.getCacheEntryEventFilterFactory() != null
+                    ? config.getCacheEntryEventFilterFactory().create() : null;
+        }
+    }
+
+
+    protected static final class Event<K,V>
+            extends CacheEntryEvent<K,V> {
+        private K           key;
+        private V           value;
+        private V           oldValue;
+
+        Event( Cache<K,V> source, EventType type, K key, V value, V oldValue ) {
+            super( source, type );
+            this.key = key;
+            this.value = value;
+            this.oldValue = oldValue;
+        }
+        @Override
+        public K getKey() {
+            return key;
+        }
+        @Override
+        public V getValue() {
+            return value;
+        }
+        @Override
+        public V getOldValue() {
+            return oldValue;
+        }
+        @Override
+        public boolean isOldValueAvailable() {
+            return oldValue != null;
+        }
+        @Override
+        public <T> T unwrap( Class<T> clazz ) {
+            if (clazz.isInstance( this )) {
+                return clazz.cast( this );
+            }
+            throw new IllegalArgumentException( "Unable to unwrap: " + clazz.getName() );
+        }
+    }
+
+
+    // instance *******************************************
+
+    private String                          name;
+
+    private CacheManager                    cacheManager;
+
+    private CompleteConfiguration<K,V>      config;
+
+    private volatile ConcurrentHashMap<K,Node<K,V>> data;
+
+    private CacheLoader<K,V>                loader;
+
+    /** Concurrent misses on the same key share one {@link #loader} call. */
+    private SingleFlight<K,V>               flights = new SingleFlight<K,V>( key -> {
+        // re-check without touching the sketch and the statistics
+        Node<K,V> node = data.get( key );
+        return node != null && !isExpired( node, now() ) ? node.value : null;
+    }, (key,value) -> {
+        V previous = doPut( key, value, true );
+        return previous != null ? previous : value;
+    });
+
+    private ExpiryPolicy                    expiryPolicy;
+
+    private Weigher<K,V>                    weigher;
+
+    private ReentrantLock                   evictionLock = new ReentrantLock();
+
+    private Queue<Node<K,V>>                readBuffer = new ArrayBlockingQueue( READ_BUFFER_SIZE );
+
+    private FrequencySketch                 sketch;
+
+    private AccessOrderQueue<K,V>           window = new AccessOrderQueue();
+
+    private AccessOrderQueue<K,V>           probation = new AccessOrderQueue();
+
+    private AccessOrderQueue<K,V>           protectedQueue = new AccessOrderQueue();
+
+    private long                            maximumWeight;
+
+    private long                            windowMaximum;
+
+    private long                            protectedMaximum;
+
+    private long                            windowWeight;
+
+    private long                            mainWeight;
+
+    private long                            protectedWeight;
+
+    private LongAdder                       hits = new LongAdder();
+
+    private LongAdder                       misses = new LongAdder();
+
+    private LongAdder                       evictions = new LongAdder();
+
+    private List<ListenerRegistration<K,V>> listeners = new CopyOnWriteArrayList();
+
+
+    /**
+     * @param maximumWeight The maximum summed weight of all entries.
+     * @param weigher The weigher of the entries, or null if every entry has weight 1.
+     */
+    public TinyLfuCache( String name, CacheManager cacheManager, Configuration<K,V> config,
+            long maximumWeight, Weigher<K,V> weigher ) {
+        assert maximumWeight > 0 : "maximumWeight must be greater than 0: " + maximumWeight;
+        this.name = name;
+        this.cacheManager = cacheManager;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher != null ? weigher : SINGLETON_WEIGHER;
+        this.windowMaximum = Math.max( 1, (long)(maximumWeight * WINDOW_PERCENT) );
+        this.protectedMaximum = (long)((maximumWeight - windowMaximum) * PROTECTED_PERCENT);
+        this.sketch = new FrequencySketch( maximumWeight );
+        this.data = new ConcurrentHashMap( (int)Math.min( maximumWeight, SimpleCache.INITIAL_SIZE ), 0.75f, SimpleCache.CONCURRENCY );
+
+        this.expiryPolicy = new EternalExpiryPolicy();
+        if (config instanceof CompleteConfiguration) {
+            this.config = (CompleteConfiguration<K,V>)config;
+            Factory<ExpiryPolicy> expiryFactory = this.config.getExpiryPolicyFactory();
+            if (expiryFactory != null) {
+                expiryPolicy = expiryFactory.create();
+            }
+            Factory<CacheLoader<K,V>> loaderFactory = this.config.getCacheLoaderFactory();
+            if (loaderFactory != null) {
+                loader = loaderFactory.create();
+            }
+            for (CacheEntryListenerConfiguration<K,V> listenerConfig : this.config.getCacheEntryListenerConfigurations()) {
+                listeners.add( new ListenerRegistration( listenerConfig ) );
+            }
+        }
+    }
+
+
+    protected void checkOpen() {
+        if (data == null) {
+            throw new IllegalStateException( "Cache is closed." );
+        }
+    }
+
+
+    /**
+     * The number of requests that returned a cached value.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+
+    /**
+     * The number of requests that did not find a cached value.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+
+    /**
+     * The number of entries that were evicted because of the size bound.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+
+    public double hitRatio() {
+        long requests = hitCount() + missCount();
+        return requests == 0 ? 1.0 : (double)hitCount() / requests;
+    }
+
+
+    /**
+     * The current summed weight of all entries.
+     */
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return windowWeight + mainWeight;
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+    public long maximumWeight() {
+        return maximumWeight;
+    }
+
+
+    // policy *********************************************
+
+    protected long now() {
+        return System.nanoTime();
+    }
+
+
+    protected boolean isExpired( Node<K,V> node, long now ) {
+        return node.expireAt - now <= 0;
+    }
+
+
+    /**
+     * The expiry time for the given duration.
+     *
+     * @param duration The duration, or null if the expiry is not to be changed.
+     * @param current The current expiry time.
+     */
+    protected long expireAt( Duration duration, long current, long now ) {
+        if (duration == null) {
+            return current;
+        }
+        else if (duration.isEternal()) {
+            return now + Long.MAX_VALUE / 2;
+        }
+        else {
+            return now + TimeUnit.NANOSECONDS.convert( duration.getDurationAmount(), duration.getTimeUnit() );
+        }
+    }
+
+
+    /**
+     * Records an access of the given node. Must be called with the lock held.
+     */
+    protected void onAccess( Node<K,V> node ) {
+        sketch.increment( node.key );
+        if (!node.alive) {
+            return;
+        }
+        switch (node.queue) {
+            case WINDOW: {
+                window.moveToLast( node );
+                break;
+            }
+            case PROBATION: {
+                // promote
+                probation.remove( node );
+                node.queue = QueueType.PROTECTED;
+                protectedQueue.addLast( node );
+                protectedWeight += node.weight;
+                // demote overflow
+                while (protectedWeight > protectedMaximum && protectedQueue.head != node) {
+                    Node<K,V> demoted = protectedQueue.head;
+                    protectedQueue.remove( demoted );
+                    protectedWeight -= demoted.weight;
+                    demoted.queue = QueueType.PROBATION;
+                    probation.addLast( demoted );
+                }
+                break;
+            }
+            case PROTECTED: {
+                protectedQueue.moveToLast( node );
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Records an access without blocking.
+     */
+    protected void afterRead( Node<K,V> node ) {
+        if (evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+                onAccess( node );
+            }
+            finally {
+                evictionLock.unlock();
+            }
+        }
+        else {
+            // lossy: dropped if the buffer is full
+            readBuffer.offer( node );
+        }
+    }
+
+
+    protected void drainReadBuffer() {
+        for (Node<K,V> node = readBuffer.poll(); node != null; node = readBuffer.poll()) {
+            onAccess( node );
+        }
+    }
+
+
+    /**
+     * Adds a new node to the window. Must be called with the lock held.
+     */
+    protected void onAdd( Node<K,V> node ) {
+        sketch.increment( node.key );
+        node.queue = QueueType.WINDOW;
+        window.addLast( node );
+        windowWeight += node.weight;
+    }
+
+
+    /**
+     * Unlinks the given node from its queue. Must be called with the lock held.
+     */
+    protected void unlink( Node<K,V> node ) {
+        if (node.alive) {
+            node.alive = false;
+            switch (node.queue) {
+                case WINDOW: window.remove( node ); windowWeight -= node.weight; break;
+                case PROBATION: probation.remove( node ); mainWeight -= node.weight; break;
+                case PROTECTED: {
+                    protectedQueue.remove( node );
+                    mainWeight -= node.weight;
+                    protectedWeight -= node.weight;
+                    break;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes the given node from the cache. Must be called with the lock held.
+     */
+    protected void evict( Node<K,V> node ) {
+        data.remove( node.key, node );
+        unlink( node );
+        evictions.increment();
+    }
+
+
+    /**
+     * Moves overflow of the window into the main space, evicting the candidate or
+     * the victim depending on their frequency, and drops expired entries. Must be
+     * called with the lock held.
+     */
+    protected void maintenance() {
+        drainReadBuffer();
+        expireEntries();
+
+        long mainMaximum = maximumWeight - windowMaximum;
+        while (windowWeight > windowMaximum && window.head != null) {
+            Node<K,V> candidate = window.head;
+            window.remove( candidate );
+            windowWeight -= candidate.weight;
+
+            boolean admitted = true;
+            while (mainWeight + candidate.weight > mainMaximum) {
+                Node<K,V> victim = probation.head != null ? probation.head : protectedQueue.head;
+                if (victim == null || candidate.weight > mainMaximum) {
+                    admitted = false;
+                    break;
+                }
+                if (sketch.frequency( candidate.key ) > sketch.frequency( victim.key )) {
+                    evict( victim );
+                }
+                else {
+                    admitted = false;
+                    break;
+                }
+            }
+            if (admitted) {
+                candidate.queue = QueueType.PROBATION;
+                probation.addLast( candidate );
+                mainWeight += candidate.weight;
+            }
+            else {
+                candidate.alive = false;
+                data.remove( candidate.key, candidate );
+                evictions.increment();
+            }
+        }
+    }
+
+
+    /**
+     * Drops expired entries from the LRU end of all queues.
+     */
+    protected void expireEntries() {
+        long now = now();
+        for (AccessOrderQueue<K,V> queue : new AccessOrderQueue[] {window, probation, protectedQueue}) {
+            while (queue.head != null && isExpired( queue.head, now )) {
+                Node<K,V> node = queue.head;
+                data.remove( node.key, node );
+                unlink( node );
+            }
+        }
+    }
+
+
+    /**
+     * Adds or updates the value of the given key.
+     *
+     * @param onlyIfAbsent Don't update if there is a (not expired) value.
+     * @return The previous (not expired) value, or null.
+     */
+    protected V doPut( K key, V value, boolean onlyIfAbsent ) {
+        assert key != null && value != null;
+        checkOpen();
+        int weight = weigher.weigh( key, value );
+        EventType event = null;
+        V previous = null;
+        evictionLock.lock();
+        try {
+            long now = now();
+            Node<K,V> node = data.get( key );
+            if (node != null && node.alive && !isExpired( node, now )) {
+                previous = node.value;
+                if (!onlyIfAbsent) {
+                    event = EventType.UPDATED;
+                    node.value = value;
+                    node.expireAt = expireAt( expiryPolicy.getExpiryForUpdate(), node.expireAt, now );
+                    int delta = weight - node.weight;
+                    node.weight = weight;
+                    if (node.queue == QueueType.WINDOW) {
+                        windowWeight += delta;
+                    }
+                    else {
+                        mainWeight += delta;
+                        protectedWeight += node.queue == QueueType.PROTECTED ? delta : 0;
+                    }
+                    onAccess( node );
+                    maintenance();
+                }
+            }
+            else {
+                if (node != null) {
+                    data.remove( key, node );
+                    unlink( node );
+                }
+                Node<K,V> newNode = new Node( key, value, weight );
+                newNode.expireAt = expireAt( expiryPolicy.getExpiryForCreation(), 0, now );
+                data.put( key, newNode );
+                onAdd( newNode );
+                maintenance();
+                event = EventType.CREATED;
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+        if (event != null) {
+            fireEvent( event, key, value, previous );
+        }
+        return previous;
+    }
+
+
+    /**
+     * The not expired node of the given key, or null.
+     */
+    protected Node<K,V> getNode( K key ) {
+        Node<K,V> node = data.get( key );
+        if (node != null) {
+            long now = now();
+            if (isExpired( node, now )) {
+                evictionLock.lock();
+                try {
+                    data.remove( key, node );
+                    unlink( node );
+                }
+                finally {
+                    evictionLock.unlock();
+                }
+                return null;
+            }
+            Duration accessDuration = expiryPolicy.getExpiryForAccess();
+            if (accessDuration != null) {
+                node.expireAt = expireAt( accessDuration, node.expireAt, now );
+            }
+            afterRead( node );
+        }
+        return node;
+    }
+
+
+    /**
+     * Notifies the registered listeners of the given event.
+     *
+     * @param value The new value, or the removed value.
+     * @param oldValue The previous value of an update, or null.
+     */
+    protected void fireEvent( EventType type, K key, V value, V oldValue ) {
+        for (ListenerRegistration<K,V> registration : listeners) {
+            Event<K,V> event = new Event( this, type, key, value,
+                    registration.config.isOldValueRequired() ? oldValue : null );
+            if (registration.filter != null && !registration.filter.evaluate( event )) {
+                continue;
+            }
+            Iterable events = Collections.singletonList( event );
+            CacheEntryListener listener = registration.listener;
+            if (type == EventType.CREATED && listener instanceof CacheEntryCreatedListener) {
+                ((CacheEntryCreatedListener)listener).onCreated( events );
+            }
+            else if (type == EventType.UPDATED && listener instanceof CacheEntryUpdatedListener) {
+                ((CacheEntryUpdatedListener)listener).onUpdated( events );
+            }
+            else if (type == EventType.REMOVED && listener instanceof CacheEntryRemovedListener) {
+                ((CacheEntryRemovedListener)listener).onRemoved( events );
+            }
+        }
+    }
+
+
+    // Cache **********************************************
+
+    @Override
+    public V get( K key ) {
+        checkOpen();
+        Node<K,V> node = getNode( key );
+        if (node != null) {
+            hits.increment();
+            return node.value;
+        }
+        misses.increment();
+        if (loader != null) {
+            return flights.load( key, loader::load );
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * All keys that are not present are loaded with one call of
+     * {@link CacheLoader#loadAll(Iterable)}, except for keys that are currently
+     * loaded by other threads.
+     */
+    @Override
+    public Map<K,V> getAll( Set<? extends K> keys ) {
+        checkOpen();
+        Map<K,V> result = new HashMap( keys.size() * 2 );
+        Set<K> missing = new HashSet();
+        for (K key : keys) {
+            Node<K,V> node = getNode( key );
+            if (node != null) {
+                hits.increment();
+                result.put( key, node.value );
+            }
+            else {
+                misses.increment();
+                missing.add( key );
+            }
+        }
+        if (!missing.isEmpty() && loader != null) {
+            result.putAll( flights.loadAll( missing, _keys -> loader.loadAll( _keys ) ) );
+        }
+        return result;
+    }
+
+    @Override
+    public boolean containsKey( K key ) {
+        checkOpen();
+        Node<K,V> node = data.get( key );
+        return node != null && !isExpired( node, now() );
+    }
+
+    @Override
+    public void loadAll( Set<? extends K> keys, boolean replaceExistingValues, CompletionListener completionListener ) {
+        checkOpen();
+        try {
+            if (loader != null) {
+                Set<K> toLoad = new HashSet();
+                for (K key : keys) {
+                    if (replaceExistingValues || !containsKey( key )) {
+                        toLoad.add( key );
+                    }
+                }
+                if (!toLoad.isEmpty()) {
+                    for (Map.Entry<K,V> entry : loader.loadAll( toLoad ).entrySet()) {
+                        if (entry.getValue() != null) {
+                            doPut( entry.getKey(), entry.getValue(), !replaceExistingValues );
+                        }
+                    }
+                }
+            }
+            if (completionListener != null) {
+                completionListener.onCompletion();
+            }
+        }
+        catch (Exception e) {
+            if (completionListener != null) {
+                completionListener.onException( e );
+            }
+            else {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void put( K key, V value ) {
+        doPut( key, value, false );
+    }
+
+    @Override
+    public V getAndPut( K key, V value ) {
+        return doPut( key, value, false );
+    }
+
+    @Override
+    public void putAll( Map<? extends K,? extends V> map ) {
+        for (Map.Entry<? extends K,? extends V> entry : map.entrySet()) {
+            doPut( entry.getKey(), entry.getValue(), false );
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent( K key, V value ) {
+        return doPut( key, value, true ) == null;
+    }
+
+    @Override
+    public boolean remove( K key ) {
+        return getAndRemove( key ) != null;
+    }
+
+    @Override
+    public boolean remove( K key, V oldValue ) {
+        checkOpen();
+        evictionLock.lock();
+        try {
+            Node<K,V> node = data.get( key );
+            if (node == null || isExpired( node, now() ) || !node.value.equals( oldValue )) {
+                return false;
+            }
+            data.remove( key, node );
+            unlink( node );
+        }
+        finally {
+            evictionLock.unlock();
+        }
+        fireEvent( EventType.REMOVED, key, oldValue, oldValue );
+        return true;
+    }
+
+    @Override
+    public V getAndRemove( K key ) {
+        checkOpen();
+        V result = null;
+        evictionLock.lock();
+        try {
+            Node<K,V> node = data.remove( key );
+            if (node != null) {
+                unlink( node );
+                result = isExpired( node, now() ) ? null : node.value;
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+        if (result != null) {
+            fireEvent( EventType.REMOVED, key, result, result );
+        }
+        return result;
+    }
+
+    @Override
+    public boolean replace( K key, V oldValue, V newValue ) {
+        checkOpen();
+        evictionLock.lock();
+        try {
+            Node<K,V> node = data.get( key );
+            if (node != null && !isExpired( node, now() ) && node.value.equals( oldValue )) {
+                doPut( key, newValue, false );
+                return true;
+            }
+            return false;
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace( K key, V value ) {
+        return getAndReplace( key, value ) != null;
+    }
+
+    @Override
+    public V getAndReplace( K key, V value ) {
+        checkOpen();
+        evictionLock.lock();
+        try {
+            return containsKey( key ) ? doPut( key, value, false ) : null;
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll( Set<? extends K> keys ) {
+        for (K key : keys) {
+            remove( key );
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        if (listeners.isEmpty()) {
+            clear();
+        }
+        else {
+            // notify listeners, other than clear()
+            for (Cache.Entry<K,V> entry : this) {
+                remove( entry.getKey() );
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        checkOpen();
+        evictionLock.lock();
+        try {
+            for (Node<K,V> node : data.values()) {
+                unlink( node );
+            }
+            data.clear();
+            readBuffer.clear();
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public <C extends Configuration<K,V>> C getConfiguration( Class<C> clazz ) {
+        if (clazz.isInstance( config )) {
+            return clazz.cast( config );
+        }
+        throw new IllegalArgumentException( "Configuration is not of type: " + clazz.getName() );
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The processor is executed under the lock of this cache, so it should not
+     * take long.
+     */
+    @Override
+    public <T> T invoke( K key, EntryProcessor<K,V,T> entryProcessor, Object... arguments )
+            throws EntryProcessorException {
+        checkOpen();
+        evictionLock.lock();
+        try {
+            Node<K,V> node = data.get( key );
+            ProcessorEntry entry = new ProcessorEntry( key, node != null && !isExpired( node, now() ) ? node.value : null );
+            T result;
+            try {
+                result = entryProcessor.process( entry, arguments );
+            }
+            catch (EntryProcessorException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new EntryProcessorException( e );
+            }
+            if (entry.value == null && entry.original != null) {
+                getAndRemove( key );
+            }
+            else if (entry.value != null && entry.value != entry.original) {
+                doPut( key, entry.value, false );
+            }
+            return result;
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public <T> Map<K,EntryProcessorResult<T>> invokeAll( Set<? extends K> keys, EntryProcessor<K,V,T> entryProcessor,
+            Object... arguments ) {
+        Map<K,EntryProcessorResult<T>> results = new HashMap( keys.size() * 2 );
+        for (K key : keys) {
+            try {
+                T result = invoke( key, entryProcessor, arguments );
+                if (result != null) {
+                    results.put( key, () -> result );
+                }
+            }
+            catch (EntryProcessorException e) {
+                results.put( key, () -> { throw e; } );
+            }
+        }
+        return results;
+    }
+
+
+    /**
+     * The {@link MutableEntry} of {@link #invoke(Object, EntryProcessor, Object...)}.
+     * Changes are applied after the processor has returned.
+     */
+    protected class ProcessorEntry
+            implements MutableEntry<K,V> {
+
+        private K           key;
+
+        /** The value before the processor was executed. */
+        private V           original;
+
+        private V           value;
+
+        public ProcessorEntry( K key, V value ) {
+            this.key = key;
+            this.original = value;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            // read-through, the loaded value is stored as a new entry
+            if (value == null && original == null && loader != null) {
+                value = loader.load( key );
+            }
+            return value;
+        }
+
+        @Override
+        public boolean exists() {
+            return value != null;
+        }
+
+        @Override
+        public void remove() {
+            value = null;
+        }
+
+        @Override
+        public void setValue( V value ) {
+            if (value == null) {
+                throw new NullPointerException( "Value must not be null." );
+            }
+            this.value = value;
+        }
+
+        @Override
+        public <T> T unwrap( Class<T> clazz ) {
+            if (clazz.isInstance( this )) {
+                return clazz.cast( this );
+            }
+            throw new IllegalArgumentException( "Unable to unwrap: " + clazz.getName() );
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheManager getCacheManager() {
+        return cacheManager;
+    }
+
+    @Override
+    public void close() {
+        if (data != null) {
+            clear();
+            data = null;
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return data == null;
+    }
+
+    @Override
+    public <T> T unwrap( Class<T> clazz ) {
+        if (clazz.isInstance( this )) {
+            return clazz.cast( this );
+        }
+        throw new IllegalArgumentException( "Unable to unwrap: " + clazz.getName() );
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Listeners are always notified synchronously. Expired and evicted entries
+     * are not reported.
+     */
+    @Override
+    public void registerCacheEntryListener( CacheEntryListenerConfiguration<K,V> cacheEntryListenerConfiguration ) {
+        for (ListenerRegistration<K,V> registration : listeners) {
+            if (registration.config.equals( cacheEntryListenerConfiguration )) {
+                throw new IllegalArgumentException( "Listener is already registered: " + cacheEntryListenerConfiguration );
+            }
+        }
+        listeners.add( new ListenerRegistration( cacheEntryListenerConfiguration ) );
+    }
+
+    @Override
+    public void deregisterCacheEntryListener( CacheEntryListenerConfiguration<K,V> cacheEntryListenerConfiguration ) {
+        listeners.removeIf( registration -> registration.config.equals( cacheEntryListenerConfiguration ) );
+    }
+
+    @Override
+    public Iterator<Cache.Entry<K,V>> iterator() {
+        checkOpen();
+        long now = now();
+        Iterator<Node<K,V>> it = data.values().iterator();
+        return new Iterator<Cache.Entry<K,V>>() {
+            Node<K,V> next = advance();
+
+            Node<K,V> advance() {
+                while (it.hasNext()) {
+                    Node<K,V> node = it.next();
+                    if (!isExpired( node, now )) {
+                        return node;
+                    }
+                }
+                return null;
+            }
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+            @Override
+            public Cache.Entry<K,V> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                K key = next.key;
+                V value = next.value;
+                next = advance();
+                return new Cache.Entry<K,V>() {
+                    @Override
+                    public K getKey() {
+                        return key;
+                    }
+                    @Override
+                    public V getValue() {
+                        return value;
+                    }
+                    @Override
+                    public <T> T unwrap( Class<T> clazz ) {
+                        throw new IllegalArgumentException( "No Entry type to unwrap." );
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[name=" + name + ", size=" + data.size()
+                + ", maximumWeight=" + maximumWeight + ", hitRatio=" + hitRatio() + "]";
+    }
+
+}
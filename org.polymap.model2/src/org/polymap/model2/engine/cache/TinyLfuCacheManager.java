@@ -0,0 +1,248 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.engine.cache;
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+import java.net.URI;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.Configuration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.spi.CachingProvider;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.polymap.model2.engine.cache.ConcurrentReferenceHashMap.ReferenceType;
+import org.polymap.model2.engine.cache.TinyLfuCache.Weigher;
+import org.polymap.model2.runtime.EntityRepository;
+
+/**
+ * Creates size bounded {@link TinyLfuCache}s. In contrast to
+ * {@link SimpleCacheManager} the memory used by the caches of an
+ * {@link EntityRepository} does not depend on the garbage collector, entries
+ * are evicted by frequency and recency.
+ * <pre>
+ * EntityRepository.newConfiguration()
+ *         .cacheManager.set( new TinyLfuCacheManager( 10000 ) )
+ *         ...
+ * </pre>
+ * The maximum weight and the weigher can be set per cache by creating it with a
+ * {@link TinyLfuConfiguration}.
+ * <p/>
+ * The caches are registered weakly, so caches that are not closed explicitly
+ * are reclaimed as soon as they are no longer used.
+ * <p/>
+ * This manager is not created by a {@link CachingProvider}, so there is no
+ * provider and no URI. Management via JMX is not supported.
+ *
+ * @author Falko Bräutigam
+ */
+public class TinyLfuCacheManager
+        implements CacheManager {
+
+    private static Log log = LogFactory.getLog( TinyLfuCacheManager.class );
+
+    /**
+     * Cache configuration with a maximum weight and {@link Weigher} that
+     * overrides the defaults of the {@link TinyLfuCacheManager}.
+     */
+    public static class TinyLfuConfiguration<K,V>
+            extends MutableConfiguration<K,V> {
+
+        private long                maximumWeight = -1;
+
+        private Weigher<K,V>        weigher;
+
+        public TinyLfuConfiguration() {
+        }
+
+        public TinyLfuConfiguration( Configuration<K,V> other ) {
+            super( (javax.cache.configuration.CompleteConfiguration<K,V>)other );
+        }
+
+        public long getMaximumWeight() {
+            return maximumWeight;
+        }
+
+        public TinyLfuConfiguration<K,V> setMaximumWeight( long maximumWeight ) {
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        public Weigher<K,V> getWeigher() {
+            return weigher;
+        }
+
+        public TinyLfuConfiguration<K,V> setWeigher( Weigher<K,V> weigher ) {
+            this.weigher = weigher;
+            return this;
+        }
+    }
+
+
+    // instance *******************************************
+
+    private long                    defaultMaximumWeight;
+
+    private Weigher                 defaultWeigher;
+
+    private ConcurrentReferenceHashMap<String,TinyLfuCache> caches = new ConcurrentReferenceHashMap(
+            SimpleCache.INITIAL_SIZE, 0.75f, SimpleCache.CONCURRENCY, ReferenceType.STRONG, ReferenceType.WEAK, null );
+
+    private volatile boolean        closed;
+
+
+    /**
+     * Creates caches of the given maximum number of entries.
+     */
+    public TinyLfuCacheManager( long defaultMaximumWeight ) {
+        this( defaultMaximumWeight, null );
+    }
+
+
+    /**
+     * Creates caches of the given maximum weight.
+     *
+     * @param defaultWeigher The {@link Weigher} of the entries, or null if every
+     *        entry has weight 1.
+     */
+    public TinyLfuCacheManager( long defaultMaximumWeight, Weigher defaultWeigher ) {
+        if (defaultMaximumWeight <= 0) {
+            throw new IllegalArgumentException( "defaultMaximumWeight must be greater than 0: " + defaultMaximumWeight );
+        }
+        this.defaultMaximumWeight = defaultMaximumWeight;
+        this.defaultWeigher = defaultWeigher;
+    }
+
+
+    protected void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException( "CacheManager is closed." );
+        }
+    }
+
+
+    @Override
+    public <K,V,C extends Configuration<K,V>> Cache<K,V> createCache( String cacheName, C config )
+            throws IllegalArgumentException {
+        checkOpen();
+        long maximumWeight = defaultMaximumWeight;
+        Weigher weigher = defaultWeigher;
+        if (config instanceof TinyLfuConfiguration) {
+            TinyLfuConfiguration tinyConfig = (TinyLfuConfiguration)config;
+            maximumWeight = tinyConfig.getMaximumWeight() > 0 ? tinyConfig.getMaximumWeight() : maximumWeight;
+            weigher = tinyConfig.getWeigher() != null ? tinyConfig.getWeigher() : weigher;
+        }
+        TinyLfuCache<K,V> result = new TinyLfuCache( cacheName, this, config, maximumWeight, weigher );
+        caches.put( cacheName, result );
+        return result;
+    }
+
+    @Override
+    public void destroyCache( String cacheName ) {
+        TinyLfuCache cache = caches.remove( cacheName );
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Override
+    public <K,V> Cache<K,V> getCache( String cacheName, Class<K> keyType, Class<V> valueType ) {
+        return getCache( cacheName );
+    }
+
+    @Override
+    public <K,V> Cache<K,V> getCache( String cacheName ) {
+        checkOpen();
+        return caches.get( cacheName );
+    }
+
+    @Override
+    public Iterable<String> getCacheNames() {
+        return new ArrayList( caches.keySet() );
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            for (TinyLfuCache cache : new ArrayList<TinyLfuCache>( caches.values() )) {
+                cache.close();
+            }
+            caches.clear();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public <T> T unwrap( Class<T> clazz ) {
+        if (clazz.isInstance( this )) {
+            return clazz.cast( this );
+        }
+        throw new IllegalArgumentException( "Unable to unwrap: " + clazz.getName() );
+    }
+
+    /**
+     * This manager is created directly and not by a {@link CachingProvider}.
+     *
+     * @return Always null.
+     */
+    @Override
+    public CachingProvider getCachingProvider() {
+        return null;
+    }
+
+    /**
+     * This manager is not created by a {@link CachingProvider} and has no URI.
+     *
+     * @return Always null.
+     */
+    @Override
+    public URI getURI() {
+        return null;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return getClass().getClassLoader();
+    }
+
+    @Override
+    public Properties getProperties() {
+        return new Properties();
+    }
+
+    /**
+     * Management via JMX is not supported, the call is ignored. Use the
+     * statistics methods of {@link TinyLfuCache} instead.
+     */
+    @Override
+    public void enableManagement( String cacheName, boolean enabled ) {
+    }
+
+    @Override
+    public void enableStatistics( String cacheName, boolean enabled ) {
+        // statistics are always enabled, see TinyLfuCache#hitRatio()
+    }
+
+}
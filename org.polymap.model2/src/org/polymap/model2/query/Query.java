@@ -35,6 +35,8 @@ public abstract class Query<T extends Entity> {
 
     public int                  maxResults = Integer.MAX_VALUE;
 
+    public boolean              streaming = false;
+
     
     public Query( Class<T> resultType ) {
         this.resultType = resultType;
@@ -118,6 +120,24 @@ public abstract class Query<T extends Entity> {
     }
 
     
+    /**
+     * Executes the query in forward-only streaming mode. The resulting
+     * {@link ResultSet} does not keep the ids of the results, so it can be iterated
+     * just once. This is meant for (big) results that are processed once, via
+     * {@link ResultSet#stream()} for example.
+     * <p/>
+     * {@link ResultSet#size()} is computed from the count of the store plus the
+     * difference made by the modified entities of the {@link UnitOfWork}, without
+     * loading any entity. The size is never bigger than {@link #maxResults}.
+     *
+     * @return this
+     */
+    public Query<T> streaming() {
+        this.streaming = true;
+        return this;
+    }
+
+    
     public Class<T> resultType() {
         return resultType;
     }
@@ -64,7 +64,15 @@ public class CopyCompositeState<C extends Composite>
 
     @Override
     protected void visitManyAssociation( ManyAssociation prop ) {
-        throw new RuntimeException( "not yet implemented." );
+        if (!prop.info().isComputed()) {
+            // the iterator loads all associated Entities in one round trip
+            ManyAssociation toProp = (ManyAssociation)prop.info().get( to );
+            for (Object elm : prop) {
+                if (elm != null) {
+                    toProp.add( elm );
+                }
+            }
+        }
     }
 
     @Override
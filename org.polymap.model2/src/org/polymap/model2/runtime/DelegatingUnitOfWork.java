@@ -14,7 +14,11 @@
  */
 package org.polymap.model2.runtime;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import java.io.IOException;
 
@@ -57,6 +61,11 @@ public abstract class DelegatingUnitOfWork
         return delegate.entity( entityClass, id );
     }
 
+    @Override
+    public <T extends Entity> List<T> entities( Class<T> entityClass, Collection<?> ids ) {
+        return delegate.entities( entityClass, ids );
+    }
+
     @Override
     public <T extends Entity> T entity( T entity ) {
         return delegate.entity( entity );
@@ -82,6 +91,11 @@ public abstract class DelegatingUnitOfWork
         delegate.commit();
     }
 
+    @Override
+    public CompletableFuture<Void> commitAsync( Executor executor ) {
+        return delegate.commitAsync( executor );
+    }
+
     @Override
     public void rollback() throws ModelRuntimeException {
         delegate.rollback();
@@ -102,6 +116,11 @@ public abstract class DelegatingUnitOfWork
         return delegate.isOpen();
     }
 
+    @Override
+    public void addCloseHandler( Runnable handler ) {
+        delegate.addCloseHandler( handler );
+    }
+
     @Override
     public <T extends Entity> Query<T> query( Class<T> entityClass ) {
         return delegate.query( entityClass );
@@ -23,12 +23,15 @@ import org.apache.commons.logging.LogFactory;import org.apache.commons.logging.L
 import org.polymap.model2.Composite;
 import org.polymap.model2.Entity;
 import org.polymap.model2.engine.EntityRepositoryImpl;
+import org.polymap.model2.engine.cache.EntityStateCache;
 import org.polymap.model2.engine.cache.SimpleCache;
 import org.polymap.model2.engine.cache.SimpleCacheManager;
+import org.polymap.model2.engine.cache.TinyLfuCacheManager;
 import org.polymap.model2.runtime.config.ConfigurationFactory;
 import org.polymap.model2.runtime.config.Mandatory;
 import org.polymap.model2.runtime.config.Property;
 import org.polymap.model2.runtime.locking.CommitLockStrategy;
+import org.polymap.model2.store.CloneCompositeStateSupport;
 import org.polymap.model2.store.StoreSPI;
 
 /**
@@ -69,18 +72,36 @@ public abstract class EntityRepository
         /**
          * The CacheManager to create internal caches from. Mainly this is used to
          * create the cache for {@link Entity} instances. If not specified then a
-         * default Cache ({@link SimpleCache}) implementation is used.
+         * default Cache ({@link SimpleCache}) implementation is used, which relies
+         * on the GC to drop entries. {@link TinyLfuCacheManager} provides size
+         * bounded caches.
          */
         public Property<Configuration,CacheManager> cacheManager;
         
+        /**
+         * Optional repository wide cache of committed Entity states, shared by all
+         * {@link UnitOfWork}s. New UnitOfWorks get a clone of a cached state instead
+         * of loading it from the store. Requires a store that supports
+         * {@link CloneCompositeStateSupport}. Not used if not specified.
+         */
+        public Property<Configuration,EntityStateCache> stateCache;
+        
         /**
          * The strategy to handle concurrent attempts to prepare/commit. Defaults to
          * {@link CommitLockStrategy.Serialize}
          * 
          * @see CommitLockStrategy.Serialize
+         * @see CommitLockStrategy.Striped
          */
         public Property<Configuration,Supplier<CommitLockStrategy>> commitLockStrategy;
         
+        /**
+         * Creates the ids of new entities. Defaults to {@link IdGenerator.Default}.
+         *
+         * @see IdGenerator.Snowflake
+         */
+        public Property<Configuration,IdGenerator> idGenerator;
+        
         /**
          * @deprecated Not supported yet.
          */
@@ -93,6 +114,9 @@ public abstract class EntityRepository
             if (commitLockStrategy.get() == null) {
                 commitLockStrategy.set( () -> new CommitLockStrategy.Serialize() );
             }
+            if (idGenerator.get() == null) {
+                idGenerator.set( new IdGenerator.Default() );
+            }
             if (nameInStoreMapper.get() == null) {
                 nameInStoreMapper.set( new DefaultNameInStoreMapper() );
             }
@@ -14,6 +14,8 @@
  */
 package org.polymap.model2.runtime;
 
+import java.util.Set;
+
 import org.polymap.model2.Composite;
 import org.polymap.model2.Entity;
 import org.polymap.model2.store.CompositeState;
@@ -79,6 +81,21 @@ public interface EntityRuntimeContext {
     
     public void resetStatus( EntityStatus loaded );
 
+    /**
+     * The properties of the {@link Entity} that were modified since it was loaded
+     * or last committed. A modification of a {@link Composite} property, or of a
+     * Composite in a collection, marks the entity level property that contains it.
+     * Stores and nested {@link UnitOfWork}s may use this to write just the
+     * changed fields.
+     * <p/>
+     * The result is empty if the status is {@link EntityStatus#LOADED}. For a
+     * {@link EntityStatus#CREATED} entity all properties have to be considered
+     * dirty.
+     *
+     * @return Unmodifiable set of properties.
+     */
+    public Set<PropertyInfo> getDirtyProperties();
+
     public UnitOfWork getUnitOfWork();
 
     public StoreUnitOfWork getStoreUnitOfWork();
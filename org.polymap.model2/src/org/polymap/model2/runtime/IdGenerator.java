@@ -0,0 +1,180 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.runtime;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.polymap.model2.Entity;
+
+/**
+ * Creates the identifiers of newly created {@link Entity} instances, if the
+ * client did not specify an id in {@link UnitOfWork#createEntity(Class, Object, ValueInitializer...)}.
+ * Implementations must be thread-safe.
+ * <p/>
+ * The type of the ids must be supported by the store. The record store keeps
+ * ids in their String form and converts them back via {@link #normalize(Object)}.
+ * The feature store
+ * (<code>org.polymap.model2.store.geotools</code>) creates String FeatureIds and
+ * does not support numeric ids; use the {@link Default} generator with it.
+ *
+ * @see EntityRepository.Configuration#idGenerator
+ * @author Falko Bräutigam
+ */
+public interface IdGenerator {
+
+    /**
+     * Creates a new, unique identifier for an Entity of the given type.
+     */
+    public Object newId( Class<? extends Entity> entityClass );
+
+
+    /**
+     * Converts an id that was read from a store back into the type of the ids
+     * created by this generator, so that it equals the id of the created Entity.
+     * Used by stores that keep ids in their String form. The default
+     * implementation returns the given id.
+     */
+    public default Object normalize( Object storedId ) {
+        return storedId;
+    }
+
+
+    /**
+     * The classic ids: simple class name and a counter that is seeded from the
+     * clock, like <code>"Employee.1760712345"</code>. The ids are unique inside
+     * the JVM but not across JVMs. This is the default.
+     */
+    public static class Default
+            implements IdGenerator {
+
+        private static AtomicInteger    idCount = new AtomicInteger( (int)Math.abs( System.currentTimeMillis() ) );
+
+        @Override
+        public Object newId( Class<? extends Entity> entityClass ) {
+            return entityClass.getSimpleName() + "." + idCount.getAndIncrement();
+        }
+    }
+
+
+    /**
+     * Time-ordered 64 bit ids of type {@link Long}, unique across JVMs as long as
+     * every JVM has a distinct node number.
+     * <p/>
+     * Layout: 41 bits milliseconds since {@link #EPOCH}, {@link #NODE_BITS} bits
+     * node, {@link #SEQUENCE_BITS} bits sequence. If the sequence of the current
+     * millisecond is exhausted, or if the clock goes backwards, then the ids are
+     * taken from the following milliseconds; the generator never blocks.
+     * <p/>
+     * The record store keeps the ids as Strings; {@link #normalize(Object)}
+     * converts them back into Long. String ids given by the client that consist
+     * of digits only are taken as Long too. The feature store does not support
+     * Snowflake ids, since it
+     * creates String FeatureIds; an entity created there with a Snowflake id
+     * fails with a {@link ClassCastException}.
+     */
+    public static class Snowflake
+            implements IdGenerator {
+
+        /** 2016-01-01T00:00:00Z */
+        public static final long    EPOCH = 1451606400000L;
+
+        public static final int     NODE_BITS = 10;
+
+        public static final int     SEQUENCE_BITS = 12;
+
+        public static final int     MAX_NODE = (1 << NODE_BITS) - 1;
+
+        private static final long   SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+        /** The millisecond of the given id. */
+        public static long timestamp( long id ) {
+            return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+        }
+
+        /** The node of the given id. */
+        public static int node( long id ) {
+            return (int)((id >>> SEQUENCE_BITS) & MAX_NODE);
+        }
+
+        // instance ***************************************
+
+        private long                node;
+
+        /** The last (timestamp << SEQUENCE_BITS | sequence). */
+        private AtomicLong          last = new AtomicLong();
+
+
+        /**
+         * @param node The number of this JVM/process, 0..{@link #MAX_NODE}.
+         */
+        public Snowflake( int node ) {
+            if (node < 0 || node > MAX_NODE) {
+                throw new IllegalArgumentException( "Node must be 0.." + MAX_NODE + ": " + node );
+            }
+            this.node = node;
+        }
+
+
+        @Override
+        public Object newId( Class<? extends Entity> entityClass ) {
+            return nextLong();
+        }
+
+
+        @Override
+        public Object normalize( Object storedId ) {
+            if (storedId instanceof String) {
+                // ids are never negative, just check the digits
+                String s = (String)storedId;
+                if (s.isEmpty() || s.length() > 19) {
+                    return storedId;
+                }
+                for (int i=0; i<s.length(); i++) {
+                    if (s.charAt( i ) < '0' || s.charAt( i ) > '9') {
+                        return storedId;
+                    }
+                }
+                try {
+                    return Long.valueOf( s );
+                }
+                catch (NumberFormatException e) {
+                    return storedId;  // more than Long.MAX_VALUE
+                }
+            }
+            return storedId;
+        }
+
+
+        public long nextLong() {
+            long now = (currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+            long prev, next;
+            do {
+                prev = last.get();
+                // sequence overflow carries into the timestamp
+                next = Math.max( now, prev + 1 );
+            } while (!last.compareAndSet( prev, next ));
+
+            long timestamp = next >>> SEQUENCE_BITS;
+            return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+        }
+
+
+        protected long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    }
+
+}
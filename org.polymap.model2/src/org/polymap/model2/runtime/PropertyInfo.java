@@ -39,6 +39,17 @@ public interface PropertyInfo<T> {
      */
     public String getName();
 
+    /**
+     * The ordinal of this property within its {@link CompositeInfo}, starting
+     * with 0. Properties of the Composite type itself come first, then the
+     * properties of its super classes. Stores may use this to address
+     * properties by slot instead of by name.
+     *
+     * @return The index, or -1 if this property is not part of a
+     *         {@link CompositeInfo}.
+     */
+    public int index();
+
     /** 
      * The optional {@link Description} of this property. 
      */
@@ -17,6 +17,9 @@ package org.polymap.model2.runtime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -26,6 +29,13 @@ import com.google.common.collect.Lists;
 /**
  * Simple transaction manager that handles committing of multiple
  * {@link TransactionAware} resources.
+ * <p/>
+ * By default prepare and commit of the resources are done one after the other.
+ * {@link #parallelPrepare(Executor)} and {@link #parallelCommit(Executor)} run
+ * them concurrently, so that the latency of the 2-phase-commit is the latency of
+ * the slowest resource instead of the sum. Parallel mode is for independent
+ * resources only; parent and nested {@link UnitOfWork}s must be committed in
+ * order.
  *
  * @author Falko Bräutigam
  */
@@ -98,6 +108,12 @@ public class TwoPhaseCommit {
     
     private boolean                     commitStarted = false;
     
+    /** The executor of parallel prepare, or null for sequential prepare. */
+    private Executor                    prepareExecutor;
+    
+    /** The executor of parallel commit, or null for sequential commit. */
+    private Executor                    commitExecutor;
+    
     
     public TwoPhaseCommit( TransactionAware... resources ) {
         for (TransactionAware resource : resources) {
@@ -122,6 +138,37 @@ public class TwoPhaseCommit {
     }
 
     
+    /**
+     * Runs {@link TransactionAware#prepare()} of all resources concurrently using
+     * the given {@link Executor}. Waits for all prepares to finish before the
+     * commit or rollback starts. If any prepare fails, then the first failure is
+     * thrown, and {@link #commitOrRollback(CommitType)} rolls back all resources.
+     *
+     * @param executor The executor, or null for sequential prepare (default).
+     * @return this
+     */
+    public TwoPhaseCommit parallelPrepare( Executor executor ) {
+        assert !commitStarted;
+        this.prepareExecutor = executor;
+        return this;
+    }
+
+    
+    /**
+     * Runs {@link TransactionAware#commit()} of all resources concurrently using
+     * the given {@link Executor}. Waits for all commits to finish.
+     *
+     * @param executor The executor, or null for sequential commit in order of
+     *        registering (default).
+     * @return this
+     */
+    public TwoPhaseCommit parallelCommit( Executor executor ) {
+        assert !commitStarted;
+        this.commitExecutor = executor;
+        return this;
+    }
+
+    
     public void commit( CommitType type ) throws Exception {
         try {
             assert !resources.isEmpty();
@@ -143,6 +190,29 @@ public class TwoPhaseCommit {
     }
     
     
+    /**
+     * Asynchronously runs {@link #commit(CommitType)} using the given
+     * {@link Executor}. Prepare and commit of all resources are done by the
+     * executor thread, in order of registering the resources.
+     *
+     * @return The future of the commit. Completes exceptionally with the exception
+     *         thrown by {@link #commit(CommitType)}.
+     */
+    public CompletableFuture<Void> commitAsync( CommitType type, Executor executor ) {
+        return CompletableFuture.runAsync( () -> {
+            try {
+                commit( type );
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new CompletionException( e );
+            }
+        }, executor );
+    }
+    
+    
     public void rollback( CommitType type ) {
         try {
             assert !resources.isEmpty();
@@ -184,15 +254,96 @@ public class TwoPhaseCommit {
     }
     
     
+    /**
+     * Asynchronously runs {@link #commitOrRollback(CommitType)} using the given
+     * {@link Executor}.
+     *
+     * @see #commitAsync(CommitType, Executor)
+     */
+    public CompletableFuture<Void> commitOrRollbackAsync( CommitType type, Executor executor ) {
+        return CompletableFuture.runAsync( () -> {
+            try {
+                commitOrRollback( type );
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new CompletionException( e );
+            }
+        }, executor );
+    }
+    
+    
     protected void doPrepare() throws Exception {
-        for (TransactionAware r : resources) {
-            r.prepare();
+        if (prepareExecutor != null && resources.size() > 1) {
+            doParallel( prepareExecutor, r -> r.prepare() );
+        }
+        else {
+            for (TransactionAware r : resources) {
+                r.prepare();
+            }
         }
     }
 
-    protected void doCommit() {
+    protected void doCommit() throws Exception {
+        if (commitExecutor != null && resources.size() > 1) {
+            doParallel( commitExecutor, r -> r.commit() );
+        }
+        else {
+            for (TransactionAware r : resources) {
+                r.commit();
+            }
+        }
+    }
+    
+    /**
+     * A task of {@link TwoPhaseCommit#doParallel(Executor, ResourceTask)}.
+     */
+    @FunctionalInterface
+    protected interface ResourceTask {
+        public void run( TransactionAware resource ) throws Exception;
+    }
+    
+    /**
+     * Runs the given task for all resources using the given executor. Waits
+     * until all tasks have finished, even if one of them fails, so that no task
+     * is still running during a subsequent rollback.
+     *
+     * @throws Exception The first failure, other failures are suppressed.
+     */
+    protected void doParallel( Executor executor, ResourceTask task ) throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList( resources.size() );
         for (TransactionAware r : resources) {
-            r.commit();
+            futures.add( CompletableFuture.runAsync( () -> {
+                try {
+                    task.run( r );
+                }
+                catch (RuntimeException e) {
+                    throw e;
+                }
+                catch (Exception e) {
+                    throw new CompletionException( e );
+                }
+            }, executor ) );
+        }
+        Exception first = null;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            }
+            catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (first == null) {
+                    first = cause instanceof Exception ? (Exception)cause : new RuntimeException( cause );
+                }
+                else {
+                    first.addSuppressed( cause );
+                }
+            }
+        }
+        if (first != null) {
+            throw first;
         }
     }
     
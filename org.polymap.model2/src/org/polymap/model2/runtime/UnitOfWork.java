@@ -14,7 +14,11 @@
  */
 package org.polymap.model2.runtime;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import java.io.IOException;
 
@@ -26,6 +30,7 @@ import org.polymap.model2.runtime.EntityRuntimeContext.EntityStatus;
 import org.polymap.model2.runtime.locking.OptimisticLocking;
 import org.polymap.model2.store.CompositeState;
 import org.polymap.model2.store.StoreSPI;
+import org.polymap.model2.store.StoreUnitOfWork;
 
 /**
  * A UnitOfWork is the only way to actually <b>access</b> Entities and to work with
@@ -73,6 +78,20 @@ public interface UnitOfWork
      */
     public <T extends Entity> T entity( Class<T> entityClass, Object id );
 
+    /**
+     * Finds the {@link Entity}s with the given identifiers and type. Other than
+     * calling {@link #entity(Class, Object)} for every id, this allows the
+     * underlying store to load the states of all entities that are not yet loaded
+     * in one round trip (see {@link StoreUnitOfWork#loadEntityStates(Collection, Class)}).
+     * 
+     * @param entityClass The type of the entities to find.
+     * @param ids The identifiers of the entities to find.
+     * @param <T> The type of the entities to build.
+     * @return List of entities in the order of the given ids. An element is null if
+     *         {@link #entity(Class, Object)} would return null for its id.
+     */
+    public <T extends Entity> List<T> entities( Class<T> entityClass, Collection<?> ids );
+
     /**
      * 
      * 
@@ -152,6 +171,21 @@ public interface UnitOfWork
      */
     public void commit() throws ModelRuntimeException;
 
+
+    /**
+     * Asynchronously {@link #commit() commits} this UnitOfWork using the given
+     * {@link Executor}. This UnitOfWork must not be modified or closed before the
+     * returned future is completed. The commit lock is owned by the UnitOfWork, so
+     * {@link #prepare()} may have been called by another thread.
+     *
+     * @param executor The executor to run {@link #commit()}.
+     * @return The future of the commit. Completes exceptionally with the exception
+     *         thrown by {@link #commit()}.
+     */
+    public default CompletableFuture<Void> commitAsync( Executor executor ) {
+        return CompletableFuture.runAsync( () -> commit(), executor );
+    }
+
     
     /**
      * Discards any uncommitted modifications but does not close this UnitOfWork.
@@ -194,6 +228,16 @@ public interface UnitOfWork
     
     public boolean isOpen();
 
+
+    /**
+     * Registers a handler that is called when this UnitOfWork is
+     * {@link #close() closed}. Used by components that hold resources on behalf of
+     * this UnitOfWork, such as locks.
+     *
+     * @param handler Called once, in the thread that closes this UnitOfWork.
+     */
+    public void addCloseHandler( Runnable handler );
+
     
     /**
      * Creates a new query for the given {@link Entity} type. By default the returned
@@ -14,15 +14,28 @@
  */
 package org.polymap.model2.runtime.locking;
 
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.polymap.model2.runtime.EntityRepository.Configuration;
+import org.polymap.model2.runtime.UnitOfWork;
+
 /**
- * 
+ * Handles concurrent attempts to prepare/commit. The lock is acquired by
+ * {@link #lock(Collection)} in prepare() and released in commit(), rollback() or
+ * close() of the UnitOfWork, which might be called by another thread (see
+ * {@link UnitOfWork#commitAsync(java.util.concurrent.Executor)}). So
+ * implementations must not bind the lock to the calling thread. Every
+ * UnitOfWork gets its own instance from the
+ * {@link Configuration#commitLockStrategy} supplier, and calls
+ * {@link #unlock(boolean)} only if it has acquired the lock.
  *
  * @author <a href="http://www.polymap.de">Falko Bräutigam</a>
  */
@@ -32,6 +45,17 @@ public abstract class CommitLockStrategy {
     
     public abstract void lock();
 
+    /**
+     * Locks before the given entities are prepared/committed. Strategies that
+     * lock per entity override this. The default implementation calls
+     * {@link #lock()}.
+     *
+     * @param ids The ids of the modified entities.
+     */
+    public void lock( Collection<Object> ids ) {
+        lock();
+    }
+
     public abstract void unlock( boolean check );
     
     
@@ -67,12 +91,15 @@ public abstract class CommitLockStrategy {
     
 
     /**
-     * Serialize concurrent attempts to {@link #prepare()}/{@link #commit()}.
+     * Serialize concurrent attempts to {@link #prepare()}/{@link #commit()}. The
+     * lock is not bound to a thread, so it can be released by another thread.
      */
     public static class Serialize
             extends CommitLockStrategy {
         
-        private ReentrantLock       lock = new ReentrantLock();
+        private Semaphore           lock = new Semaphore( 1 );
+        
+        private AtomicBoolean       held = new AtomicBoolean();
         
         private long                timeout;
         
@@ -97,11 +124,15 @@ public abstract class CommitLockStrategy {
         @Override
         public void lock() {
             if (timeout == 0) {
-                lock.lock();
+                lock.acquireUninterruptibly();
+                held.set( true );
             }
             else {
                 try {
-                    lock.tryLock( timeout, timeUnit );
+                    if (!lock.tryAcquire( timeout, timeUnit )) {
+                        throw new RuntimeException( "Timeout while waiting for commit lock." );
+                    }
+                    held.set( true );
                 }
                 catch (InterruptedException e) {
                     throw new RuntimeException( e );
@@ -111,13 +142,107 @@ public abstract class CommitLockStrategy {
 
         @Override
         public void unlock( boolean check ) {
-            if (lock.isHeldByCurrentThread()) {
-                lock.unlock();
+            if (held.compareAndSet( true, false )) {
+                lock.release();
             }
         }
     }
     
     
+    /**
+     * Serialize concurrent attempts to {@link #prepare()}/{@link #commit()} of
+     * overlapping sets of entities. The ids of the modified entities are mapped to
+     * a fixed number of stripe locks, which are shared by all UnitOfWorks created
+     * by one {@link #supplier(int)}. The stripes are always acquired in ascending
+     * order, so there are no deadlocks. UnitOfWorks that modify disjoint sets of
+     * entities prepare/commit in parallel, unless their ids share a stripe.
+     * <p/>
+     * Usage:
+     * <pre>
+     * EntityRepository.newConfiguration()
+     *         .commitLockStrategy.set( CommitLockStrategy.Striped.supplier( 64 ) )
+     * </pre>
+     */
+    public static class Striped
+            extends CommitLockStrategy {
+
+        public static final int     DEFAULT_STRIPES = 64;
+
+        /**
+         * Creates a supplier of {@link Striped} instances that share one set of
+         * stripes.
+         *
+         * @param stripes The number of stripes, rounded up to a power of two.
+         */
+        public static Supplier<CommitLockStrategy> supplier( int stripes ) {
+            Semaphore[] locks = new Semaphore[ stripes <= 1 ? 1 : Integer.highestOneBit( stripes - 1 ) << 1 ];
+            for (int i=0; i<locks.length; i++) {
+                locks[i] = new Semaphore( 1 );
+            }
+            return () -> new Striped( locks );
+        }
+
+        // instance ***************************************
+
+        private Semaphore[]         locks;
+
+        /** The indices of the stripes held by this strategy/UnitOfWork. */
+        private volatile BitSet     held;
+
+
+        protected Striped( Semaphore[] locks ) {
+            assert Integer.bitCount( locks.length ) == 1;
+            this.locks = locks;
+        }
+
+        protected int stripe( Object id ) {
+            int h = id.hashCode();
+            return (h ^ (h >>> 16)) & (locks.length - 1);
+        }
+
+        /**
+         * Locks all stripes.
+         */
+        @Override
+        public void lock() {
+            BitSet stripes = new BitSet( locks.length );
+            stripes.set( 0, locks.length );
+            lock( stripes );
+        }
+
+        @Override
+        public void lock( Collection<Object> ids ) {
+            BitSet stripes = new BitSet( locks.length );
+            for (Object id : ids) {
+                stripes.set( stripe( id ) );
+            }
+            lock( stripes );
+        }
+
+        protected void lock( BitSet stripes ) {
+            // prepare() again without commit/rollback
+            if (held != null) {
+                unlock( false );
+            }
+            // ascending order: no deadlock
+            for (int i=stripes.nextSetBit( 0 ); i >= 0; i=stripes.nextSetBit( i+1 )) {
+                locks[i].acquireUninterruptibly();
+            }
+            held = stripes;
+        }
+
+        @Override
+        public void unlock( boolean check ) {
+            if (held != null) {
+                for (int i=held.length()-1; i >= 0; i=held.previousSetBit( i-1 )) {
+                    locks[i].release();
+                }
+                held = null;
+            }
+        }
+    }
+
+
     /**
      * Do nothing ans ignore locking altogether. Save cycles and memory.
      */
@@ -17,7 +17,10 @@ package org.polymap.model2.runtime.locking;
 import static java.util.Collections.singletonList;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -36,16 +39,24 @@ import org.polymap.model2.store.StoreResultSet;
 import org.polymap.model2.store.StoreRuntimeContext;
 import org.polymap.model2.store.StoreSPI;
 import org.polymap.model2.store.StoreUnitOfWork;
+import org.polymap.model2.store.VersionedStateSupport;
 
 /**
  * This {@link StoreDecorator} provides a simple check for concurrent modifications
  * from different UnitOfWork instances in this JVM. The check fails on
  * {@link StoreUnitOfWork#prepareCommit(Iterable)}.
  * <p/>
- * This implementation holds all versions in memory and never checks the underlying
- * store for concurrent modifications. So the check is fast but the table of versions
- * grows with the number of modified entities. This implementation does not detect
- * modification of the underlying store by a second party.
+ * If the store supports {@link VersionedStateSupport} then the versions are kept
+ * in the entity states and are written to the store. The versions of the modified
+ * entities are checked against the store with one batched lookup per type. So
+ * the memory footprint is proportional to the loaded entities and modifications
+ * by a second party (another JVM) are detected as long as they are not committed
+ * at the very same time.
+ * <p/>
+ * Otherwise this implementation holds all versions in memory and never checks the
+ * underlying store for concurrent modifications. So the check is fast but the
+ * table of versions grows with the number of modified entities. This does not
+ * detect modification of the underlying store by a second party.
  * <p/>
  * The implementation relies on globally unique ids across all Entity types in the
  * repository.
@@ -62,6 +73,12 @@ public class OptimisticLocking
     
     private ConcurrentMap<Object,Integer>   storeVersions = new ConcurrentHashMap( 256, 0.75f, 4 );
 
+    /**
+     * The ids of the versioned entities that are currently prepared/committed. This
+     * makes check and write of the versions atomic inside this JVM.
+     */
+    private ConcurrentMap<Object,StoreUnitOfWork> committing = new ConcurrentHashMap( 64, 0.75f, 4 );
+
     
     public OptimisticLocking( StoreSPI store ) {
         super( store );
@@ -93,18 +110,35 @@ public class OptimisticLocking
         
         private List<Entity>                    prepared;
 
+        /** The ids this UnitOfWork has registered in {@link OptimisticLocking#committing}. */
+        private List<Object>                    reserved = new ArrayList();
+
         
         public OptimisticLockingSuow( StoreUnitOfWork suow ) {
             super( suow );
         }
 
+
+        /**
+         * True if the version of the given type is kept by the store.
+         */
+        protected boolean isVersioned( Class<? extends Entity> entityClass ) {
+            return suow instanceof VersionedStateSupport 
+                    && ((VersionedStateSupport)suow).isVersioned( entityClass );
+        }
+
         
         @Override
         public void prepareCommit( Iterable<Entity> modified ) throws Exception {
             // check only
             prepared = new ArrayList( loadedVersions.size() );
+            Map<Class,List<Entity>> versioned = new HashMap();
             for (Entity entity : modified) {
                 if (entity.status() == EntityStatus.MODIFIED || entity.status() == EntityStatus.REMOVED) {
+                    if (isVersioned( entity.getClass() )) {
+                        versioned.computeIfAbsent( entity.getClass(), cl -> new ArrayList() ).add( entity );
+                        continue;
+                    }
                     Integer loadedVersion = loadedVersions.get( entity.id() );
                     Integer storeVersion = storeVersions.get( entity.id() );
                     if (!Objects.equals( storeVersion, loadedVersion )) {
@@ -116,11 +150,54 @@ public class OptimisticLocking
                     prepared.add( entity );
                 }
             }
+            for (List<Entity> entities : versioned.values()) {
+                checkStoredVersions( entities );
+            }
 
             // delegate
             suow.prepareCommit( modified );
         }
 
+
+        /**
+         * Checks the versions of the given entities of one type against the store.
+         */
+        protected void checkStoredVersions( List<Entity> entities ) {
+            VersionedStateSupport vsuow = (VersionedStateSupport)suow;
+            List<Object> ids = new ArrayList( entities.size() );
+            for (Entity entity : entities) {
+                StoreUnitOfWork other = committing.putIfAbsent( entity.id(), this );
+                if (other != null && other != this) {
+                    releaseReserved();
+                    throw new ConcurrentEntityModificationException( 
+                            "Entity is committed by another UnitOfWork: " + entity, 
+                            singletonList( entity ) );
+                }
+                reserved.add( entity.id() );
+                ids.add( entity.id() );
+            }
+            Map<Object,Long> storeVersions = vsuow.storedVersions( ids, entities.get( 0 ).getClass() );
+            for (Entity entity : entities) {
+                long loadedVersion = vsuow.version( entity );
+                Long storeVersion = storeVersions.get( entity.id() );
+                if (storeVersion == null || storeVersion.longValue() != loadedVersion) {
+                    releaseReserved();
+                    throw new ConcurrentEntityModificationException( 
+                            "Entity has been modified be another UnitOfWork: " + entity +
+                            "\r\n\t(loadedVersion=" + loadedVersion + ", storedVersion=" + storeVersion + ")", 
+                            singletonList( entity ) );
+                }
+            }
+        }
+
+
+        protected void releaseReserved() {
+            for (Object id : reserved) {
+                committing.remove( id, this );
+            }
+            reserved.clear();
+        }
+
         
         @Override
         public void commit() {
@@ -146,7 +223,12 @@ public class OptimisticLocking
             prepared = null;
             
             // delegate
-            suow.commit();
+            try {
+                suow.commit();
+            }
+            finally {
+                releaseReserved();
+            }
         }
 
         
@@ -166,10 +248,22 @@ public class OptimisticLocking
                 }
             }
             prepared = null;
+            releaseReserved();
+        }
+
+
+        @Override
+        public void close() {
+            releaseReserved();
+            super.close();
         }
 
 
-        protected void registerLoadedVersion( Object id ) {
+        protected void registerLoadedVersion( Object id, Class<? extends Entity> entityClass ) {
+            // versioned: the version is part of the state
+            if (isVersioned( entityClass )) {
+                return;
+            }
             Integer version = storeVersions.get( id );
             if (version != null) {
                 loadedVersions.put( id, version );
@@ -180,7 +274,17 @@ public class OptimisticLocking
         @Override
         public <T extends Entity> CompositeState loadEntityState( Object id, Class<T> entityClass ) {
             CompositeState result = suow.loadEntityState( id, entityClass );
-            registerLoadedVersion( id );
+            registerLoadedVersion( id, entityClass );
+            return result;
+        }
+
+        
+        @Override
+        public <T extends Entity> Map<Object,CompositeState> loadEntityStates( Collection<?> ids, Class<T> entityClass ) {
+            Map<Object,CompositeState> result = suow.loadEntityStates( ids, entityClass );
+            for (Object id : result.keySet()) {
+                registerLoadedVersion( id, entityClass );
+            }
             return result;
         }
 
@@ -188,7 +292,7 @@ public class OptimisticLocking
         @Override
         public <T extends Entity> CompositeState adoptEntityState( Object state, Class<T> entityClass ) {
             CompositeState result = suow.adoptEntityState( state, entityClass );
-            registerLoadedVersion( result.id() );
+            registerLoadedVersion( result.id(), entityClass );
             return result;
         }
 
@@ -202,7 +306,7 @@ public class OptimisticLocking
                     CompositeStateReference result = delegate.next();
                     CompositeState preloaded = result.get();
                     if (preloaded != null) {
-                        registerLoadedVersion( preloaded.id() );
+                        registerLoadedVersion( preloaded.id(), query.resultType() );
                     }
                     return result;
                 }
@@ -243,6 +347,11 @@ public class OptimisticLocking
             return suow().cloneEntityState( state ); 
         }
 
+        @Override
+        public CompositeState overlayEntityState( CompositeState state ) {
+            return suow().overlayEntityState( state ); 
+        }
+
         @Override
         public void reincorparateEntityState( CompositeState state, CompositeState clonedState ) {
             suow().reincorparateEntityState( state, clonedState );
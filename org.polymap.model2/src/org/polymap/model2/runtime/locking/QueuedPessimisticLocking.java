@@ -0,0 +1,345 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.runtime.locking;
+
+import static java.util.Collections.singletonList;
+import static org.polymap.model2.runtime.locking.PessimisticLocking.AccessMode.READ;
+import static org.polymap.model2.runtime.locking.PessimisticLocking.AccessMode.WRITE;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.google.common.collect.MapMaker;
+
+import org.polymap.model2.Entity;
+import org.polymap.model2.ManyAssociation;
+import org.polymap.model2.Property;
+import org.polymap.model2.PropertyConcern;
+import org.polymap.model2.PropertyConcernBase;
+import org.polymap.model2.runtime.ConcurrentEntityModificationException;
+import org.polymap.model2.runtime.ModelRuntimeException;
+import org.polymap.model2.runtime.UnitOfWork;
+import org.polymap.model2.runtime.ValueInitializer;
+import org.polymap.model2.runtime.locking.PessimisticLocking.AccessMode;
+import org.polymap.model2.runtime.locking.PessimisticLocking.EntityKey;
+
+/**
+ * Multiple-Readers/One-Writer {@link PessimisticLocking} based on
+ * {@link AbstractQueuedSynchronizer}. In contrast to
+ * {@link MrowPessimisticLocking} waiting {@link UnitOfWork}s are parked in a FIFO
+ * queue and are unparked as soon as the lock is released. No polling.
+ * <p/>
+ * Locks are held by a {@link UnitOfWork}, not by a Thread. The locks held by a
+ * UnitOfWork are tracked and released when the UnitOfWork is
+ * {@link UnitOfWork#addCloseHandler(Runnable) closed}, with cost proportional to
+ * the number of held locks. The UnitOfWork is referenced weakly; the locks of a
+ * UnitOfWork that is not closed are released not before it is finalized, so it
+ * <b>should</b> be closed. Locks that are not held and not awaited are evicted
+ * from the global lock table.
+ * <p/>
+ * This does not use the {@link PessimisticLocking#newLock(EntityKey, Entity) lock
+ * table} of {@link PessimisticLocking}, just its {@link AccessMode}.
+ * <p/>
+ * A read lock is upgraded to a write lock if the UnitOfWork is the only reader.
+ * Two UnitOfWorks that try to upgrade concurrently would wait for each other. So
+ * waiting is limited by {@link #timeoutMillis()}; a
+ * {@link ConcurrentEntityModificationException} is thrown after the timeout.
+ *
+ * @author Falko Bräutigam
+ */
+public class QueuedPessimisticLocking
+        extends PropertyConcernBase
+        implements PropertyConcern, ManyAssociation {
+
+    private static final Log log = LogFactory.getLog( QueuedPessimisticLocking.class );
+
+    public static final long        DEFAULT_TIMEOUT = 30000;
+
+    private static ConcurrentMap<EntityKey,QueuedLock> queuedLocks = new ConcurrentHashMap( 256, 0.75f, 4 );
+
+    /** The locks held by a UnitOfWork. Weak (identity) keys. */
+    private static ConcurrentMap<UnitOfWork,Map<QueuedLock,AccessMode>> held = new MapMaker()
+            .initialCapacity( 64 ).concurrencyLevel( 4 ).weakKeys().makeMap();
+
+
+    /**
+     * The locks held by the given {@link UnitOfWork}. The locks are released when
+     * the UnitOfWork is closed.
+     */
+    protected static Map<QueuedLock,AccessMode> held( UnitOfWork uow ) {
+        Map<QueuedLock,AccessMode> result = held.get( uow );
+        if (result == null) {
+            Map<QueuedLock,AccessMode> uowLocks = new ConcurrentHashMap( 16, 0.75f, 1 );
+            result = held.putIfAbsent( uow, uowLocks );
+            if (result == null) {
+                result = uowLocks;
+                // the handler is referenced by the UnitOfWork only; the UnitOfWork
+                // closes itself when finalized
+                uow.addCloseHandler( () -> {
+                    held.remove( uow, uowLocks );
+                    uowLocks.forEach( (lock, mode) -> lock.release( mode ) );
+                });
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * The number of locks in the global lock table. Used for testing.
+     */
+    public static int lockCount() {
+        return queuedLocks.size();
+    }
+
+
+    /**
+     * The synchronizer of one Entity. The state is the number of readers, -1 if
+     * there is a writer, or {@link #RETIRED} if the lock was evicted.
+     */
+    protected static class Sync
+            extends AbstractQueuedSynchronizer {
+
+        public static final int     RETIRED = Integer.MIN_VALUE;
+
+        /** {@link #tryAcquire(int)} arg: upgrade the one read lock of the caller. */
+        public static final int     UPGRADE = 1;
+
+        /** {@link #tryAcquire(int)} arg: acquire if there is no reader or writer. */
+        public static final int     EXCLUSIVE = 0;
+
+        public boolean isRetired() {
+            return getState() == RETIRED;
+        }
+
+        /**
+         * Marks this lock as retired if it is not held and not awaited.
+         */
+        public boolean tryRetire() {
+            return !hasQueuedThreads() && compareAndSetState( 0, RETIRED );
+        }
+
+        @Override
+        protected int tryAcquireShared( int arg ) {
+            for (;;) {
+                int state = getState();
+                if (state == RETIRED) {
+                    return 1;
+                }
+                // FIFO: don't overtake waiting writers
+                if (state < 0 || hasQueuedPredecessors()) {
+                    return -1;
+                }
+                if (compareAndSetState( state, state + 1 )) {
+                    return 1;
+                }
+            }
+        }
+
+        @Override
+        protected boolean tryReleaseShared( int arg ) {
+            for (;;) {
+                int state = getState();
+                assert state > 0 : "No reader: " + state;
+                if (compareAndSetState( state, state - 1 )) {
+                    // always signal: an upgrading reader waits for state == 1
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        protected boolean tryAcquire( int arg ) {
+            int state = getState();
+            if (state == RETIRED) {
+                return true;
+            }
+            else if (arg == UPGRADE) {
+                // the upgrading reader must not wait for queued writers, which
+                // wait for this reader
+                return state == 1 && compareAndSetState( 1, -1 );
+            }
+            else {
+                return state == 0 && !hasQueuedPredecessors() && compareAndSetState( 0, -1 );
+            }
+        }
+
+        @Override
+        protected boolean tryRelease( int arg ) {
+            assert getState() == -1 : "No writer: " + getState();
+            setState( 0 );
+            return true;
+        }
+    }
+
+
+    /**
+     * The lock of one Entity.
+     */
+    protected static class QueuedLock {
+
+        protected final EntityKey   key;
+
+        protected final Sync        sync = new Sync();
+
+        public QueuedLock( EntityKey key ) {
+            this.key = key;
+        }
+
+        /**
+         * @return False if this lock was evicted meanwhile.
+         * @throws InterruptedException
+         */
+        public boolean acquire( AccessMode mode, AccessMode current, long timeoutMillis ) throws InterruptedException {
+            long nanos = TimeUnit.MILLISECONDS.toNanos( timeoutMillis );
+            boolean success = false;
+            if (mode == READ) {
+                success = sync.tryAcquireSharedNanos( 1, nanos );
+            }
+            else {
+                success = sync.tryAcquireNanos( current == READ ? Sync.UPGRADE : Sync.EXCLUSIVE, nanos );
+            }
+            if (!success) {
+                throw new TimeoutException();
+            }
+            return !sync.isRetired();
+        }
+
+        /**
+         * Acquires without waiting.
+         *
+         * @return True if the lock was aquired, false if the lock is held by
+         *         another UnitOfWork or was evicted.
+         */
+        public boolean tryAcquire( AccessMode mode, AccessMode current ) {
+            boolean result = mode == READ
+                    ? sync.tryAcquireShared( 1 ) >= 0
+                    : sync.tryAcquire( current == READ ? Sync.UPGRADE : Sync.EXCLUSIVE );
+            return result && !sync.isRetired();
+        }
+
+        public void release( AccessMode mode ) {
+            if (mode == WRITE) {
+                sync.release( 1 );
+            }
+            else {
+                sync.releaseShared( 1 );
+            }
+            // evict if unused
+            if (sync.tryRetire()) {
+                queuedLocks.remove( key, this );
+            }
+        }
+    }
+
+
+    /**
+     * Signals the timeout of {@link QueuedLock#acquire(AccessMode, AccessMode, long)}.
+     */
+    protected static class TimeoutException
+            extends RuntimeException {
+    }
+
+
+    // instance *******************************************
+
+    @Override
+    public Object get() {
+        lock( AccessMode.READ );
+        return ((Property)delegate).get();
+    }
+
+
+    @Override
+    public Object createValue( ValueInitializer initializer ) {
+        lock( AccessMode.WRITE );
+        return ((Property)delegate).createValue( initializer );
+    }
+
+
+    @Override
+    public void set( Object value ) {
+        lock( AccessMode.WRITE );
+        ((Property)delegate).set( value );
+    }
+
+
+    @Override
+    public boolean add( Object elm ) {
+       lock( AccessMode.WRITE );
+       return ((ManyAssociation)delegate).add( elm );
+    }
+
+
+    /**
+     * The maximum time to wait for a lock. Defaults to {@link #DEFAULT_TIMEOUT}.
+     */
+    protected long timeoutMillis() {
+        return DEFAULT_TIMEOUT;
+    }
+
+
+    protected void lock( AccessMode accessMode ) {
+        UnitOfWork uow = context.getUnitOfWork();
+        Entity entity = context.getEntity();
+
+        Map<QueuedLock,AccessMode> uowLocks = held( uow );
+        EntityKey key = new EntityKey( entity );
+        for (;;) {
+            QueuedLock lock = queuedLocks.computeIfAbsent( key, QueuedLock::new );
+            AccessMode current = uowLocks.get( lock );
+            if (current == WRITE || current == accessMode) {
+                return;
+            }
+            // fast path
+            if (lock.tryAcquire( accessMode, current )) {
+                uowLocks.put( lock, accessMode );
+                return;
+            }
+            else if (lock.sync.isRetired()) {
+                continue;
+            }
+            // wait
+            try {
+                log.debug( "await lock: " + accessMode + " on: " + entity.id() );
+                if (!lock.acquire( accessMode, current, timeoutMillis() )) {
+                    continue;
+                }
+                uowLocks.put( lock, accessMode );
+                log.debug( "got lock on: " + entity.id() );
+                // now we have the lock; the other UnitOfWork might have modified
+                // the Entity state, so we have to reload; the client code has not seen
+                // any properties of the entity yet
+                uow.reload( entity );
+                return;
+            }
+            catch (TimeoutException e) {
+                throw new ConcurrentEntityModificationException( "Timeout while waiting for " + accessMode
+                        + " lock on: " + entity.id(), singletonList( entity ) );
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ModelRuntimeException( "Interrupted while waiting for lock on: " + entity.id(), e );
+            }
+        }
+    }
+
+}
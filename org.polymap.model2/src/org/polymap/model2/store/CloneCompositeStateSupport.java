@@ -30,7 +30,21 @@ public interface CloneCompositeStateSupport
     public CompositeState cloneEntityState( CompositeState state );
 
     /**
-     *
+     * Creates a copy-on-write view of the given state. The result reads through
+     * to the given state and keeps just the fields that were written or removed.
+     * Used by {@link UnitOfWorkNested} for the entities of the parent.
+     * <p/>
+     * The default implementation returns a full {@link #cloneEntityState(CompositeState) clone}.
+     */
+    public default CompositeState overlayEntityState( CompositeState state ) {
+        return cloneEntityState( state );
+    }
+
+    /**
+     * Copies the content of clonedState into state. If clonedState is an
+     * {@link #overlayEntityState(CompositeState) overlay} of state, then just the
+     * fields written to the overlay are copied. If state is an overlay of
+     * clonedState, then the overlay is reset.
      */
     public void reincorparateEntityState( CompositeState state, CompositeState clonedState );
 
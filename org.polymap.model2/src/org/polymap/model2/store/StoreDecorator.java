@@ -14,6 +14,9 @@
  */
 package org.polymap.model2.store;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.apache.commons.logging.LogFactory;import org.apache.commons.logging.Log;
 
 import org.polymap.model2.Entity;
@@ -80,6 +83,10 @@ public abstract class StoreDecorator
             return suow.loadEntityState( id, entityClass );
         }
 
+        public <T extends Entity> Map<Object,CompositeState> loadEntityStates( Collection<?> ids, Class<T> entityClass ) {
+            return suow.loadEntityStates( ids, entityClass );
+        }
+
         public <T extends Entity> CompositeState adoptEntityState( Object state, Class<T> entityClass ) {
             return suow.adoptEntityState( state, entityClass );
         }
@@ -127,6 +134,11 @@ public abstract class StoreDecorator
             return suow().cloneEntityState( state ); 
         }
 
+        @Override
+        public CompositeState overlayEntityState( CompositeState state ) {
+            return suow().overlayEntityState( state ); 
+        }
+
         @Override
         public void reincorparateEntityState( CompositeState state, CompositeState clonedState ) {
             suow().reincorparateEntityState( state, clonedState );
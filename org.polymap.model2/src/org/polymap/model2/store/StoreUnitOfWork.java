@@ -14,6 +14,10 @@
  */
 package org.polymap.model2.store;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.polymap.model2.Entity;
 import org.polymap.model2.query.Query;
 import org.polymap.model2.runtime.UnitOfWork;
@@ -40,6 +44,29 @@ public interface StoreUnitOfWork {
      */
     public <T extends Entity> CompositeState loadEntityState( Object id, Class<T> entityClass );
 
+    /**
+     * Loads the states of the {@link Entity}s for the given ids and type.
+     * <p/>
+     * Stores should override this in order to load all states in one round trip.
+     * The default implementation calls {@link #loadEntityState(Object, Class)} for
+     * every id.
+     * 
+     * @param ids The identifiers of the Entities.
+     * @param entityClass
+     * @return Map of identifier into {@link CompositeState}. Identifiers for which
+     *         no entity exists are not contained.
+     */
+    public default <T extends Entity> Map<Object,CompositeState> loadEntityStates( Collection<?> ids, Class<T> entityClass ) {
+        Map<Object,CompositeState> result = new HashMap( ids.size() * 2 );
+        for (Object id : ids) {
+            CompositeState state = loadEntityState( id, entityClass );
+            if (state != null) {
+                result.put( id, state );
+            }
+        }
+        return result;
+    }
+
     public <T extends Entity> CompositeState adoptEntityState( Object state, Class<T> entityClass );
 
     /**
@@ -56,6 +83,19 @@ public interface StoreUnitOfWork {
      * 
      */
     public StoreResultSet executeQuery( Query query );
+
+    /**
+     * The number of results of the given query.
+     * <p/>
+     * Stores should override this if they can count without creating the
+     * result. The default implementation executes the query and returns the size
+     * of the {@link StoreResultSet}.
+     */
+    public default int count( Query query ) {
+        try (StoreResultSet rs = executeQuery( query )) {
+            return rs.size();
+        }
+    }
     
     public void prepareCommit( Iterable<Entity> modified ) throws Exception;
     
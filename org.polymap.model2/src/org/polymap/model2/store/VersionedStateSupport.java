@@ -0,0 +1,63 @@
+/*
+ * polymap.org
+ * Copyright (C) 2026, the @authors. All rights reserved.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3.0 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.polymap.model2.store;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.polymap.model2.Entity;
+import org.polymap.model2.runtime.locking.OptimisticLocking;
+
+/**
+ * Implement this interface to store a version number in the state of every
+ * {@link Entity}. The version is incremented by
+ * {@link #prepareCommit(Iterable)} every time the Entity is written. This
+ * allows {@link OptimisticLocking} to check for concurrent modifications against
+ * the store instead of keeping the versions of all entities in memory.
+ *
+ * @author Falko Bräutigam
+ */
+public interface VersionedStateSupport
+        extends StoreUnitOfWork {
+
+    /** The name of the version field in the underlying store. */
+    public static final String  VERSION_KEY = "_version_";
+
+    /** The version of an entity that has not been written to the store yet. */
+    public static final long    NO_VERSION = 0;
+
+    /**
+     * True if the states of the given type have a version.
+     */
+    public boolean isVersioned( Class<? extends Entity> entityClass );
+
+    /**
+     * The version of the given entity as it was loaded from the store, or as it
+     * was written by the last commit of this UnitOfWork.
+     *
+     * @return The version or {@link #NO_VERSION}.
+     */
+    public long version( Entity entity );
+
+    /**
+     * Loads the current versions of the given entities from the store in one
+     * round trip.
+     *
+     * @return Map of identifier into version. Identifiers for which no entity
+     *         exists are not contained.
+     */
+    public <T extends Entity> Map<Object,Long> storedVersions( Collection<?> ids, Class<T> entityClass );
+
+}